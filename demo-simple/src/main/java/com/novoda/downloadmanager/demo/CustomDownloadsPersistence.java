@@ -5,6 +5,7 @@ import android.util.Log;
 import com.novoda.downloadmanager.CompletedDownloadBatch;
 import com.novoda.downloadmanager.DownloadBatchId;
 import com.novoda.downloadmanager.DownloadBatchStatus;
+import com.novoda.downloadmanager.DownloadFileId;
 import com.novoda.downloadmanager.DownloadsBatchPersisted;
 import com.novoda.downloadmanager.DownloadsFilePersisted;
 import com.novoda.downloadmanager.DownloadsPersistence;
@@ -77,6 +78,12 @@ public class CustomDownloadsPersistence implements DownloadsPersistence {
         return true;
     }
 
+    @Override
+    public boolean update(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId, long downloadedBytes) {
+        Log.v(TAG, "update file id: " + downloadFileId.rawId() + " of batch id: " + downloadBatchId.rawId() + " with downloadedBytes: " + downloadedBytes);
+        return true;
+    }
+
     @Override
     public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
         Log.v(TAG, "Persist completed batch id: " + completedDownloadBatch.downloadBatchId());
@@ -0,0 +1,88 @@
+package com.novoda.downloadmanager;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.framework.FrameworkSQLiteOpenHelperFactory;
+import android.arch.persistence.room.testing.MigrationTestHelper;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the migrations against the schemas exported in roomSchemas, which Room validates the migrated tables against.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RoomAppDatabaseMigrationTest {
+
+    private static final String DATABASE_NAME = "database-migration-test";
+    private static final int VERSION_FOUR = 4;
+    private static final int VERSION_FIVE = 5;
+    private static final int VERSION_SIX = 6;
+    private static final long UNKNOWN_DOWNLOADED_BYTES = -1;
+
+    @Rule
+    public MigrationTestHelper migrationTestHelper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(),
+            RoomAppDatabase.class.getCanonicalName(),
+            new FrameworkSQLiteOpenHelperFactory()
+    );
+
+    @Test
+    public void migratesVersionFourToVersionFive_withUnknownDownloadedBytes() throws IOException {
+        SupportSQLiteDatabase database = migrationTestHelper.createDatabase(DATABASE_NAME, VERSION_FOUR);
+        insertBatchWithFile(database);
+        database.close();
+
+        database = migrationTestHelper.runMigrationsAndValidate(
+                DATABASE_NAME,
+                VERSION_FIVE,
+                true,
+                new RoomAppDatabase.VersionFourToVersionFiveMigration()
+        );
+
+        Cursor cursor = database.query("SELECT downloaded_bytes FROM RoomFile WHERE file_id = 'file_id'");
+        try {
+            cursor.moveToFirst();
+            assertEquals(UNKNOWN_DOWNLOADED_BYTES, cursor.getLong(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void migratesVersionFiveToVersionSix_withDefaultPriority() throws IOException {
+        SupportSQLiteDatabase database = migrationTestHelper.createDatabase(DATABASE_NAME, VERSION_FOUR);
+        insertBatchWithFile(database);
+        database.close();
+
+        database = migrationTestHelper.runMigrationsAndValidate(
+                DATABASE_NAME,
+                VERSION_SIX,
+                true,
+                new RoomAppDatabase.VersionFourToVersionFiveMigration(),
+                new RoomAppDatabase.VersionFiveToVersionSixMigration()
+        );
+
+        Cursor cursor = database.query("SELECT priority FROM RoomBatch WHERE batch_id = 'batch_id'");
+        try {
+            cursor.moveToFirst();
+            assertEquals(Batch.DEFAULT_PRIORITY, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void insertBatchWithFile(SupportSQLiteDatabase database) {
+        database.execSQL("INSERT INTO RoomBatch (batch_id, batch_title, batch_status, batch_downloaded_date_time_in_millis, "
+                                 + "notification_seen, storage_root) VALUES ('batch_id', 'title', 'DOWNLOADING', 0, 0, '/storage/root')");
+        database.execSQL("INSERT INTO RoomFile (file_id, batch_id, file_path, total_size, url) "
+                                 + "VALUES ('file_id', 'batch_id', '/storage/root/file', 100, 'http://example.com/file')");
+    }
+}
@@ -0,0 +1,136 @@
+package com.novoda.downloadmanager;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Updates and deletes random batches of a large table, loading the whole row first against
+ * targeted queries, and prints the time taken by each.
+ * Run it manually on a device, timings vary too much across devices to be asserted on.
+ */
+@Ignore("Benchmark, run manually")
+@RunWith(AndroidJUnit4.class)
+public class RoomBatchDaoBenchmark {
+
+    private static final String DATABASE_NAME = "database-benchmark";
+    private static final int NUMBER_OF_BATCHES = 10_000;
+    private static final int NUMBER_OF_OPERATIONS = 1_000;
+    private static final int FIRST_HALF = 0;
+    private static final int SECOND_HALF = NUMBER_OF_BATCHES / 2;
+    private static final double NANOS_IN_MILLI = 1_000_000;
+
+    private final Random random = new Random();
+
+    private Context context;
+    private RoomAppDatabase database;
+    private RoomBatchDao roomBatchDao;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = Room.databaseBuilder(context, RoomAppDatabase.class, DATABASE_NAME).build();
+        roomBatchDao = database.roomBatchDao();
+
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < NUMBER_OF_BATCHES; i++) {
+                roomBatchDao.insert(aRoomBatch(i));
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void updateStatus() {
+        long loadModifyWriteNanos = measure(FIRST_HALF, batchId -> {
+            RoomBatch roomBatch = roomBatchDao.load(batchId);
+            roomBatch.status = DownloadBatchStatus.Status.DOWNLOADING.toRawValue();
+            roomBatchDao.update(roomBatch);
+        });
+        long directUpdateNanos = measure(SECOND_HALF, batchId -> roomBatchDao.updateStatus(batchId, DownloadBatchStatus.Status.PAUSED.toRawValue()));
+
+        print("update status", loadModifyWriteNanos, directUpdateNanos);
+    }
+
+    @Test
+    public void delete() {
+        long loadThenDeleteNanos = measure(FIRST_HALF, batchId -> {
+            RoomBatch roomBatch = roomBatchDao.load(batchId);
+            if (roomBatch != null) {
+                roomBatchDao.delete(roomBatch.id);
+            }
+        });
+        long directDeleteNanos = measure(SECOND_HALF, batchId -> roomBatchDao.delete(batchId));
+
+        print("delete", loadThenDeleteNanos, directDeleteNanos);
+    }
+
+    /**
+     * Each approach works on its own half of the table, so that a deleted batch is never picked again by the other.
+     */
+    private long measure(int firstBatch, Operation operation) {
+        long start = System.nanoTime();
+        for (int i = 0; i < NUMBER_OF_OPERATIONS; i++) {
+            String batchId = batchIdOf(firstBatch + random.nextInt(NUMBER_OF_BATCHES / 2));
+            database.beginTransaction();
+            try {
+                operation.perform(batchId);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void print(String name, long loadModifyWriteNanos, long directNanos) {
+        System.out.println(String.format(
+                Locale.US,
+                "%s on %d batches: load-modify-write %.1f ms, direct query %.1f ms",
+                name,
+                NUMBER_OF_BATCHES,
+                loadModifyWriteNanos / NANOS_IN_MILLI,
+                directNanos / NANOS_IN_MILLI
+        ));
+    }
+
+    private static RoomBatch aRoomBatch(int index) {
+        RoomBatch roomBatch = new RoomBatch();
+        roomBatch.id = batchIdOf(index);
+        roomBatch.title = "batch " + index;
+        roomBatch.status = DownloadBatchStatus.Status.QUEUED.toRawValue();
+        roomBatch.downloadedDateTimeInMillis = index;
+        roomBatch.notificationSeen = false;
+        roomBatch.storageRoot = "/storage/root";
+        return roomBatch;
+    }
+
+    private static String batchIdOf(int index) {
+        return "batch_" + index;
+    }
+
+    private interface Operation {
+
+        void perform(String batchId);
+    }
+}
@@ -0,0 +1,115 @@
+package com.novoda.downloadmanager;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Inserts a catalogue of batches with their files, in a transaction per batch as when downloading
+ * one batch per call, against a single transaction as when downloading them all at once, and prints
+ * the time taken by each.
+ * Run it manually on a device, timings vary too much across devices to be asserted on.
+ */
+@Ignore("Benchmark, run manually")
+@RunWith(AndroidJUnit4.class)
+public class RoomBulkInsertBenchmark {
+
+    private static final String DATABASE_NAME = "database-benchmark";
+    private static final int NUMBER_OF_BATCHES = 5_000;
+    private static final int FILES_PER_BATCH = 3;
+    private static final double NANOS_IN_MILLI = 1_000_000;
+
+    private Context context;
+    private RoomAppDatabase database;
+    private RoomBatchDao roomBatchDao;
+    private RoomFileDao roomFileDao;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = Room.databaseBuilder(context, RoomAppDatabase.class, DATABASE_NAME).build();
+        roomBatchDao = database.roomBatchDao();
+        roomFileDao = database.roomFileDao();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void insertBatchesWithFiles() {
+        long start = System.nanoTime();
+        for (int i = 0; i < NUMBER_OF_BATCHES; i++) {
+            database.beginTransaction();
+            try {
+                insertBatchWithFiles("per_call_batch_" + i);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        }
+        long transactionPerBatchNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < NUMBER_OF_BATCHES; i++) {
+                insertBatchWithFiles("bulk_batch_" + i);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        long singleTransactionNanos = System.nanoTime() - start;
+
+        System.out.println(String.format(
+                Locale.US,
+                "insert %d batches of %d files: transaction per batch %.1f ms, single transaction %.1f ms",
+                NUMBER_OF_BATCHES,
+                FILES_PER_BATCH,
+                transactionPerBatchNanos / NANOS_IN_MILLI,
+                singleTransactionNanos / NANOS_IN_MILLI
+        ));
+    }
+
+    private void insertBatchWithFiles(String batchId) {
+        roomBatchDao.insert(aRoomBatch(batchId));
+        for (int j = 0; j < FILES_PER_BATCH; j++) {
+            roomFileDao.insert(aRoomFile(batchId, j));
+        }
+    }
+
+    private static RoomBatch aRoomBatch(String batchId) {
+        RoomBatch roomBatch = new RoomBatch();
+        roomBatch.id = batchId;
+        roomBatch.title = batchId;
+        roomBatch.status = DownloadBatchStatus.Status.QUEUED.toRawValue();
+        roomBatch.downloadedDateTimeInMillis = 0;
+        roomBatch.notificationSeen = false;
+        roomBatch.storageRoot = "/storage/root";
+        return roomBatch;
+    }
+
+    private static RoomFile aRoomFile(String batchId, int fileIndex) {
+        RoomFile roomFile = new RoomFile();
+        roomFile.batchId = batchId;
+        roomFile.fileId = batchId + "_file_" + fileIndex;
+        roomFile.path = "/storage/root/" + roomFile.fileId;
+        roomFile.url = "http://example.com/" + roomFile.fileId;
+        roomFile.totalSize = 0;
+        roomFile.downloadedBytes = -1;
+        return roomFile;
+    }
+}
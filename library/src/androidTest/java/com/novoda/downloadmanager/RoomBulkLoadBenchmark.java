@@ -0,0 +1,135 @@
+package com.novoda.downloadmanager;
+
+import android.arch.persistence.room.Room;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Loads every batch with its files, querying the files of each batch against querying all of the files
+ * at once and grouping them in memory, and prints the time taken by each.
+ * Run it manually on a device, timings vary too much across devices to be asserted on.
+ */
+@Ignore("Benchmark, run manually")
+@RunWith(AndroidJUnit4.class)
+public class RoomBulkLoadBenchmark {
+
+    private static final String DATABASE_NAME = "database-benchmark";
+    private static final int NUMBER_OF_BATCHES = 10_000;
+    private static final int FILES_PER_BATCH = 3;
+    private static final double NANOS_IN_MILLI = 1_000_000;
+
+    private Context context;
+    private RoomAppDatabase database;
+    private RoomBatchDao roomBatchDao;
+    private RoomFileDao roomFileDao;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = Room.databaseBuilder(context, RoomAppDatabase.class, DATABASE_NAME).build();
+        roomBatchDao = database.roomBatchDao();
+        roomFileDao = database.roomFileDao();
+
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < NUMBER_OF_BATCHES; i++) {
+                roomBatchDao.insert(aRoomBatch(i));
+                for (int j = 0; j < FILES_PER_BATCH; j++) {
+                    roomFileDao.insert(aRoomFile(i, j));
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void loadBatchesWithFiles() {
+        long start = System.nanoTime();
+        int filesLoadedPerBatch = 0;
+        for (RoomBatch roomBatch : roomBatchDao.loadAll()) {
+            filesLoadedPerBatch += roomFileDao.loadAllFilesFor(roomBatch.id).size();
+        }
+        long queryPerBatchNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<RoomBatch> roomBatches = roomBatchDao.loadAll();
+        Map<String, List<RoomFile>> filesByBatchId = groupByBatchId(roomFileDao.loadAllFiles());
+        int filesLoadedAtOnce = 0;
+        for (RoomBatch roomBatch : roomBatches) {
+            List<RoomFile> roomFiles = filesByBatchId.get(roomBatch.id);
+            filesLoadedAtOnce += roomFiles == null ? 0 : roomFiles.size();
+        }
+        long singleQueryNanos = System.nanoTime() - start;
+
+        System.out.println(String.format(
+                Locale.US,
+                "load %d batches with %d files: query per batch %.1f ms, single query %.1f ms, %d files",
+                NUMBER_OF_BATCHES,
+                filesLoadedPerBatch,
+                queryPerBatchNanos / NANOS_IN_MILLI,
+                singleQueryNanos / NANOS_IN_MILLI,
+                filesLoadedAtOnce
+        ));
+    }
+
+    private static Map<String, List<RoomFile>> groupByBatchId(List<RoomFile> roomFiles) {
+        Map<String, List<RoomFile>> filesByBatchId = new HashMap<>();
+        for (RoomFile roomFile : roomFiles) {
+            List<RoomFile> batchRoomFiles = filesByBatchId.get(roomFile.batchId);
+            if (batchRoomFiles == null) {
+                batchRoomFiles = new ArrayList<>();
+                filesByBatchId.put(roomFile.batchId, batchRoomFiles);
+            }
+            batchRoomFiles.add(roomFile);
+        }
+        return filesByBatchId;
+    }
+
+    private static RoomBatch aRoomBatch(int index) {
+        RoomBatch roomBatch = new RoomBatch();
+        roomBatch.id = batchIdOf(index);
+        roomBatch.title = "batch " + index;
+        roomBatch.status = DownloadBatchStatus.Status.QUEUED.toRawValue();
+        roomBatch.downloadedDateTimeInMillis = index;
+        roomBatch.notificationSeen = false;
+        roomBatch.storageRoot = "/storage/root";
+        return roomBatch;
+    }
+
+    private static RoomFile aRoomFile(int batchIndex, int fileIndex) {
+        RoomFile roomFile = new RoomFile();
+        roomFile.batchId = batchIdOf(batchIndex);
+        roomFile.fileId = batchIdOf(batchIndex) + "_file_" + fileIndex;
+        roomFile.path = "/storage/root/" + roomFile.fileId;
+        roomFile.url = "http://example.com/" + roomFile.fileId;
+        roomFile.totalSize = 1024;
+        roomFile.downloadedBytes = 512;
+        return roomFile;
+    }
+
+    private static String batchIdOf(int index) {
+        return "batch_" + index;
+    }
+}
@@ -0,0 +1,217 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of connections downloading at the same time, across every batch, file and segment,
+ * and tunes the cap to the throughput measured on each tick: it grows by one connection while that
+ * keeps improving the throughput, gives the connection back when it did not and halves on errors or
+ * when the throughput collapses.
+ */
+class AdaptiveConnectionLimit {
+
+    private static final long SAMPLE_INTERVAL_IN_MILLIS = 2000;
+    private static final long MILLIS_IN_SECOND = 1000;
+    private static final long PERMIT_WAIT_IN_MILLIS = 250;
+    private static final double MINIMUM_IMPROVEMENT = 1.05;
+    private static final double COLLAPSE_RATIO = 0.5;
+    private static final int BACK_OFF_DIVISOR = 2;
+
+    @Nullable
+    private final ActionScheduler scheduler;
+    private final ConnectionLimitListener listener;
+    private final int minimumConnections;
+    private final int maximumConnections;
+    private final long sampleIntervalInMillis;
+    private final AtomicLong bytesSinceLastSample = new AtomicLong();
+    private final AtomicInteger errorsSinceLastSample = new AtomicInteger();
+    private final ActionScheduler.Action sampleOnTick = this::sample;
+
+    private int limit;
+    private int activeConnections;
+    private int busiestConnectionsSinceLastSample;
+    private int busiestConnectionsOfPreviousSample;
+    private long previousBytesPerSecond;
+    private ConnectionLimitDecision.Type previousDecision = ConnectionLimitDecision.Type.HOLD;
+
+    static AdaptiveConnectionLimit disabled() {
+        return new AdaptiveConnectionLimit(null, decision -> {
+            // never sampled.
+        }, Integer.MAX_VALUE, Integer.MAX_VALUE, SAMPLE_INTERVAL_IN_MILLIS);
+    }
+
+    static AdaptiveConnectionLimit newInstance(int minimumConnections, int maximumConnections, ConnectionLimitListener listener) {
+        ActionScheduler scheduler = SchedulerFactory.createFixedRateTimerScheduler(SAMPLE_INTERVAL_IN_MILLIS);
+        return new AdaptiveConnectionLimit(scheduler, listener, minimumConnections, maximumConnections, SAMPLE_INTERVAL_IN_MILLIS);
+    }
+
+    AdaptiveConnectionLimit(@Nullable ActionScheduler scheduler,
+                            ConnectionLimitListener listener,
+                            int minimumConnections,
+                            int maximumConnections,
+                            long sampleIntervalInMillis) {
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.minimumConnections = minimumConnections;
+        this.maximumConnections = maximumConnections;
+        this.sampleIntervalInMillis = sampleIntervalInMillis;
+        this.limit = minimumConnections;
+    }
+
+    /**
+     * Blocks until a connection can be opened.
+     *
+     * @param waitCondition checked while waiting, so that a download stopped in the meantime does not hold on to its thread.
+     * @return false when the condition no longer holds, in which case no connection has been taken.
+     */
+    synchronized boolean acquire(WaitCondition waitCondition) {
+        while (activeConnections >= limit) {
+            if (!waitCondition.keepWaiting()) {
+                return false;
+            }
+            try {
+                wait(PERMIT_WAIT_IN_MILLIS);
+            } catch (InterruptedException e) {
+                Logger.e(e, "Interrupted waiting for a connection.");
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        takeConnection();
+        return true;
+    }
+
+    /**
+     * @return whether a connection has been taken, without waiting for one.
+     */
+    synchronized boolean tryAcquire() {
+        if (activeConnections >= limit) {
+            return false;
+        }
+        takeConnection();
+        return true;
+    }
+
+    private void takeConnection() {
+        activeConnections++;
+        busiestConnectionsSinceLastSample = Math.max(busiestConnectionsSinceLastSample, activeConnections);
+        if (isEnabled()) {
+            scheduler.schedule(sampleOnTick);
+        }
+    }
+
+    synchronized void release() {
+        activeConnections--;
+        notifyAll();
+    }
+
+    void onBytesDownloaded(int bytes) {
+        if (isEnabled()) {
+            bytesSinceLastSample.addAndGet(bytes);
+        }
+    }
+
+    void onError() {
+        if (isEnabled()) {
+            errorsSinceLastSample.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stops ticking once a whole sample went by without any connection.
+     */
+    void sample() {
+        ConnectionLimitDecision decision;
+        synchronized (this) {
+            long bytes = bytesSinceLastSample.getAndSet(0);
+            int errors = errorsSinceLastSample.getAndSet(0);
+            int busiestConnections = busiestConnectionsSinceLastSample;
+            busiestConnectionsSinceLastSample = activeConnections;
+
+            if (busiestConnections == 0 && errors == 0) {
+                previousBytesPerSecond = 0;
+                busiestConnectionsOfPreviousSample = 0;
+                previousDecision = ConnectionLimitDecision.Type.HOLD;
+                scheduler.cancel(sampleOnTick);
+                return;
+            }
+
+            long bytesPerSecond = bytes * MILLIS_IN_SECOND / sampleIntervalInMillis;
+            int previousLimit = limit;
+            ConnectionLimitDecision.Type type = decide(errors, bytesPerSecond, busiestConnections);
+
+            // The throughput of an increase that did not pay off is not the one to beat.
+            if (type != ConnectionLimitDecision.Type.DECREASE) {
+                previousBytesPerSecond = bytesPerSecond;
+            }
+            busiestConnectionsOfPreviousSample = busiestConnections;
+            previousDecision = type;
+            if (limit > previousLimit) {
+                notifyAll();
+            }
+            decision = new ConnectionLimitDecision(type, previousLimit, limit, activeConnections, bytesPerSecond);
+        }
+
+        Logger.v(decision::toString);
+        listener.onDecision(decision);
+    }
+
+    private ConnectionLimitDecision.Type decide(int errors, long bytesPerSecond, int busiestConnections) {
+        if (errors > 0) {
+            limit = Math.max(minimumConnections, limit / BACK_OFF_DIVISOR);
+            return ConnectionLimitDecision.Type.BACK_OFF_ON_ERROR;
+        }
+
+        boolean sameDemand = busiestConnections >= busiestConnectionsOfPreviousSample;
+        if (sameDemand && bytesPerSecond < previousBytesPerSecond * COLLAPSE_RATIO) {
+            limit = Math.max(minimumConnections, limit / BACK_OFF_DIVISOR);
+            return ConnectionLimitDecision.Type.BACK_OFF_ON_COLLAPSE;
+        }
+
+        boolean improved = bytesPerSecond > 0 && bytesPerSecond >= previousBytesPerSecond * MINIMUM_IMPROVEMENT;
+        if (previousDecision == ConnectionLimitDecision.Type.INCREASE && !improved && limit > minimumConnections) {
+            limit--;
+            return ConnectionLimitDecision.Type.DECREASE;
+        }
+
+        // The throughput only tells something about the limit when every allowed connection was in use.
+        if (improved && busiestConnections >= limit && limit < maximumConnections) {
+            limit++;
+            return ConnectionLimitDecision.Type.INCREASE;
+        }
+
+        return ConnectionLimitDecision.Type.HOLD;
+    }
+
+    synchronized int limit() {
+        return limit;
+    }
+
+    synchronized int activeConnections() {
+        return activeConnections;
+    }
+
+    private boolean isEnabled() {
+        return scheduler != null;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(
+                Locale.US,
+                "AdaptiveConnectionLimit{limit=%d, activeConnections=%d, previousBytesPerSecond=%d}",
+                limit,
+                activeConnections,
+                previousBytesPerSecond
+        );
+    }
+
+    interface WaitCondition {
+
+        boolean keepWaiting();
+    }
+}
@@ -5,20 +5,31 @@ import java.util.List;
 
 public class Batch {
 
+    /**
+     * The priority of the batches that are not given one, batches with a higher priority are downloaded first.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
     private final StorageRoot storageRoot;
     private final DownloadBatchId downloadBatchId;
     private final String title;
     private final List<BatchFile> batchFiles;
+    private final int priority;
 
     public static BatchBuilder with(StorageRoot storageRoot, DownloadBatchId downloadBatchId, String title) {
         return new LiteBatchBuilder(storageRoot, downloadBatchId, title, new ArrayList<>());
     }
 
     Batch(StorageRoot storageRoot, DownloadBatchId downloadBatchId, String title, List<BatchFile> batchFiles) {
+        this(storageRoot, downloadBatchId, title, batchFiles, DEFAULT_PRIORITY);
+    }
+
+    Batch(StorageRoot storageRoot, DownloadBatchId downloadBatchId, String title, List<BatchFile> batchFiles, int priority) {
         this.storageRoot = storageRoot;
         this.downloadBatchId = downloadBatchId;
         this.title = title;
         this.batchFiles = batchFiles;
+        this.priority = priority;
     }
 
     public DownloadBatchId downloadBatchId() {
@@ -37,6 +48,10 @@ public class Batch {
         return batchFiles;
     }
 
+    public int priority() {
+        return priority;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -48,6 +63,9 @@ public class Batch {
 
         Batch batch = (Batch) o;
 
+        if (priority != batch.priority) {
+            return false;
+        }
         if (storageRoot != null ? !storageRoot.equals(batch.storageRoot) : batch.storageRoot != null) {
             return false;
         }
@@ -66,6 +84,7 @@ public class Batch {
         result = 31 * result + (downloadBatchId != null ? downloadBatchId.hashCode() : 0);
         result = 31 * result + (title != null ? title.hashCode() : 0);
         result = 31 * result + (batchFiles != null ? batchFiles.hashCode() : 0);
+        result = 31 * result + priority;
         return result;
     }
 
@@ -76,6 +95,7 @@ public class Batch {
                 + ", downloadBatchId=" + downloadBatchId
                 + ", title='" + title + '\''
                 + ", batchFiles=" + batchFiles
+                + ", priority=" + priority
                 + '}';
     }
 }
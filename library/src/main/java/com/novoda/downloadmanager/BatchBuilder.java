@@ -14,6 +14,15 @@ public interface BatchBuilder {
      */
     BatchFileBuilder downloadFrom(String networkAddress);
 
+    /**
+     * Sets the priority of the {@link Batch}, batches with a higher priority are downloaded first
+     * and take the place of running batches with a lower priority. Defaults to {@link Batch#DEFAULT_PRIORITY}.
+     *
+     * @param priority of the batch.
+     * @return {@link BatchBuilder}.
+     */
+    BatchBuilder withPriority(int priority);
+
     /**
      * Build a new {@link Batch} instance.
      *
@@ -0,0 +1,249 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs up to a fixed number of batches at the same time, the batches with the highest priority first
+ * and the ones with the same priority in submission order. A running batch is preempted when a batch
+ * with a higher priority is waiting for its worker, it is stopped and waits again until it outranks
+ * the other waiting batches. Keeps track of the batches waiting for and holding a worker, so that the
+ * queue can be inspected. A batch is scheduled at most once, a batch that is executed again while it
+ * holds a worker runs again once it finishes rather than alongside itself.
+ */
+class BatchDownloadExecutor {
+
+    private static final int MINIMUM_CONCURRENT_BATCHES = 1;
+    private static final long IDLE_WORKER_KEEP_ALIVE_IN_SECONDS = 30;
+
+    private static final Comparator<ScheduledBatch> HIGHEST_PRIORITY_FIRST = (first, second) -> {
+        if (first.priority != second.priority) {
+            return first.priority > second.priority ? -1 : 1;
+        }
+        return Long.compare(first.sequence, second.sequence);
+    };
+
+    private final Executor executor;
+    private final int maximumConcurrentBatches;
+    private final TreeSet<ScheduledBatch> waitingBatches = new TreeSet<>(HIGHEST_PRIORITY_FIRST);
+    private final List<ScheduledBatch> runningBatches = new ArrayList<>();
+    private final Map<String, ScheduledBatch> scheduledBatchesByRawId = new HashMap<>();
+
+    private long nextSequence;
+
+    static BatchDownloadExecutor newInstance(int maximumConcurrentBatches) {
+        if (maximumConcurrentBatches < MINIMUM_CONCURRENT_BATCHES) {
+            throw new IllegalArgumentException("Batch download parallelism must be at least "
+                                                       + MINIMUM_CONCURRENT_BATCHES + " but was " + maximumConcurrentBatches);
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maximumConcurrentBatches,
+                maximumConcurrentBatches,
+                IDLE_WORKER_KEEP_ALIVE_IN_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>()
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return new BatchDownloadExecutor(executor, maximumConcurrentBatches);
+    }
+
+    BatchDownloadExecutor(Executor executor, int maximumConcurrentBatches) {
+        this.executor = executor;
+        this.maximumConcurrentBatches = maximumConcurrentBatches;
+    }
+
+    void execute(DownloadBatchId downloadBatchId, Runnable batchDownload) {
+        execute(downloadBatchId, Batch.DEFAULT_PRIORITY, new BatchDownload() {
+            @Override
+            public void run() {
+                batchDownload.run();
+            }
+
+            @Override
+            public boolean preempt() {
+                return false;
+            }
+
+            @Override
+            public boolean requeue() {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * The batches are preempted while holding the lock, so that a batch cannot finish between being chosen and being stopped.
+     */
+    synchronized void execute(DownloadBatchId downloadBatchId, int priority, BatchDownload batchDownload) {
+        ScheduledBatch scheduledBatch = scheduledBatchesByRawId.get(downloadBatchId.rawId());
+        if (scheduledBatch != null) {
+            if (runningBatches.contains(scheduledBatch)) {
+                if (Logger.isEnabled(LogLevel.VERBOSE)) {
+                    Logger.v("batch " + downloadBatchId.rawId() + " is running, it will run again once it finishes");
+                }
+                scheduledBatch.rerunBatchDownload = batchDownload;
+            }
+            return;
+        }
+
+        schedule(new ScheduledBatch(downloadBatchId, priority, nextSequence++, batchDownload));
+        startWaitingBatches();
+
+        for (ScheduledBatch preemptedBatch : preemptOutrankedBatches()) {
+            if (Logger.isEnabled(LogLevel.VERBOSE)) {
+                Logger.v("preempt batch " + preemptedBatch.downloadBatchId.rawId() + " with priority " + preemptedBatch.priority);
+            }
+            preemptedBatch.preempted = preemptedBatch.batchDownload.preempt();
+        }
+    }
+
+    /**
+     * Stops the running batches that can be preempted, they wait for a worker again as when a batch outranks them.
+     */
+    synchronized void preemptRunningBatches() {
+        for (ScheduledBatch runningBatch : runningBatches) {
+            if (!runningBatch.preempted) {
+                runningBatch.preempted = runningBatch.batchDownload.preempt();
+            }
+        }
+    }
+
+    private void schedule(ScheduledBatch scheduledBatch) {
+        waitingBatches.add(scheduledBatch);
+        scheduledBatchesByRawId.put(scheduledBatch.downloadBatchId.rawId(), scheduledBatch);
+    }
+
+    private void startWaitingBatches() {
+        while (runningBatches.size() < maximumConcurrentBatches && !waitingBatches.isEmpty()) {
+            ScheduledBatch scheduledBatch = waitingBatches.pollFirst();
+            runningBatches.add(scheduledBatch);
+            executor.execute(() -> {
+                try {
+                    scheduledBatch.batchDownload.run();
+                } finally {
+                    markAsFinished(scheduledBatch);
+                }
+            });
+        }
+    }
+
+    /**
+     * Matches the waiting batches, from the highest priority, with the running ones, from the lowest priority.
+     * The waiting batches that will take the worker of a batch that is already being preempted are skipped.
+     */
+    private List<ScheduledBatch> preemptOutrankedBatches() {
+        List<ScheduledBatch> preemptibleBatches = new ArrayList<>(runningBatches.size());
+        int workersBeingReleased = 0;
+        for (ScheduledBatch runningBatch : runningBatches) {
+            if (runningBatch.preempted) {
+                workersBeingReleased++;
+            } else {
+                preemptibleBatches.add(runningBatch);
+            }
+        }
+        if (preemptibleBatches.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.sort(preemptibleBatches, Collections.reverseOrder(HIGHEST_PRIORITY_FIRST));
+
+        List<ScheduledBatch> preemptedBatches = new ArrayList<>();
+        for (ScheduledBatch waitingBatch : waitingBatches) {
+            if (workersBeingReleased > 0) {
+                workersBeingReleased--;
+                continue;
+            }
+
+            int preemptedCount = preemptedBatches.size();
+            if (preemptedCount == preemptibleBatches.size()) {
+                break;
+            }
+
+            ScheduledBatch lowestRunningBatch = preemptibleBatches.get(preemptedCount);
+            if (waitingBatch.priority <= lowestRunningBatch.priority) {
+                break;
+            }
+            preemptedBatches.add(lowestRunningBatch);
+        }
+        return preemptedBatches;
+    }
+
+    private synchronized void markAsFinished(ScheduledBatch scheduledBatch) {
+        runningBatches.remove(scheduledBatch);
+        scheduledBatchesByRawId.remove(scheduledBatch.downloadBatchId.rawId());
+
+        boolean requeued = false;
+        if (scheduledBatch.preempted) {
+            scheduledBatch.preempted = false;
+            requeued = scheduledBatch.batchDownload.requeue();
+        }
+
+        BatchDownload rerunBatchDownload = scheduledBatch.rerunBatchDownload;
+        scheduledBatch.rerunBatchDownload = null;
+        if (requeued) {
+            // Keeps its sequence, so that it goes back ahead of the batches of the same priority submitted after it.
+            schedule(scheduledBatch);
+        } else if (rerunBatchDownload != null) {
+            schedule(new ScheduledBatch(scheduledBatch.downloadBatchId, scheduledBatch.priority, nextSequence++, rerunBatchDownload));
+        }
+        startWaitingBatches();
+    }
+
+    /**
+     * @return the batches that hold a worker, followed by the ones waiting for a worker in the order they will start.
+     */
+    synchronized List<DownloadBatchId> queue() {
+        List<DownloadBatchId> queue = new ArrayList<>(runningBatches.size() + waitingBatches.size());
+        for (ScheduledBatch runningBatch : runningBatches) {
+            queue.add(runningBatch.downloadBatchId);
+        }
+        for (ScheduledBatch waitingBatch : waitingBatches) {
+            queue.add(waitingBatch.downloadBatchId);
+        }
+        return queue;
+    }
+
+    interface BatchDownload extends Runnable {
+
+        /**
+         * Stops the download, keeping the bytes downloaded so far.
+         *
+         * @return whether the download is stopping, false when it cannot be preempted.
+         */
+        boolean preempt();
+
+        /**
+         * Readies a preempted download to run again once it gets a worker.
+         *
+         * @return whether the download should run again, false when it was finished or stopped for another reason.
+         */
+        boolean requeue();
+    }
+
+    private static final class ScheduledBatch {
+
+        private final DownloadBatchId downloadBatchId;
+        private final int priority;
+        private final long sequence;
+        private final BatchDownload batchDownload;
+
+        private boolean preempted;
+        private BatchDownload rerunBatchDownload;
+
+        ScheduledBatch(DownloadBatchId downloadBatchId, int priority, long sequence, BatchDownload batchDownload) {
+            this.downloadBatchId = downloadBatchId;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.batchDownload = batchDownload;
+        }
+    }
+}
@@ -19,9 +19,11 @@ class ByteBasedRemainingStorageRequirementRule implements StorageRequirementRule
         long usableStorageInBytes = storageDirectory.getUsableSpace();
         long remainingStorageAfterDownloadInBytes = usableStorageInBytes - downloadFileSize.remainingSize();
 
-        Logger.v("Storage capacity in bytes: ", storageCapacityInBytes);
-        Logger.v("Usable storage in bytes: ", usableStorageInBytes);
-        Logger.v("Minimum required storage in bytes: ", bytesRemainingAfterDownload);
+        if (Logger.isEnabled(LogLevel.VERBOSE)) {
+            Logger.v("Storage capacity in bytes: ", storageCapacityInBytes);
+            Logger.v("Usable storage in bytes: ", usableStorageInBytes);
+            Logger.v("Minimum required storage in bytes: ", bytesRemainingAfterDownload);
+        }
         return remainingStorageAfterDownloadInBytes < bytesRemainingAfterDownload;
     }
 
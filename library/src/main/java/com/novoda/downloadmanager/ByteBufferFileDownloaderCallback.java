@@ -0,0 +1,22 @@
+package com.novoda.downloadmanager;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lets the downloaders of the library hand over the bytes they read as a buffer,
+ * which can be written to the file without being copied into an array first.
+ * Custom downloaders keep on using {@link FileDownloader.Callback#onBytesRead(byte[], int)}.
+ */
+interface ByteBufferFileDownloaderCallback extends FileDownloader.Callback {
+
+    /**
+     * @return whether the bytes can be handed over as a buffer, otherwise they are read into an array
+     * and handed over through {@link FileDownloader.Callback#onBytesRead(byte[], int)}.
+     */
+    boolean acceptsByteBuffers();
+
+    /**
+     * @param buffer containing the bytes read between its position and its limit.
+     */
+    void onBytesRead(ByteBuffer buffer);
+}
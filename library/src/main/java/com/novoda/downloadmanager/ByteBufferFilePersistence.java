@@ -0,0 +1,15 @@
+package com.novoda.downloadmanager;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link FilePersistence} that can write a buffer to the file without copying it into an array.
+ */
+interface ByteBufferFilePersistence extends FilePersistence {
+
+    /**
+     * @param buffer whose bytes between its position and its limit are written, its position is moved to its limit.
+     * @return whether all of the bytes have been written.
+     */
+    boolean write(ByteBuffer buffer);
+}
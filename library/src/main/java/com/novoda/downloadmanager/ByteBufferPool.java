@@ -0,0 +1,109 @@
+package com.novoda.downloadmanager;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps a bounded number of direct buffers per size so that they can be reused across
+ * downloads instead of being allocated for every file. Requested sizes are rounded up to
+ * the next power of two, so that close sizes share the same buffers.
+ * Counts the requests served from the pool, the ones that had to allocate and the buffers
+ * currently borrowed, which tells whether the pool is large enough.
+ */
+class ByteBufferPool {
+
+    private static final int LARGEST_POOLED_BUFFER_SIZE_IN_BYTES = 4 * 1024 * 1024;
+
+    private final int maximumPooledBuffersPerSize;
+    private final Map<Integer, Deque<ByteBuffer>> pooledBuffersBySize = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private int outstandingBuffers;
+
+    ByteBufferPool(int maximumPooledBuffersPerSize) {
+        this.maximumPooledBuffersPerSize = maximumPooledBuffersPerSize;
+    }
+
+    /**
+     * @return a cleared buffer whose capacity is at least the given size.
+     */
+    synchronized ByteBuffer acquire(int minimumSizeInBytes) {
+        if (minimumSizeInBytes <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive but was " + minimumSizeInBytes);
+        }
+
+        outstandingBuffers++;
+        int sizeInBytes = sizeClassOf(minimumSizeInBytes);
+        Deque<ByteBuffer> pooledBuffers = pooledBuffersBySize.get(sizeInBytes);
+        ByteBuffer buffer = pooledBuffers == null ? null : pooledBuffers.pollFirst();
+        if (buffer == null) {
+            misses++;
+            return ByteBuffer.allocateDirect(sizeInBytes);
+        }
+
+        hits++;
+        return buffer;
+    }
+
+    synchronized void release(ByteBuffer buffer) {
+        outstandingBuffers--;
+        buffer.clear();
+
+        int sizeInBytes = buffer.capacity();
+        if (!buffer.isDirect() || !isPooled(sizeInBytes)) {
+            return;
+        }
+
+        Deque<ByteBuffer> pooledBuffers = pooledBuffersBySize.get(sizeInBytes);
+        if (pooledBuffers == null) {
+            pooledBuffers = new ArrayDeque<>();
+            pooledBuffersBySize.put(sizeInBytes, pooledBuffers);
+        }
+        if (pooledBuffers.size() < maximumPooledBuffersPerSize) {
+            pooledBuffers.offerFirst(buffer);
+        }
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized int outstandingBuffers() {
+        return outstandingBuffers;
+    }
+
+    /**
+     * Buffers larger than the largest pooled size are allocated with the exact size and never pooled.
+     */
+    private static int sizeClassOf(int sizeInBytes) {
+        if (sizeInBytes > LARGEST_POOLED_BUFFER_SIZE_IN_BYTES) {
+            return sizeInBytes;
+        }
+        int highestOneBit = Integer.highestOneBit(sizeInBytes);
+        return highestOneBit == sizeInBytes ? sizeInBytes : highestOneBit << 1;
+    }
+
+    private static boolean isPooled(int sizeInBytes) {
+        return sizeInBytes <= LARGEST_POOLED_BUFFER_SIZE_IN_BYTES && Integer.bitCount(sizeInBytes) == 1;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(
+                Locale.US,
+                "ByteBufferPool{hits=%d, misses=%d, outstandingBuffers=%d}",
+                hits,
+                misses,
+                outstandingBuffers
+        );
+    }
+}
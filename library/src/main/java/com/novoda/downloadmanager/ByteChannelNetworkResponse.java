@@ -0,0 +1,12 @@
+package com.novoda.downloadmanager;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A {@link NetworkResponse} whose body can be read directly into a buffer.
+ */
+interface ByteChannelNetworkResponse extends NetworkResponse {
+
+    ReadableByteChannel openByteChannel() throws IOException;
+}
@@ -0,0 +1,12 @@
+package com.novoda.downloadmanager;
+
+/**
+ * A {@link FileSizeRequester} whose requests are aborted when the file they are made for is stopped.
+ */
+interface CancellableFileSizeRequester extends FileSizeRequester {
+
+    /**
+     * @param inFlightCalls of the file, cancelled when the file is paused, deleted or waits for the network.
+     */
+    FileSize requestFileSize(String url, InFlightCalls inFlightCalls);
+}
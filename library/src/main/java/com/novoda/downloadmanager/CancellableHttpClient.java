@@ -0,0 +1,9 @@
+package com.novoda.downloadmanager;
+
+/**
+ * An {@link HttpClient} whose requests can be cancelled at the socket level.
+ */
+interface CancellableHttpClient extends HttpClient {
+
+    NetworkCall newCall(NetworkRequest networkRequest);
+}
@@ -0,0 +1,228 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Accumulates the downloaded bytes in a pooled direct buffer and writes them to a
+ * {@link FileChannel} once the buffer is full, so that a small network read does not
+ * cost a write to the file system.
+ * Bytes still in the buffer are written when closing, the length of the file on disk
+ * therefore only ever contains complete writes. The write that completes the file flushes
+ * the buffer itself, so that a failure to write the last bytes fails the download rather
+ * than being left to closing, which cannot report it.
+ * A {@link ByteBuffer} that is at least as large as the pooled buffer is written to the
+ * channel directly, after any bytes already buffered.
+ */
+class ChannelFilePersistence implements ByteBufferFilePersistence {
+
+    private static final boolean APPEND = true;
+
+    private final ByteBufferPool bufferPool;
+    private final int bufferSizeInBytes;
+
+    private StorageRequirementRule storageRequirementRule;
+
+    @Nullable
+    private FileChannel fileChannel;
+    @Nullable
+    private ByteBuffer buffer;
+    private long bytesUntilComplete;
+
+    ChannelFilePersistence(ByteBufferPool bufferPool, int bufferSizeInBytes) {
+        this.bufferPool = bufferPool;
+        this.bufferSizeInBytes = bufferSizeInBytes;
+    }
+
+    @Override
+    public void initialiseWith(Context context, StorageRequirementRule storageRequirementRule) {
+        this.storageRequirementRule = storageRequirementRule;
+    }
+
+    @Override
+    public FilePersistenceResult create(FilePath absoluteFilePath, FileSize fileSize) {
+        if (fileSize.isTotalSizeUnknown()) {
+            return FilePersistenceResult.ERROR_UNKNOWN_TOTAL_FILE_SIZE;
+        }
+
+        if (absoluteFilePath.isUnknown()) {
+            return FilePersistenceResult.ERROR_OPENING_FILE;
+        }
+
+        try {
+            File file = new File(absoluteFilePath.path());
+
+            boolean parentDirectoriesExist = ensureParentDirectoriesExistFor(file);
+
+            if (!parentDirectoriesExist) {
+                return FilePersistenceResult.ERROR_OPENING_FILE;
+            }
+
+            if (storageRequirementRule.hasViolatedRule(file.getParentFile(), fileSize)) {
+                return FilePersistenceResult.ERROR_INSUFFICIENT_SPACE;
+            }
+
+            fileChannel = new FileOutputStream(file, APPEND).getChannel();
+            buffer = bufferPool.acquire(bufferSizeInBytes);
+            bytesUntilComplete = fileSize.totalSize() - file.length();
+        } catch (FileNotFoundException e) {
+            Logger.e(e, "File could not be opened");
+            return FilePersistenceResult.ERROR_OPENING_FILE;
+        }
+
+        return FilePersistenceResult.SUCCESS;
+    }
+
+    private boolean ensureParentDirectoriesExistFor(File outputFile) {
+        boolean parentExists = outputFile.getParentFile().exists();
+        if (parentExists) {
+            return true;
+        }
+
+        Logger.w(String.format("path: %s doesn't exist, creating parent directories...", outputFile.getAbsolutePath()));
+        return outputFile.getParentFile().mkdirs();
+    }
+
+    @Override
+    public boolean write(byte[] bytes, int offset, int numberOfBytesToWrite) {
+        if (fileChannel == null || buffer == null) {
+            Logger.e("Cannot write, you must create the file first");
+            return false;
+        }
+
+        try {
+            int position = offset;
+            int remainingBytes = numberOfBytesToWrite;
+            while (remainingBytes > 0) {
+                int bytesToBuffer = Math.min(remainingBytes, buffer.remaining());
+                buffer.put(bytes, position, bytesToBuffer);
+                position += bytesToBuffer;
+                remainingBytes -= bytesToBuffer;
+
+                if (!buffer.hasRemaining()) {
+                    flush(fileChannel, buffer);
+                }
+            }
+            flushIfComplete(fileChannel, buffer, numberOfBytesToWrite);
+            return true;
+        } catch (IOException e) {
+            Logger.e(e, "Exception while writing to internal physical storage");
+            return false;
+        }
+    }
+
+    @Override
+    public boolean write(ByteBuffer bytes) {
+        if (fileChannel == null || buffer == null) {
+            Logger.e("Cannot write, you must create the file first");
+            return false;
+        }
+
+        try {
+            int numberOfBytesToWrite = bytes.remaining();
+            if (numberOfBytesToWrite < buffer.capacity()) {
+                bufferOrFlush(fileChannel, buffer, bytes);
+                flushIfComplete(fileChannel, buffer, numberOfBytesToWrite);
+                return true;
+            }
+
+            flush(fileChannel, buffer);
+            while (bytes.hasRemaining()) {
+                fileChannel.write(bytes);
+            }
+            bytesUntilComplete -= numberOfBytesToWrite;
+            return true;
+        } catch (IOException e) {
+            Logger.e(e, "Exception while writing to internal physical storage");
+            return false;
+        }
+    }
+
+    private static void bufferOrFlush(FileChannel fileChannel, ByteBuffer buffer, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            int bytesToBuffer = Math.min(bytes.remaining(), buffer.remaining());
+            ByteBuffer slice = bytes.duplicate();
+            slice.limit(slice.position() + bytesToBuffer);
+            buffer.put(slice);
+            bytes.position(bytes.position() + bytesToBuffer);
+
+            if (!buffer.hasRemaining()) {
+                flush(fileChannel, buffer);
+            }
+        }
+    }
+
+    private void flushIfComplete(FileChannel fileChannel, ByteBuffer buffer, int bytesWritten) throws IOException {
+        bytesUntilComplete -= bytesWritten;
+        if (bytesUntilComplete <= 0) {
+            flush(fileChannel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel fileChannel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void delete(FilePath absoluteFilePath) {
+        if (absoluteFilePath == null || absoluteFilePath.isUnknown()) {
+            Logger.w("Cannot delete, you must create the file first.");
+            return;
+        }
+
+        File fileToDelete = new File(absoluteFilePath.path());
+        if (!fileToDelete.exists()) {
+            return;
+        }
+
+        boolean deleted = fileToDelete.delete();
+
+        String message = String.format("File or Directory: %s deleted: %s", absoluteFilePath.path(), deleted);
+        Logger.d(getClass().getSimpleName(), message);
+    }
+
+    @Override
+    public boolean writesBytesAtFilePath() {
+        return true;
+    }
+
+    @Override
+    public long getCurrentSize(FilePath filePath) {
+        File file = new File(filePath.path());
+        return file.length();
+    }
+
+    @Override
+    public void close() {
+        if (fileChannel == null || buffer == null) {
+            return;
+        }
+
+        try {
+            flush(fileChannel, buffer);
+        } catch (IOException e) {
+            Logger.e(e, "Failed to write the buffered bytes.");
+        }
+
+        try {
+            fileChannel.close();
+        } catch (IOException e) {
+            Logger.e(e, "Failed to close fileChannel.");
+        }
+
+        bufferPool.release(buffer);
+        fileChannel = null;
+        buffer = null;
+    }
+}
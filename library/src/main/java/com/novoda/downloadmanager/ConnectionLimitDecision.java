@@ -0,0 +1,65 @@
+package com.novoda.downloadmanager;
+
+import java.util.Locale;
+
+/**
+ * The outcome of a throughput sample: how many connections were allowed before and after it,
+ * how many were open and how many bytes per second were downloaded over the sample.
+ */
+public class ConnectionLimitDecision {
+
+    public enum Type {
+        INCREASE,
+        HOLD,
+        DECREASE,
+        BACK_OFF_ON_ERROR,
+        BACK_OFF_ON_COLLAPSE
+    }
+
+    private final Type type;
+    private final int previousLimit;
+    private final int limit;
+    private final int activeConnections;
+    private final long bytesPerSecond;
+
+    ConnectionLimitDecision(Type type, int previousLimit, int limit, int activeConnections, long bytesPerSecond) {
+        this.type = type;
+        this.previousLimit = previousLimit;
+        this.limit = limit;
+        this.activeConnections = activeConnections;
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public int previousLimit() {
+        return previousLimit;
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int activeConnections() {
+        return activeConnections;
+    }
+
+    public long bytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.US,
+                "ConnectionLimitDecision{type=%s, previousLimit=%d, limit=%d, activeConnections=%d, bytesPerSecond=%d}",
+                type,
+                previousLimit,
+                limit,
+                activeConnections,
+                bytesPerSecond
+        );
+    }
+}
@@ -0,0 +1,11 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Notified of every decision taken by the adaptive connection limit, which can be attached
+ * with {@link DownloadManagerBuilder#withAdaptiveConnectionLimit(int, int, ConnectionLimitListener)}.
+ * Called on a background thread, it must return quickly.
+ */
+public interface ConnectionLimitListener {
+
+    void onDecision(ConnectionLimitDecision decision);
+}
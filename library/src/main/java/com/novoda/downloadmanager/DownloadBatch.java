@@ -4,7 +4,6 @@ import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
 import java.util.List;
-import java.util.Map;
 
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETED;
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETING;
@@ -21,29 +20,91 @@ class DownloadBatch {
 
     private static final int ZERO_BYTES = 0;
     private static final String STATUS = "status";
+    private static final long CHECKPOINT_INTERVAL_IN_BYTES = 1024 * 1024;
 
-    private final Map<DownloadFileId, Long> fileBytesDownloadedMap;
     private final InternalDownloadBatchStatus downloadBatchStatus;
-    private final List<DownloadFile> downloadFiles;
     private final DownloadsBatchPersistence downloadsBatchPersistence;
     private final FileCallbackThrottle fileCallbackThrottle;
     private final ConnectionChecker connectionChecker;
+    private final FileDownloadExecutor fileDownloadExecutor;
+    private final FileDownloadExecutor fileSizeExecutor;
+
+    // Published by the write to downloadFiles, the accumulators are only used once the files are hydrated.
+    private FileBytesAccumulator fileBytesDownloaded;
+    private FileBytesAccumulator fileTotalSizes;
+    private FileBytesAccumulator fileBytesCheckpointed;
+    private volatile List<DownloadFile> downloadFiles;
+    @Nullable
+    private volatile PersistedDownloadFiles persistedDownloadFiles;
 
     private long totalBatchSizeBytes;
     private DownloadBatchStatusCallback callback;
+    private volatile boolean preempted;
 
     DownloadBatch(InternalDownloadBatchStatus internalDownloadBatchStatus,
                   List<DownloadFile> downloadFiles,
-                  Map<DownloadFileId, Long> fileBytesDownloadedMap,
                   DownloadsBatchPersistence downloadsBatchPersistence,
                   FileCallbackThrottle fileCallbackThrottle,
-                  ConnectionChecker connectionChecker) {
-        this.downloadFiles = downloadFiles;
-        this.fileBytesDownloadedMap = fileBytesDownloadedMap;
+                  ConnectionChecker connectionChecker,
+                  FileDownloadExecutor fileDownloadExecutor,
+                  FileDownloadExecutor fileSizeExecutor) {
+        this(internalDownloadBatchStatus, downloadsBatchPersistence, fileCallbackThrottle, connectionChecker, fileDownloadExecutor, fileSizeExecutor);
+        useFiles(downloadFiles);
+    }
+
+    /**
+     * Keeps the files as they were persisted, they are only hydrated once the batch is resumed, deleted or downloaded again.
+     */
+    DownloadBatch(InternalDownloadBatchStatus internalDownloadBatchStatus,
+                  PersistedDownloadFiles persistedDownloadFiles,
+                  DownloadsBatchPersistence downloadsBatchPersistence,
+                  FileCallbackThrottle fileCallbackThrottle,
+                  ConnectionChecker connectionChecker,
+                  FileDownloadExecutor fileDownloadExecutor,
+                  FileDownloadExecutor fileSizeExecutor) {
+        this(internalDownloadBatchStatus, downloadsBatchPersistence, fileCallbackThrottle, connectionChecker, fileDownloadExecutor, fileSizeExecutor);
+        this.persistedDownloadFiles = persistedDownloadFiles;
+    }
+
+    private DownloadBatch(InternalDownloadBatchStatus internalDownloadBatchStatus,
+                          DownloadsBatchPersistence downloadsBatchPersistence,
+                          FileCallbackThrottle fileCallbackThrottle,
+                          ConnectionChecker connectionChecker,
+                          FileDownloadExecutor fileDownloadExecutor,
+                          FileDownloadExecutor fileSizeExecutor) {
         this.downloadBatchStatus = internalDownloadBatchStatus;
         this.downloadsBatchPersistence = downloadsBatchPersistence;
         this.fileCallbackThrottle = fileCallbackThrottle;
         this.connectionChecker = connectionChecker;
+        this.fileDownloadExecutor = fileDownloadExecutor;
+        this.fileSizeExecutor = fileSizeExecutor;
+    }
+
+    private void useFiles(List<DownloadFile> downloadFiles) {
+        fileBytesDownloaded = FileBytesAccumulator.forFilesOf(downloadFiles);
+        fileTotalSizes = FileBytesAccumulator.forFilesOf(downloadFiles);
+        fileBytesCheckpointed = FileBytesAccumulator.forFilesOf(downloadFiles);
+        for (DownloadFile downloadFile : downloadFiles) {
+            long currentDownloadedBytes = downloadFile.getCurrentDownloadedBytes();
+            fileBytesDownloaded.update(downloadFile.id(), currentDownloadedBytes);
+            fileBytesCheckpointed.update(downloadFile.id(), currentDownloadedBytes);
+        }
+        this.downloadFiles = downloadFiles;
+    }
+
+    private List<DownloadFile> downloadFiles() {
+        List<DownloadFile> hydratedDownloadFiles = downloadFiles;
+        if (hydratedDownloadFiles != null) {
+            return hydratedDownloadFiles;
+        }
+
+        synchronized (this) {
+            if (downloadFiles == null) {
+                useFiles(persistedDownloadFiles.hydrate(downloadBatchStatus.status()));
+                persistedDownloadFiles = null;
+            }
+            return downloadFiles;
+        }
     }
 
     void setCallback(DownloadBatchStatusCallback callback) {
@@ -53,10 +114,14 @@ class DownloadBatch {
 
     void download() {
         String rawBatchId = downloadBatchStatus.getDownloadBatchId().rawId();
-        Logger.v("start sync download " + rawBatchId + ", " + STATUS + " " + downloadBatchStatus.status());
+        if (Logger.isEnabled(LogLevel.VERBOSE)) {
+            Logger.v("start sync download " + rawBatchId + ", " + STATUS + " " + downloadBatchStatus.status());
+        }
 
         if (shouldAbortStartingBatch(connectionChecker, callback, downloadBatchStatus, downloadsBatchPersistence)) {
-            Logger.v("abort starting download " + rawBatchId + ", " + STATUS + " " + downloadBatchStatus.status());
+            if (Logger.isEnabled(LogLevel.VERBOSE)) {
+                Logger.v("abort starting download " + rawBatchId + ", " + STATUS + " " + downloadBatchStatus.status());
+            }
             return;
         }
 
@@ -64,30 +129,36 @@ class DownloadBatch {
 
         updateTotalSize();
 
-        Logger.v("batch " + downloadBatchStatus.getDownloadBatchId().rawId()
-                         + " " + STATUS + " " + downloadBatchStatus.status()
-                         + " totalBatchSize " + totalBatchSizeBytes);
-
-        if (shouldAbortAfterGettingTotalBatchSize(downloadBatchStatus, downloadsBatchPersistence, callback, totalBatchSizeBytes)) {
-            Logger.v("abort after getting total batch size download " + rawBatchId + ", " + STATUS + " " + downloadBatchStatus.status());
-            return;
+        if (Logger.isEnabled(LogLevel.VERBOSE)) {
+            Logger.v("batch " + downloadBatchStatus.getDownloadBatchId().rawId()
+                             + " " + STATUS + " " + downloadBatchStatus.status()
+                             + " totalBatchSize " + totalBatchSizeBytes);
         }
 
-        for (DownloadFile downloadFile : downloadFiles) {
-            if (batchCannotContinue(downloadBatchStatus, connectionChecker, downloadsBatchPersistence, callback)) {
-                break;
+        if (shouldAbortAfterGettingTotalBatchSize(downloadBatchStatus, downloadsBatchPersistence, callback, totalBatchSizeBytes, downloadFiles())) {
+            if (Logger.isEnabled(LogLevel.VERBOSE)) {
+                Logger.v("abort after getting total batch size download " + rawBatchId + ", " + STATUS + " " + downloadBatchStatus.status());
             }
-            downloadFile.download(fileDownloadCallback);
+            return;
         }
 
+        fileDownloadExecutor.download(
+                downloadFiles(),
+                fileDownloadCallback,
+                () -> !preempted && !batchCannotContinue(downloadBatchStatus, connectionChecker, downloadsBatchPersistence, callback)
+        );
+
         if (networkError(downloadBatchStatus)) {
             processNetworkError(downloadBatchStatus, callback, downloadsBatchPersistence);
         }
 
+        checkpointStoppedFiles();
         deleteBatchIfNeeded(downloadBatchStatus, downloadsBatchPersistence, callback);
         notifyCallback(callback, downloadBatchStatus);
         fileCallbackThrottle.stopUpdates();
-        Logger.v("end sync download " + rawBatchId);
+        if (Logger.isEnabled(LogLevel.VERBOSE)) {
+            Logger.v("end sync download " + rawBatchId);
+        }
     }
 
     private static boolean shouldAbortStartingBatch(ConnectionChecker connectionChecker,
@@ -132,7 +203,7 @@ class DownloadBatch {
                                             DownloadsBatchPersistence downloadsBatchPersistence,
                                             DownloadBatchStatusCallback callback) {
         if (downloadBatchStatus.status() == DELETING) {
-            Logger.v("sync delete and mark as deleted batch " + downloadBatchStatus.getDownloadBatchId().rawId());
+            Logger.v(() -> "sync delete and mark as deleted batch " + downloadBatchStatus.getDownloadBatchId().rawId());
             downloadBatchStatus.markAsDeleted();
             downloadsBatchPersistence.deleteSync(downloadBatchStatus);
             notifyCallback(callback, downloadBatchStatus);
@@ -141,7 +212,7 @@ class DownloadBatch {
 
     private static void notifyCallback(DownloadBatchStatusCallback callback, InternalDownloadBatchStatus downloadBatchStatus) {
         if (callback != null) {
-            callback.onUpdate(downloadBatchStatus.copy());
+            callback.onUpdate(downloadBatchStatus);
         }
     }
 
@@ -153,17 +224,16 @@ class DownloadBatch {
                                             DownloadBatchStatusCallback callback,
                                             DownloadsBatchPersistence downloadsBatchPersistence) {
         if (downloadBatchStatus.status() == DELETING) {
-            Logger.v("abort processNetworkError, the batch " + downloadBatchStatus.getDownloadBatchId().rawId() + " is deleting");
+            Logger.v(() -> "abort processNetworkError, the batch " + downloadBatchStatus.getDownloadBatchId().rawId() + " is deleting");
             return;
         }
         downloadBatchStatus.markAsWaitingForNetwork(downloadsBatchPersistence);
         notifyCallback(callback, downloadBatchStatus);
-        Logger.v(
-                "scheduleRecovery for batch "
-                        + downloadBatchStatus.getDownloadBatchId().rawId()
-                        + ", "
-                        + STATUS
-                        + " " + downloadBatchStatus.status()
+        Logger.v(() -> "scheduleRecovery for batch "
+                + downloadBatchStatus.getDownloadBatchId().rawId()
+                + ", "
+                + STATUS
+                + " " + downloadBatchStatus.status()
         );
         DownloadsNetworkRecoveryCreator.getInstance().scheduleRecovery();
     }
@@ -172,7 +242,7 @@ class DownloadBatch {
                                                   DownloadsBatchPersistence downloadsBatchPersistence,
                                                   DownloadBatchStatusCallback callback) {
         if (downloadBatchStatus.status() != DOWNLOADED) {
-            Logger.v("mark " + downloadBatchStatus.getDownloadBatchId().rawId() + " from " + downloadBatchStatus.status() + " to DOWNLOADING");
+            Logger.v(() -> "mark " + downloadBatchStatus.getDownloadBatchId().rawId() + " from " + downloadBatchStatus.status() + " to DOWNLOADING");
             downloadBatchStatus.markAsDownloading(downloadsBatchPersistence);
             notifyCallback(callback, downloadBatchStatus);
         }
@@ -181,7 +251,8 @@ class DownloadBatch {
     private static boolean shouldAbortAfterGettingTotalBatchSize(InternalDownloadBatchStatus downloadBatchStatus,
                                                                  DownloadsBatchPersistence downloadsBatchPersistence,
                                                                  DownloadBatchStatusCallback callback,
-                                                                 long totalBatchSizeBytes) {
+                                                                 long totalBatchSizeBytes,
+                                                                 List<DownloadFile> downloadFiles) {
         if (downloadBatchStatus.status() == PAUSED) {
             notifyCallback(callback, downloadBatchStatus);
             return true;
@@ -193,7 +264,7 @@ class DownloadBatch {
             return true;
         }
 
-        if (totalBatchSizeBytes <= ZERO_BYTES) {
+        if (totalBatchSizeBytes <= ZERO_BYTES && !resolveTotalSizeWhileDownloading(downloadFiles)) {
             processNetworkError(downloadBatchStatus, callback, downloadsBatchPersistence);
             notifyCallback(callback, downloadBatchStatus);
             return true;
@@ -202,6 +273,15 @@ class DownloadBatch {
         return false;
     }
 
+    private static boolean resolveTotalSizeWhileDownloading(List<DownloadFile> downloadFiles) {
+        for (DownloadFile downloadFile : downloadFiles) {
+            if (!downloadFile.resolvesTotalSizeWhileDownloading()) {
+                return false;
+            }
+        }
+        return !downloadFiles.isEmpty();
+    }
+
     private static boolean batchCannotContinue(InternalDownloadBatchStatus downloadBatchStatus,
                                                ConnectionChecker connectionChecker,
                                                DownloadsBatchPersistence downloadsBatchPersistence,
@@ -217,14 +297,19 @@ class DownloadBatch {
         }
     }
 
+    // Files can be downloaded in parallel, updates are serialised so that the aggregated progress stays consistent.
     private final DownloadFile.Callback fileDownloadCallback = new DownloadFile.Callback() {
         @Override
-        public void onUpdate(InternalDownloadFileStatus downloadFileStatus) {
-            fileBytesDownloadedMap.put(downloadFileStatus.downloadFileId(), downloadFileStatus.bytesDownloaded());
-            long currentBytesDownloaded = getBytesDownloadedFrom(fileBytesDownloadedMap);
+        public synchronized void onUpdate(InternalDownloadFileStatus downloadFileStatus) {
+            if (totalBatchSizeBytes == ZERO_BYTES) {
+                addToTotalSize(downloadFileStatus);
+            }
+
+            long currentBytesDownloaded = fileBytesDownloaded.update(downloadFileStatus.downloadFileId(), downloadFileStatus.bytesDownloaded());
             downloadBatchStatus.updateDownloaded(currentBytesDownloaded);
+            checkpointIfDue(downloadFileStatus);
 
-            if (currentBytesDownloaded > totalBatchSizeBytes) {
+            if (totalBatchSizeBytes != ZERO_BYTES && currentBytesDownloaded > totalBatchSizeBytes) {
                 DownloadError downloadError = DownloadErrorFactory.createSizeMismatchError(downloadFileStatus);
                 downloadBatchStatus.markAsError(Optional.of(downloadError), downloadsBatchPersistence);
                 fileCallbackThrottle.update(downloadBatchStatus);
@@ -247,17 +332,56 @@ class DownloadBatch {
         }
     };
 
-    private static long getBytesDownloadedFrom(Map<DownloadFileId, Long> fileBytesDownloadedMap) {
-        long bytesDownloaded = 0;
-        for (Map.Entry<DownloadFileId, Long> entry : fileBytesDownloadedMap.entrySet()) {
-            bytesDownloaded += entry.getValue();
+    /**
+     * Checkpoints a file every so many bytes and once it is complete, rather than on every chunk it downloads.
+     */
+    private void checkpointIfDue(InternalDownloadFileStatus downloadFileStatus) {
+        long bytesDownloaded = downloadFileStatus.bytesDownloaded();
+        long bytesCheckpointed = fileBytesCheckpointed.bytesOf(downloadFileStatus.downloadFileId());
+        boolean complete = bytesDownloaded == downloadFileStatus.totalBytes();
+        if (complete || bytesDownloaded < bytesCheckpointed || bytesDownloaded - bytesCheckpointed >= CHECKPOINT_INTERVAL_IN_BYTES) {
+            checkpoint(downloadFileStatus.downloadFileId(), bytesDownloaded);
+        }
+    }
+
+    /**
+     * The files that stopped short of a checkpoint, because they were paused or failed, get their last bytes checkpointed.
+     */
+    private void checkpointStoppedFiles() {
+        DownloadBatchStatus.Status status = downloadBatchStatus.status();
+        if (status == DELETING || status == DELETED) {
+            return;
+        }
+
+        for (DownloadFile downloadFile : downloadFiles()) {
+            long bytesDownloaded = fileBytesDownloaded.bytesOf(downloadFile.id());
+            if (bytesDownloaded != fileBytesCheckpointed.bytesOf(downloadFile.id())) {
+                checkpoint(downloadFile.id(), bytesDownloaded);
+            }
+        }
+    }
+
+    private void checkpoint(DownloadFileId downloadFileId, long bytesDownloaded) {
+        fileBytesCheckpointed.update(downloadFileId, bytesDownloaded);
+        downloadsBatchPersistence.updateDownloadedBytesAsync(downloadBatchStatus.getDownloadBatchId(), downloadFileId, bytesDownloaded);
+    }
+
+    // The total size of the batch is only known once every file has resolved its own size.
+    private void addToTotalSize(DownloadFileStatus downloadFileStatus) {
+        if (downloadFileStatus.totalBytes() <= ZERO_BYTES) {
+            return;
+        }
+
+        fileTotalSizes.update(downloadFileStatus.downloadFileId(), downloadFileStatus.totalBytes());
+        if (fileTotalSizes.hasBytesForEveryFile()) {
+            totalBatchSizeBytes = fileTotalSizes.totalBytes();
+            downloadBatchStatus.updateTotalSize(totalBatchSizeBytes);
         }
-        return bytesDownloaded;
     }
 
     private static boolean networkError(InternalDownloadBatchStatus downloadBatchStatus) {
         if (downloadBatchStatus.status() == DELETING) {
-            Logger.v("abort networkError check because the batch " + downloadBatchStatus.getDownloadBatchId().rawId() + " is deleting");
+            Logger.v(() -> "abort networkError check because the batch " + downloadBatchStatus.getDownloadBatchId().rawId() + " is deleting");
             return false;
         }
         DownloadBatchStatus.Status status = downloadBatchStatus.status();
@@ -271,71 +395,145 @@ class DownloadBatch {
     }
 
     void pause() {
-        Logger.v("pause batch " + downloadBatchStatus.getDownloadBatchId().rawId() + ", " + STATUS + " " + downloadBatchStatus.status());
+        preempted = false;
+        Logger.v(() -> "pause batch " + downloadBatchStatus.getDownloadBatchId().rawId() + ", " + STATUS + " " + downloadBatchStatus.status());
         DownloadBatchStatus.Status status = downloadBatchStatus.status();
-        if (status == PAUSED || status == DOWNLOADED) {
+        if (status == PAUSED || status == DOWNLOADED || !downloadBatchStatus.markAsPaused(downloadsBatchPersistence)) {
             return;
         }
-        downloadBatchStatus.markAsPaused(downloadsBatchPersistence);
         notifyCallback(callback, downloadBatchStatus);
 
-        for (DownloadFile downloadFile : downloadFiles) {
+        for (DownloadFile downloadFile : downloadFiles()) {
             downloadFile.pause();
         }
     }
 
+    /**
+     * Stops the batch to give its worker to a batch with a higher priority, the files keep the bytes downloaded so far.
+     * The batch goes back to QUEUED rather than PAUSED, it was not paused by the client and has to start again on its own,
+     * including after a restart.
+     *
+     * @return whether the batch is stopping.
+     */
+    boolean preempt() {
+        DownloadBatchStatus.Status status = downloadBatchStatus.status();
+        if ((status != QUEUED && status != DOWNLOADING) || !downloadBatchStatus.markAsQueued(downloadsBatchPersistence)) {
+            return false;
+        }
+        preempted = true;
+        notifyCallback(callback, downloadBatchStatus);
+
+        for (DownloadFile downloadFile : downloadFiles()) {
+            downloadFile.preempt();
+        }
+        return true;
+    }
+
+    /**
+     * Readies a preempted batch to run again, unless it was paused or deleted in the meantime.
+     *
+     * @return whether the batch has to be downloaded again.
+     */
+    boolean requeueAfterPreemption() {
+        if (!preempted) {
+            return false;
+        }
+        preempted = false;
+        DownloadBatchStatus.Status status = downloadBatchStatus.status();
+        return status == QUEUED || (status == DOWNLOADING && downloadBatchStatus.markAsQueued(downloadsBatchPersistence));
+    }
+
     void waitForNetwork() {
         DownloadBatchStatus.Status status = downloadBatchStatus.status();
         if (status != DOWNLOADING) {
             return;
         }
 
-        for (DownloadFile downloadFile : downloadFiles) {
+        for (DownloadFile downloadFile : downloadFiles()) {
             downloadFile.waitForNetwork();
         }
     }
 
+    /**
+     * A preempted batch is already queued, it stays preempted so that it keeps its place once its worker is released.
+     */
     void resume() {
         DownloadBatchStatus.Status status = downloadBatchStatus.status();
-        if (status == QUEUED || status == DOWNLOADING || status == DOWNLOADED) {
+        if (status == QUEUED || status == DOWNLOADING || status == DOWNLOADED || !downloadBatchStatus.markAsQueued(downloadsBatchPersistence)) {
             return;
         }
-        downloadBatchStatus.markAsQueued(downloadsBatchPersistence);
         notifyCallback(callback, downloadBatchStatus);
-        for (DownloadFile downloadFile : downloadFiles) {
+        for (DownloadFile downloadFile : downloadFiles()) {
             downloadFile.resume();
         }
     }
 
     void delete() {
-        DownloadBatchStatus.Status status = downloadBatchStatus.status();
-        if (status == DELETING || status == DELETED) {
-            Logger.v("abort delete batch " + downloadBatchStatus.getDownloadBatchId().rawId() + " because the " + STATUS + " is " + status);
+        Optional<DownloadBatchStatus.Status> previousStatus = markAsDeleting();
+        if (previousStatus.isAbsent()) {
             return;
         }
 
-        downloadBatchStatus.markAsDeleting();
-        Logger.v("delete request for batch " + downloadBatchStatus.getDownloadBatchId().rawId()
-                         + ", " + STATUS + " " + downloadBatchStatus.status()
-                         + ", should be deleting");
+        if (isStopped(previousStatus.get())) {
+            Logger.v(() -> "delete async paused or downloaded batch " + downloadBatchStatus.getDownloadBatchId().rawId());
+            downloadsBatchPersistence.deleteAsync(downloadBatchStatus, downloadBatchId -> {
+                Logger.v(() -> "delete paused or downloaded mark as deleted: " + downloadBatchId.rawId());
+                markAsDeleted();
+                deleteFiles();
+            });
+        } else {
+            deleteFiles();
+        }
+
+        Logger.v(() -> "delete request for batch end " + downloadBatchStatus.getDownloadBatchId().rawId()
+                               + ", " + STATUS + ": " + downloadBatchStatus.status()
+                               + ", should be deleting");
+    }
+
+    /**
+     * @return the status the batch was deleted from, absent when the batch cannot be deleted.
+     */
+    Optional<DownloadBatchStatus.Status> markAsDeleting() {
+        Optional<DownloadBatchStatus.Status> previousStatus = downloadBatchStatus.markAsDeleting();
+        if (previousStatus.isAbsent()) {
+            Logger.v(() -> "abort delete batch " + downloadBatchStatus.getDownloadBatchId().rawId()
+                                   + " because the " + STATUS + " is " + downloadBatchStatus.status());
+            return previousStatus;
+        }
+
+        Logger.v(() -> "delete request for batch " + downloadBatchStatus.getDownloadBatchId().rawId()
+                               + ", " + STATUS + " " + downloadBatchStatus.status()
+                               + ", should be deleting");
         notifyCallback(callback, downloadBatchStatus);
+        return previousStatus;
+    }
 
-        for (DownloadFile downloadFile : downloadFiles) {
-            downloadFile.delete();
+    /**
+     * Stops the files that are downloading, the others are removed from the storage.
+     * Files that are not hydrated are removed through their persisted paths, without building them.
+     */
+    void deleteFiles() {
+        PersistedDownloadFiles unhydratedDownloadFiles = persistedDownloadFiles;
+        if (unhydratedDownloadFiles != null) {
+            unhydratedDownloadFiles.delete();
+            return;
         }
 
-        if (status == PAUSED || status == DOWNLOADED || status == WAITING_FOR_NETWORK || status == ERROR) {
-            Logger.v("delete async paused or downloaded batch " + downloadBatchStatus.getDownloadBatchId().rawId());
-            downloadsBatchPersistence.deleteAsync(downloadBatchStatus, downloadBatchId -> {
-                Logger.v("delete paused or downloaded mark as deleted: " + downloadBatchId.rawId());
-                downloadBatchStatus.markAsDeleted();
-                notifyCallback(callback, downloadBatchStatus);
-            });
+        for (DownloadFile downloadFile : downloadFiles()) {
+            downloadFile.delete();
         }
+    }
 
-        Logger.v("delete request for batch end " + downloadBatchStatus.getDownloadBatchId().rawId()
-                         + ", " + STATUS + ": " + downloadBatchStatus.status()
-                         + ", should be deleting");
+    void markAsDeleted() {
+        downloadBatchStatus.markAsDeleted();
+        notifyCallback(callback, downloadBatchStatus);
+    }
+
+    /**
+     * A stopped batch is not going to finish its download, whoever deletes it removes it from the persistence.
+     */
+    static boolean isStopped(DownloadBatchStatus.Status status) {
+        return status == PAUSED || status == DOWNLOADED || status == WAITING_FOR_NETWORK || status == ERROR;
     }
 
     DownloadBatchId getId() {
@@ -348,7 +546,12 @@ class DownloadBatch {
 
     @Nullable
     DownloadFileStatus downloadFileStatusWith(DownloadFileId downloadFileId) {
-        for (DownloadFile downloadFile : downloadFiles) {
+        PersistedDownloadFiles unhydratedDownloadFiles = persistedDownloadFiles;
+        if (unhydratedDownloadFiles != null) {
+            return unhydratedDownloadFiles.fileStatusWith(downloadFileId, downloadBatchStatus.status());
+        }
+
+        for (DownloadFile downloadFile : downloadFiles()) {
             if (downloadFile.matches(downloadFileId)) {
                 return downloadFile.fileStatus();
             }
@@ -357,37 +560,56 @@ class DownloadBatch {
     }
 
     void persistAsync() {
+        if (isPersistedAsIs()) {
+            return;
+        }
         downloadsBatchPersistence.persistAsync(
                 downloadBatchStatus.getDownloadBatchTitle(),
                 downloadBatchStatus.getDownloadBatchId(),
                 downloadBatchStatus.status(),
-                downloadFiles,
+                downloadFiles(),
                 downloadBatchStatus.downloadedDateTimeInMillis(),
                 downloadBatchStatus.notificationSeen(),
-                downloadBatchStatus.storageRoot()
+                downloadBatchStatus.storageRoot(),
+                downloadBatchStatus.priority()
         );
     }
 
     @WorkerThread
     void persist() {
+        if (isPersistedAsIs()) {
+            return;
+        }
         downloadsBatchPersistence.persist(
                 downloadBatchStatus.getDownloadBatchTitle(),
                 downloadBatchStatus.getDownloadBatchId(),
                 downloadBatchStatus.status(),
-                downloadFiles,
+                downloadFiles(),
                 downloadBatchStatus.downloadedDateTimeInMillis(),
                 downloadBatchStatus.notificationSeen(),
-                downloadBatchStatus.storageRoot()
+                downloadBatchStatus.storageRoot(),
+                downloadBatchStatus.priority()
         );
     }
 
+    /**
+     * Files that are not hydrated yet cannot have changed since they were persisted.
+     */
+    private boolean isPersistedAsIs() {
+        return persistedDownloadFiles != null;
+    }
+
     @WorkerThread
     void updateTotalSize() {
-        if (totalBatchSizeBytes == 0) {
+        if (totalBatchSizeBytes == 0 && resolveTotalSizeWhileDownloading(downloadFiles())) {
+            for (DownloadFile downloadFile : downloadFiles()) {
+                addToTotalSize(downloadFile.fileStatus());
+            }
+        } else if (totalBatchSizeBytes == 0) {
             totalBatchSizeBytes = DownloadBatchSizeCalculator.getTotalSize(
-                    downloadFiles,
-                    downloadBatchStatus.status(),
-                    downloadBatchStatus.getDownloadBatchId()
+                    downloadFiles(),
+                    downloadBatchStatus,
+                    fileSizeExecutor
             );
         }
         downloadBatchStatus.updateTotalSize(totalBatchSizeBytes);
@@ -1,7 +1,6 @@
 package com.novoda.downloadmanager;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 final class DownloadBatchFactory {
@@ -48,6 +47,7 @@ final class DownloadBatchFactory {
             );
 
             FileDownloader fileDownloader = fileOperations.fileDownloaderCreator().create();
+            SegmentedFileDownloader segmentedFileDownloader = fileOperations.fileDownloaderCreator().createSegmented();
             FileSizeRequester fileSizeRequester = fileOperations.fileSizeRequester();
 
             DownloadFile downloadFile = new DownloadFile(
@@ -58,9 +58,12 @@ final class DownloadBatchFactory {
                     filePath,
                     fileSize,
                     fileDownloader,
+                    segmentedFileDownloader,
                     fileSizeRequester,
                     filePersistence,
-                    downloadsFilePersistence
+                    downloadsFilePersistence,
+                    fileOperations.sharedFileDownloads(),
+                    fileOperations.fileDownloaderCreator().connectionLimit()
             );
             downloadFiles.add(downloadFile);
         }
@@ -74,16 +77,18 @@ final class DownloadBatchFactory {
                 TOTAL_BATCH_SIZE_BYTES,
                 DownloadBatchStatus.Status.UNKNOWN,
                 NOTIFICATION_NOT_SEEN,
-                DOWNLOAD_ERROR
+                DOWNLOAD_ERROR,
+                batch.priority()
         );
 
         return new DownloadBatch(
                 liteDownloadBatchStatus,
                 downloadFiles,
-                new HashMap<>(),
                 downloadsBatchPersistence,
                 fileCallbackThrottle,
-                connectionChecker
+                connectionChecker,
+                fileOperations.fileDownloadExecutor(),
+                fileOperations.fileSizeExecutor()
         );
     }
 
@@ -3,6 +3,8 @@ package com.novoda.downloadmanager;
 import android.support.annotation.WorkerThread;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETING;
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETED;
@@ -14,29 +16,49 @@ final class DownloadBatchSizeCalculator {
         // non instantiable
     }
 
+    /**
+     * Requests the sizes of the files concurrently, no further request is started once
+     * the batch is paused or deleted, or once a file size cannot be resolved.
+     *
+     * @return the total size of the batch, zero if it could not be resolved.
+     */
     @WorkerThread
-    static long getTotalSize(List<DownloadFile> downloadFiles, DownloadBatchStatus.Status status, DownloadBatchId downloadBatchId) {
-        long totalBatchSize = 0;
-        for (DownloadFile downloadFile : downloadFiles) {
-            if (status == DELETING || status == DELETED || status == PAUSED) {
-                Logger.w("abort getTotalSize file " + downloadFile.id().rawId()
-                             + " from batch " + downloadBatchId.rawId()
-                             + " with status " + status
-                             + " returns 0 as totalFileSize");
-                return 0;
-            }
-
-            long totalFileSize = downloadFile.getTotalSize();
-            if (totalFileSize == 0) {
-                Logger.w("file " + downloadFile.id().rawId()
-                             + " from batch " + downloadBatchId.rawId()
-                             + " with status " + status
-                             + " returns 0 as totalFileSize");
-                return 0;
-            }
-
-            totalBatchSize += totalFileSize;
+    static long getTotalSize(List<DownloadFile> downloadFiles,
+                             InternalDownloadBatchStatus downloadBatchStatus,
+                             FileDownloadExecutor fileSizeExecutor) {
+        DownloadBatchId downloadBatchId = downloadBatchStatus.getDownloadBatchId();
+        AtomicLong totalBatchSize = new AtomicLong();
+        AtomicBoolean totalSizeUnknown = new AtomicBoolean();
+
+        fileSizeExecutor.forEach(
+                downloadFiles,
+                downloadFile -> {
+                    long totalFileSize = downloadFile.getTotalSize();
+                    if (totalFileSize == 0) {
+                        Logger.w("file " + downloadFile.id().rawId()
+                                     + " from batch " + downloadBatchId.rawId()
+                                     + " with status " + downloadBatchStatus.status()
+                                     + " returns 0 as totalFileSize");
+                        totalSizeUnknown.set(true);
+                    } else {
+                        totalBatchSize.addAndGet(totalFileSize);
+                    }
+                },
+                () -> !totalSizeUnknown.get() && !isAborted(downloadBatchStatus.status())
+        );
+
+        DownloadBatchStatus.Status status = downloadBatchStatus.status();
+        if (isAborted(status)) {
+            Logger.w("abort getTotalSize for batch " + downloadBatchId.rawId()
+                         + " with status " + status
+                         + " returns 0 as totalBatchSize");
+            return 0;
         }
-        return totalBatchSize;
+
+        return totalSizeUnknown.get() ? 0 : totalBatchSize.get();
+    }
+
+    private static boolean isAborted(DownloadBatchStatus.Status status) {
+        return status == DELETING || status == DELETED || status == PAUSED;
     }
 }
@@ -1,30 +1,88 @@
 package com.novoda.downloadmanager;
 
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Filters out the updates that repeat the last update forwarded for the same batch, so that
+ * interleaved updates of several batches are still de-duplicated. Updates are compared on a few
+ * fields kept per batch, filtering an update out does not allocate. The fields of a batch are dropped
+ * once it is deleted, so that they are not kept for the lifetime of the process.
+ */
 class DownloadBatchStatusFilter {
 
-    private InternalDownloadBatchStatus currentStatus;
+    private final Map<String, Fingerprint> fingerprintsByRawBatchId = new HashMap<>();
 
-    boolean shouldFilterOut(DownloadBatchStatus currentDownloadBatchStatus) {
+    synchronized boolean shouldFilterOut(DownloadBatchStatus currentDownloadBatchStatus) {
         if (!(currentDownloadBatchStatus instanceof InternalDownloadBatchStatus)) {
             Logger.w(currentDownloadBatchStatus.getClass() + " is not an instance of " + InternalDownloadBatchStatus.class);
             return true;
         }
 
-        InternalDownloadBatchStatus copiedStatus = ((InternalDownloadBatchStatus) currentDownloadBatchStatus).copy();
-        if (copiedStatus.equals(currentStatus)) {
-            Logger.v("Failed filter. "
-                             + "ID: " + currentDownloadBatchStatus.getDownloadBatchId().rawId()
-                             + " Status: " + currentDownloadBatchStatus.status().toRawValue()
-            );
+        String rawBatchId = currentDownloadBatchStatus.getDownloadBatchId().rawId();
+        Fingerprint fingerprint = fingerprintsByRawBatchId.get(rawBatchId);
+        boolean verbose = Logger.isEnabled(LogLevel.VERBOSE);
+        if (fingerprint != null && fingerprint.matches(currentDownloadBatchStatus)) {
+            if (verbose) {
+                Logger.v("Failed filter. "
+                                 + "ID: " + rawBatchId
+                                 + " Status: " + currentDownloadBatchStatus.status().toRawValue()
+                );
+            }
             return true;
         }
 
-        Logger.v(
-                "Passes filter. "
-                        + "ID: " + currentDownloadBatchStatus.getDownloadBatchId().rawId()
-                        + " Status: " + currentDownloadBatchStatus.status().toRawValue()
-        );
-        currentStatus = copiedStatus;
+        if (verbose) {
+            Logger.v(
+                    "Passes filter. "
+                            + "ID: " + rawBatchId
+                            + " Status: " + currentDownloadBatchStatus.status().toRawValue()
+            );
+        }
+        if (currentDownloadBatchStatus.status() == DownloadBatchStatus.Status.DELETED) {
+            fingerprintsByRawBatchId.remove(rawBatchId);
+            return false;
+        }
+        if (fingerprint == null) {
+            fingerprint = new Fingerprint();
+            fingerprintsByRawBatchId.put(rawBatchId, fingerprint);
+        }
+        fingerprint.update(currentDownloadBatchStatus);
         return false;
     }
+
+    private static class Fingerprint {
+
+        private DownloadBatchStatus.Status status;
+        private int percentageDownloaded;
+        private long bytesDownloaded;
+        private long bytesTotalSize;
+        private boolean notificationSeen;
+        @Nullable
+        private DownloadError downloadError;
+
+        void update(DownloadBatchStatus downloadBatchStatus) {
+            status = downloadBatchStatus.status();
+            percentageDownloaded = downloadBatchStatus.percentageDownloaded();
+            bytesDownloaded = downloadBatchStatus.bytesDownloaded();
+            bytesTotalSize = downloadBatchStatus.bytesTotalSize();
+            notificationSeen = downloadBatchStatus.notificationSeen();
+            downloadError = downloadBatchStatus.downloadError();
+        }
+
+        boolean matches(DownloadBatchStatus downloadBatchStatus) {
+            return status == downloadBatchStatus.status()
+                    && percentageDownloaded == downloadBatchStatus.percentageDownloaded()
+                    && bytesDownloaded == downloadBatchStatus.bytesDownloaded()
+                    && bytesTotalSize == downloadBatchStatus.bytesTotalSize()
+                    && notificationSeen == downloadBatchStatus.notificationSeen()
+                    && sameError(downloadBatchStatus.downloadError());
+        }
+
+        private boolean sameError(@Nullable DownloadError otherDownloadError) {
+            return downloadError == null ? otherDownloadError == null : downloadError.equals(otherDownloadError);
+        }
+    }
 }
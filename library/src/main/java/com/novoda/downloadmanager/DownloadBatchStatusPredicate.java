@@ -0,0 +1,10 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Given to the bulk operations of the {@link DownloadManager}, e.g. {@link DownloadManager#pauseAll(DownloadBatchStatusPredicate)},
+ * to select the batches the operation applies to by their current {@link DownloadBatchStatus}.
+ */
+public interface DownloadBatchStatusPredicate {
+
+    boolean matches(DownloadBatchStatus downloadBatchStatus);
+}
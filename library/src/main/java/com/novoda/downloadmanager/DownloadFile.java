@@ -2,19 +2,31 @@ package com.novoda.downloadmanager;
 
 import android.support.annotation.WorkerThread;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 // This model knows how to interact with low level components.
 @SuppressWarnings({"PMD.CyclomaticComplexity", "PMD.StdCyclomaticComplexity", "PMD.ModifiedCyclomaticComplexity"})
 class DownloadFile {
 
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     private final DownloadBatchId downloadBatchId;
     private final DownloadFileId downloadFileId;
     private final String url;
     private final InternalDownloadFileStatus downloadFileStatus;
     private final FileDownloader fileDownloader;
+    private final SegmentedFileDownloader segmentedFileDownloader;
     private final FileSizeRequester fileSizeRequester;
     private final FilePersistence filePersistence;
     private final DownloadsFilePersistence downloadsFilePersistence;
+    private final SharedFileDownloads sharedFileDownloads;
+    private final AdaptiveConnectionLimit connectionLimit;
     private final FilePath filePath;
+    private final InFlightCalls fileSizeCalls = new InFlightCalls();
 
     private InternalFileSize fileSize;
 
@@ -27,70 +39,157 @@ class DownloadFile {
                  FilePath filePath,
                  InternalFileSize fileSize,
                  FileDownloader fileDownloader,
+                 SegmentedFileDownloader segmentedFileDownloader,
                  FileSizeRequester fileSizeRequester,
                  FilePersistence filePersistence,
-                 DownloadsFilePersistence downloadsFilePersistence) {
+                 DownloadsFilePersistence downloadsFilePersistence,
+                 SharedFileDownloads sharedFileDownloads,
+                 AdaptiveConnectionLimit connectionLimit) {
         this.downloadBatchId = downloadBatchId;
         this.downloadFileId = downloadFileId;
         this.url = url;
         this.downloadFileStatus = downloadFileStatus;
         this.filePath = filePath;
         this.fileDownloader = fileDownloader;
+        this.segmentedFileDownloader = segmentedFileDownloader;
         this.fileSizeRequester = fileSizeRequester;
         this.filePersistence = filePersistence;
         this.fileSize = fileSize;
         this.downloadsFilePersistence = downloadsFilePersistence;
+        this.sharedFileDownloads = sharedFileDownloads;
+        this.connectionLimit = connectionLimit;
     }
 
-    // This ia complex because we have to constantly check states and perform updates.
-    @SuppressWarnings("PMD.NPathComplexity")
     void download(Callback callback) {
         downloadFileStatus.markAsDownloading();
 
         callback.onUpdate(downloadFileStatus);
 
+        Optional<FilePath> completedFilePath = sharedFileDownloads.acquire(url, filePath, downloadFileStatus::isMarkedAsDownloading);
+        if (completedFilePath.isPresent()) {
+            long completedFileSize = new File(completedFilePath.get().path()).length();
+            if (hasExpectedSize(completedFilePath.get(), completedFileSize)) {
+                takeBytesOf(completedFilePath.get(), completedFileSize, callback);
+                return;
+            }
+            sharedFileDownloads.rejectCompletedFile(url, completedFilePath.get(), filePath);
+        }
+
+        try {
+            if (downloadFileStatus.isMarkedAsDownloading() && connectionLimit.acquire(downloadFileStatus::isMarkedAsDownloading)) {
+                try {
+                    downloadFromNetwork(callback);
+                } finally {
+                    connectionLimit.release();
+                }
+            }
+        } finally {
+            boolean completed = downloadFileStatus.status() == DownloadFileStatus.Status.DOWNLOADED;
+            sharedFileDownloads.finishDownloading(url, filePath, completed);
+        }
+    }
+
+    // This ia complex because we have to constantly check states and perform updates.
+    @SuppressWarnings("PMD.NPathComplexity")
+    private void downloadFromNetwork(Callback callback) {
         fileSize = requestTotalFileSizeIfNecessary(fileSize);
 
-        if (fileSize.isTotalSizeUnknown()) {
+        if (fileSize.isTotalSizeUnknown() && !resolvesTotalSizeWhileDownloading()) {
             DownloadError downloadError = DownloadErrorFactory.createTotalSizeRequestFailedError(downloadFileId, url);
             updateAndFeedbackWithStatus(downloadError, callback);
             return;
         }
 
-        fileSize.setCurrentSize(filePersistence.getCurrentSize(filePath));
+        fileSize.setCurrentSize(segmentedFileDownloader.currentSize(filePath, filePersistence));
 
         if (downloadFileStatus.isMarkedAsDeleted()) {
             return;
         }
 
-        Logger.v("persist file " + downloadFileId.rawId() + ", with status: " + downloadFileStatus.status());
+        if (Logger.isEnabled(LogLevel.VERBOSE)) {
+            Logger.v("persist file " + downloadFileId.rawId() + ", with status: " + downloadFileStatus.status());
+        }
         if (!persist()) {
             Logger.e("persisting file " + downloadFileId.rawId() + " with status " + downloadFileStatus.status() + " failed");
             return;
         }
 
-        if (fileSize.currentSize() == fileSize.totalSize()) {
+        if (fileSize.isTotalSizeKnown() && fileSize.currentSize() == fileSize.totalSize()) {
             downloadFileStatus.update(fileSize, filePath);
             callback.onUpdate(downloadFileStatus);
             return;
         }
 
-        FilePersistenceResult result = filePersistence.create(filePath, fileSize);
-        if (result != FilePersistenceResult.SUCCESS) {
-            DownloadError downloadError = convertError(result);
-            updateAndFeedbackWithStatus(downloadError, callback);
-            return;
+        // Otherwise the file is created once the download response tells its total size.
+        if (fileSize.isTotalSizeKnown()) {
+            FilePersistenceResult result = filePersistence.create(filePath, fileSize);
+            if (result != FilePersistenceResult.SUCCESS) {
+                DownloadError downloadError = convertError(result);
+                updateAndFeedbackWithStatus(downloadError, callback);
+                return;
+            }
+
+            if (segmentedFileDownloader.shouldDownloadInSegments(filePath, fileSize, filePersistence)) {
+                filePersistence.close();
+                if (downloadInSegments(callback)) {
+                    return;
+                }
+
+                Logger.w("file " + downloadFileId.rawId() + " cannot be downloaded in segments, downloading it in a single request");
+                filePersistence.delete(filePath);
+                fileSize.setCurrentSize(0);
+                result = filePersistence.create(filePath, fileSize);
+                if (result != FilePersistenceResult.SUCCESS) {
+                    DownloadError downloadError = convertError(result);
+                    updateAndFeedbackWithStatus(downloadError, callback);
+                    return;
+                }
+            }
         }
 
-        fileDownloader.startDownloading(url, fileSize, new FileDownloader.Callback() {
+        fileDownloader.startDownloading(url, fileSize, new ByteBufferFileDownloaderCallback() {
+            @Override
+            public void onTotalSizeResolved(long totalSize) {
+                fileSize.setTotalSize(totalSize);
+                persist();
+
+                FilePersistenceResult result = filePersistence.create(filePath, fileSize);
+                if (result != FilePersistenceResult.SUCCESS) {
+                    DownloadError downloadError = convertError(result);
+                    updateAndFeedbackWithStatus(downloadError, callback);
+                    fileDownloader.stopDownloading();
+                    return;
+                }
+
+                downloadFileStatus.update(fileSize, filePath);
+                callback.onUpdate(downloadFileStatus);
+            }
+
             @Override
             public void onBytesRead(byte[] buffer, int bytesRead) {
                 boolean success = filePersistence.write(buffer, 0, bytesRead);
+                onBytesWritten(success, bytesRead);
+            }
+
+            @Override
+            public boolean acceptsByteBuffers() {
+                return filePersistence instanceof ByteBufferFilePersistence;
+            }
+
+            @Override
+            public void onBytesRead(ByteBuffer buffer) {
+                int bytesRead = buffer.remaining();
+                boolean success = ((ByteBufferFilePersistence) filePersistence).write(buffer);
+                onBytesWritten(success, bytesRead);
+            }
+
+            private void onBytesWritten(boolean success, int bytesRead) {
                 if (!success) {
                     DownloadError downloadError = DownloadErrorFactory.createCannotWriteToFileError(downloadFileStatus);
                     updateAndFeedbackWithStatus(downloadError, callback);
                 }
 
+                connectionLimit.onBytesDownloaded(bytesRead);
                 if (downloadFileStatus.isMarkedAsDownloading()) {
                     fileSize.addToCurrentSize(bytesRead);
                     downloadFileStatus.update(fileSize, filePath);
@@ -100,6 +199,7 @@ class DownloadFile {
 
             @Override
             public void onError(String cause) {
+                connectionLimit.onError();
                 DownloadError downloadError = DownloadErrorFactory.createNetworkError(cause);
                 updateAndFeedbackWithStatus(downloadError, callback);
             }
@@ -115,6 +215,142 @@ class DownloadFile {
                 }
             }
         });
+
+        if (fileSize.isTotalSizeUnknown() && downloadFileStatus.isMarkedAsDownloading()) {
+            downloadAfterRequestingTotalSize(callback);
+        }
+    }
+
+    private void downloadAfterRequestingTotalSize(Callback callback) {
+        Logger.w("file " + downloadFileId.rawId() + " response does not tell its total size, requesting it separately");
+        FileSize requestFileSize = requestFileSize();
+        if (requestFileSize.isTotalSizeUnknown()) {
+            DownloadError downloadError = DownloadErrorFactory.createTotalSizeRequestFailedError(downloadFileId, url);
+            updateAndFeedbackWithStatus(downloadError, callback);
+            return;
+        }
+
+        fileSize.setTotalSize(requestFileSize.totalSize());
+        downloadFromNetwork(callback);
+    }
+
+    /**
+     * The completed file may have been truncated or emptied since it was downloaded, in which case it is downloaded again.
+     */
+    private boolean hasExpectedSize(FilePath completedFilePath, long completedFileSize) {
+        boolean expectedSize = fileSize.isTotalSizeKnown() ? completedFileSize == fileSize.totalSize() : completedFileSize > 0;
+        if (!expectedSize) {
+            Logger.w("file " + downloadFileId.rawId() + " expects " + fileSize.totalSize() + " bytes but " + completedFilePath.path()
+                             + " has " + completedFileSize + ", downloading it instead");
+        }
+        return expectedSize;
+    }
+
+    private void takeBytesOf(FilePath completedFilePath, long totalSize, Callback callback) {
+        boolean taken = false;
+        try {
+            taken = linkOrCopy(completedFilePath, totalSize, callback);
+        } finally {
+            sharedFileDownloads.releaseCompletedFile(url, completedFilePath, filePath, taken);
+        }
+    }
+
+    private boolean linkOrCopy(FilePath completedFilePath, long totalSize, Callback callback) {
+        fileSize.setTotalSize(totalSize);
+        fileSize.setCurrentSize(0);
+        segmentedFileDownloader.delete(filePath);
+        filePersistence.delete(filePath);
+        if (!persist()) {
+            Logger.e("persisting file " + downloadFileId.rawId() + " with status " + downloadFileStatus.status() + " failed");
+            return false;
+        }
+
+        if (!SharedFileDownloads.link(completedFilePath, filePath)) {
+            FilePersistenceResult result = filePersistence.create(filePath, fileSize);
+            if (result != FilePersistenceResult.SUCCESS) {
+                DownloadError downloadError = convertError(result);
+                updateAndFeedbackWithStatus(downloadError, callback);
+                return false;
+            }
+
+            boolean copied = copyFrom(completedFilePath);
+            filePersistence.close();
+            if (!copied) {
+                DownloadError downloadError = DownloadErrorFactory.createCannotWriteToFileError(downloadFileStatus);
+                updateAndFeedbackWithStatus(downloadError, callback);
+                return false;
+            }
+        }
+
+        if (downloadFileStatus.isMarkedAsDeleted()) {
+            filePersistence.delete(filePath);
+            return false;
+        }
+
+        // A paused file takes the bytes again once resumed.
+        if (!downloadFileStatus.isMarkedAsDownloading()) {
+            return false;
+        }
+
+        fileSize.setCurrentSize(totalSize);
+        downloadFileStatus.update(fileSize, filePath);
+        callback.onUpdate(downloadFileStatus);
+        return true;
+    }
+
+    /**
+     * @return false when the bytes could not be copied, stopping the copy is not a failure.
+     */
+    private boolean copyFrom(FilePath completedFilePath) {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int readLast = 0;
+        try (InputStream in = new FileInputStream(completedFilePath.path())) {
+            while (downloadFileStatus.isMarkedAsDownloading() && readLast != -1) {
+                readLast = in.read(buffer);
+
+                if (readLast > 0 && !filePersistence.write(buffer, 0, readLast)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            Logger.e(e, "Exception while copying " + completedFilePath.path());
+            return false;
+        }
+    }
+
+    private boolean downloadInSegments(Callback callback) {
+        return segmentedFileDownloader.startDownloading(url, filePath, fileSize, new SegmentedFileDownloader.Callback() {
+            @Override
+            public void onBytesWritten(int bytesWritten) {
+                connectionLimit.onBytesDownloaded(bytesWritten);
+                synchronized (DownloadFile.this) {
+                    if (downloadFileStatus.isMarkedAsDownloading()) {
+                        fileSize.addToCurrentSize(bytesWritten);
+                        downloadFileStatus.update(fileSize, filePath);
+                        callback.onUpdate(downloadFileStatus);
+                    }
+                }
+            }
+
+            @Override
+            public void onError(String cause) {
+                connectionLimit.onError();
+                DownloadError downloadError = DownloadErrorFactory.createNetworkError(cause);
+                updateAndFeedbackWithStatus(downloadError, callback);
+            }
+
+            @Override
+            public void onDownloadFinished() {
+                if (downloadFileStatus.isMarkedAsDeleted()) {
+                    segmentedFileDownloader.delete(filePath);
+                    filePersistence.delete(filePath);
+                }
+                if (downloadFileStatus.isMarkedAsWaitingForNetwork()) {
+                    callback.onUpdate(downloadFileStatus);
+                }
+            }
+        });
     }
 
     private DownloadError convertError(FilePersistenceResult status) {
@@ -134,8 +370,8 @@ class DownloadFile {
     private InternalFileSize requestTotalFileSizeIfNecessary(InternalFileSize fileSize) {
         InternalFileSize updatedFileSize = fileSize.copy();
 
-        if (fileSize.isTotalSizeUnknown()) {
-            FileSize requestFileSize = fileSizeRequester.requestFileSize(url);
+        if (fileSize.isTotalSizeUnknown() && !resolvesTotalSizeWhileDownloading()) {
+            FileSize requestFileSize = requestFileSize();
             if (requestFileSize.isTotalSizeKnown()) {
                 updatedFileSize.setTotalSize(requestFileSize.totalSize());
             }
@@ -144,6 +380,27 @@ class DownloadFile {
         return updatedFileSize;
     }
 
+    /**
+     * The calls are reopened before the status is checked, a file stopped in between has its request cancelled.
+     * Requesters that cannot be cancelled are only skipped for a file that is already stopped.
+     */
+    private FileSize requestFileSize() {
+        fileSizeCalls.open();
+        DownloadFileStatus.Status status = downloadFileStatus.status();
+        if (status == DownloadFileStatus.Status.PAUSED
+                || status == DownloadFileStatus.Status.DELETED
+                || status == DownloadFileStatus.Status.WAITING_FOR_NETWORK) {
+            if (Logger.isEnabled(LogLevel.VERBOSE)) {
+                Logger.v("skip size request of file " + downloadFileId.rawId() + " with status " + status);
+            }
+            return FileSizeCreator.unknownFileSize();
+        }
+        if (fileSizeRequester instanceof CancellableFileSizeRequester) {
+            return ((CancellableFileSizeRequester) fileSizeRequester).requestFileSize(url, fileSizeCalls);
+        }
+        return fileSizeRequester.requestFileSize(url);
+    }
+
     private void updateAndFeedbackWithStatus(DownloadError downloadError, Callback callback) {
         downloadFileStatus.markAsError(downloadError);
         callback.onUpdate(downloadFileStatus);
@@ -151,34 +408,63 @@ class DownloadFile {
 
     void pause() {
         downloadFileStatus.markAsPaused();
+        fileSizeCalls.cancelAll();
         fileDownloader.stopDownloading();
+        segmentedFileDownloader.stopDownloading();
     }
 
     void resume() {
         downloadFileStatus.markAsQueued();
     }
 
+    /**
+     * Stops the download and queues the file again, so that it carries on from its bytes once its batch runs again.
+     */
+    void preempt() {
+        downloadFileStatus.markAsQueued();
+        fileDownloader.stopDownloading();
+        segmentedFileDownloader.stopDownloading();
+    }
+
     void waitForNetwork() {
         downloadFileStatus.waitForNetwork();
+        fileSizeCalls.cancelAll();
         fileDownloader.stopDownloading();
+        segmentedFileDownloader.stopDownloading();
     }
 
     void delete() {
         if (downloadFileStatus.isMarkedAsDownloading()) {
             downloadFileStatus.markAsDeleted();
-            Logger.v("mark file as deleted for batchId: " + downloadBatchId.rawId());
+            fileSizeCalls.cancelAll();
+            Logger.v(() -> "mark file as deleted for batchId: " + downloadBatchId.rawId());
             fileDownloader.stopDownloading();
+            segmentedFileDownloader.stopDownloading();
         } else {
             downloadFileStatus.markAsDeleted();
-            Logger.v("mark file as deleted for batchId: " + downloadBatchId.rawId());
-            filePersistence.delete(filePath);
+            fileSizeCalls.cancelAll();
+            Logger.v(() -> "mark file as deleted for batchId: " + downloadBatchId.rawId());
+            segmentedFileDownloader.delete(filePath);
+            sharedFileDownloads.delete(url, filePath, () -> filePersistence.delete(filePath));
         }
     }
 
+    /**
+     * Files can learn their total size from the download response itself, saving a separate size request,
+     * unless they are split in segments which needs the size upfront.
+     */
+    boolean resolvesTotalSizeWhileDownloading() {
+        return fileDownloader.resolvesTotalSize() && !segmentedFileDownloader.splitsNewFiles();
+    }
+
     @WorkerThread
     long getTotalSize() {
+        if (fileSize.isTotalSizeUnknown() && resolvesTotalSizeWhileDownloading()) {
+            return 0;
+        }
+
         if (fileSize.isTotalSizeUnknown()) {
-            FileSize requestFileSize = fileSizeRequester.requestFileSize(url);
+            FileSize requestFileSize = requestFileSize();
             fileSize.setTotalSize(requestFileSize.totalSize());
             if (fileStatus().status() == DownloadFileStatus.Status.DELETED) {
                 Logger.e("file getTotalSize return zero because is deleted, " + downloadFileId.rawId()
@@ -192,6 +478,15 @@ class DownloadFile {
         return fileSize.totalSize();
     }
 
+    /**
+     * Unlike {@link #getTotalSize()}, never requests the size from the network.
+     *
+     * @return the total size as it was persisted, zero or less when it is not known yet.
+     */
+    long getPersistedTotalSize() {
+        return fileSize.totalSize();
+    }
+
     @WorkerThread
     boolean persist() {
         return downloadsFilePersistence.persistSync(
@@ -3,6 +3,7 @@ package com.novoda.downloadmanager;
 import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface DownloadManager {
@@ -14,6 +15,14 @@ public interface DownloadManager {
      */
     void download(Batch batch);
 
+    /**
+     * Downloads the given batches, persisting them in a single transaction.
+     * Prefer it to {@link #download(Batch)} when submitting many batches at once.
+     *
+     * @param batches to download, the ones that are already known are ignored.
+     */
+    void download(Collection<Batch> batches);
+
     /**
      * Pauses the {@link Batch} with the associated {@link DownloadBatchId}.
      *
@@ -35,6 +44,50 @@ public interface DownloadManager {
      */
     void delete(DownloadBatchId downloadBatchId);
 
+    /**
+     * Pauses the batches with the given {@link DownloadBatchId}s in a single pass.
+     *
+     * @param downloadBatchIds of the batches to pause.
+     */
+    void pauseAll(Collection<DownloadBatchId> downloadBatchIds);
+
+    /**
+     * Pauses the batches whose {@link DownloadBatchStatus} matches the given predicate in a single pass.
+     *
+     * @param predicate selecting the batches to pause.
+     */
+    void pauseAll(DownloadBatchStatusPredicate predicate);
+
+    /**
+     * Resumes the batches with the given {@link DownloadBatchId}s in a single pass.
+     *
+     * @param downloadBatchIds of the batches to resume.
+     */
+    void resumeAll(Collection<DownloadBatchId> downloadBatchIds);
+
+    /**
+     * Resumes the batches whose {@link DownloadBatchStatus} matches the given predicate in a single pass.
+     *
+     * @param predicate selecting the batches to resume.
+     */
+    void resumeAll(DownloadBatchStatusPredicate predicate);
+
+    /**
+     * Deletes the batches with the given {@link DownloadBatchId}s in a single transaction,
+     * their files are removed in the background.
+     *
+     * @param downloadBatchIds of the batches to delete.
+     */
+    void deleteAll(Collection<DownloadBatchId> downloadBatchIds);
+
+    /**
+     * Deletes the batches whose {@link DownloadBatchStatus} matches the given predicate in a single transaction,
+     * their files are removed in the background.
+     *
+     * @param predicate selecting the batches to delete.
+     */
+    void deleteAll(DownloadBatchStatusPredicate predicate);
+
     /**
      * Adds a {@link DownloadBatchStatusCallback} to the internal list of callbacks
      * to be notified on {@link DownloadBatchStatus} changes.
@@ -99,6 +152,15 @@ public interface DownloadManager {
      */
     void getDownloadFileStatusWithMatching(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId, DownloadFileStatusCallback callback);
 
+    /**
+     * Retrieves the ids of the batches that have been handed to the download workers and have not finished yet.
+     * Batches currently being downloaded come first, followed by the batches waiting for a free worker
+     * in the order they will start. See {@link DownloadManagerBuilder#withBatchDownloadParallelism(int)}.
+     *
+     * @return a snapshot of the download queue.
+     */
+    List<DownloadBatchId> getDownloadBatchQueue();
+
     /**
      * Changes the {@link ConnectionType} that must be satisfied in order to download.
      * Will pause all current downloads that are violating this condition, resuming
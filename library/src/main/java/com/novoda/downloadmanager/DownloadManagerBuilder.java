@@ -18,9 +18,9 @@ import android.support.v4.app.NotificationManagerCompat;
 
 import com.novoda.merlin.MerlinsBeard;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -39,6 +39,16 @@ public final class DownloadManagerBuilder {
     private static final Object SERVICE_LOCK = new Object();
     private static final Object CALLBACK_LOCK = new Object();
     private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final int SEQUENTIAL_FILE_DOWNLOADS = 1;
+    private static final int SEQUENTIAL_BATCH_DOWNLOADS = 1;
+    private static final int SINGLE_FILE_SEGMENT = 1;
+    private static final int SEQUENTIAL_FILE_SIZE_REQUESTS = 1;
+    private static final int DEFAULT_FILE_SIZE_REQUEST_PARALLELISM = 4;
+    private static final long PENDING_BATCH_UPDATES_INTERVAL_IN_MILLIS = 500;
+    private static final int MINIMUM_CONNECTIONS = 1;
+    private static final ConnectionLimitListener NO_CONNECTION_LIMIT_LISTENER = decision -> {
+        // no-op.
+    };
 
     private final Context applicationContext;
     private final Handler callbackHandler;
@@ -59,6 +69,18 @@ public final class DownloadManagerBuilder {
     private TimeUnit timeUnit;
     private long frequency;
     private Optional<LogHandle> logHandle;
+    private LogLevel minimumLogLevel = LogLevel.VERBOSE;
+    private boolean logCallSites = true;
+    private int fileDownloadParallelism;
+    private int batchDownloadParallelism;
+    private int numberOfFileSegments = SINGLE_FILE_SEGMENT;
+    private long minimumSegmentedFileSizeInBytes = Long.MAX_VALUE;
+    private int fileSizeRequestParallelism = DEFAULT_FILE_SIZE_REQUEST_PARALLELISM;
+    private boolean shareDownloadsOfSameUrl;
+    private boolean adaptiveConnectionLimit;
+    private int minimumConnections;
+    private int maximumConnections;
+    private ConnectionLimitListener connectionLimitListener = NO_CONNECTION_LIMIT_LISTENER;
 
     public static DownloadManagerBuilder newInstance(Context context, Handler callbackHandler, @DrawableRes final int notificationIcon) {
         Context applicationContext = context.getApplicationContext();
@@ -95,6 +117,9 @@ public final class DownloadManagerBuilder {
 
         Optional<LogHandle> logHandle = Optional.absent();
 
+        int fileDownloadParallelism = SEQUENTIAL_FILE_DOWNLOADS;
+        int batchDownloadParallelism = SEQUENTIAL_BATCH_DOWNLOADS;
+
         return new DownloadManagerBuilder(
                 applicationContext,
                 callbackHandler,
@@ -108,7 +133,9 @@ public final class DownloadManagerBuilder {
                 connectionTypeAllowed,
                 allowNetworkRecovery,
                 callbackThrottleCreatorType,
-                logHandle
+                logHandle,
+                fileDownloadParallelism,
+                batchDownloadParallelism
         );
     }
 
@@ -126,7 +153,9 @@ public final class DownloadManagerBuilder {
                                    ConnectionType connectionTypeAllowed,
                                    boolean allowNetworkRecovery,
                                    CallbackThrottleCreator.Type callbackThrottleCreatorType,
-                                   Optional<LogHandle> logHandle) {
+                                   Optional<LogHandle> logHandle,
+                                   int fileDownloadParallelism,
+                                   int batchDownloadParallelism) {
         this.applicationContext = applicationContext;
         this.callbackHandler = callbackHandler;
         this.storageRequirementRules = storageRequirementRules;
@@ -140,6 +169,8 @@ public final class DownloadManagerBuilder {
         this.allowNetworkRecovery = allowNetworkRecovery;
         this.callbackThrottleCreatorType = callbackThrottleCreatorType;
         this.logHandle = logHandle;
+        this.fileDownloadParallelism = fileDownloadParallelism;
+        this.batchDownloadParallelism = batchDownloadParallelism;
     }
 
     public DownloadManagerBuilder withCustomHttpClient(HttpClient httpClient) {
@@ -163,6 +194,14 @@ public final class DownloadManagerBuilder {
         return this;
     }
 
+    public DownloadManagerBuilder withChannelFilePersistence(int bufferSizeInBytes) {
+        if (bufferSizeInBytes <= 0) {
+            throw new IllegalArgumentException("Buffer size must be greater than 0 but was " + bufferSizeInBytes);
+        }
+        filePersistenceCreator.withChannelBuffers(bufferSizeInBytes);
+        return this;
+    }
+
     public DownloadManagerBuilder withDownloadsPersistenceCustom(DownloadsPersistence downloadsPersistence) {
         this.downloadsPersistence = downloadsPersistence;
         return this;
@@ -223,10 +262,104 @@ public final class DownloadManagerBuilder {
         return this;
     }
 
+    /**
+     * Messages below the given level are not built at all, which keeps logging off the download path.
+     */
+    public DownloadManagerBuilder withLogHandle(LogHandle logHandle, LogLevel minimumLogLevel) {
+        if (minimumLogLevel == null) {
+            throw new IllegalArgumentException("Minimum log level cannot be null");
+        }
+        this.logHandle = Optional.fromNullable(logHandle);
+        this.minimumLogLevel = minimumLogLevel;
+        return this;
+    }
+
+    /**
+     * Stops prefixing messages with the class, line and method that logged them, which requires walking the stack.
+     */
+    public DownloadManagerBuilder withoutLogCallSites() {
+        this.logCallSites = false;
+        return this;
+    }
+
+    public DownloadManagerBuilder withFileDownloadParallelism(int fileDownloadParallelism) {
+        if (fileDownloadParallelism < SEQUENTIAL_FILE_DOWNLOADS) {
+            throw new IllegalArgumentException("File download parallelism must be at least " + SEQUENTIAL_FILE_DOWNLOADS);
+        }
+        this.fileDownloadParallelism = fileDownloadParallelism;
+        return this;
+    }
+
+    public DownloadManagerBuilder withBatchDownloadParallelism(int batchDownloadParallelism) {
+        if (batchDownloadParallelism < SEQUENTIAL_BATCH_DOWNLOADS) {
+            throw new IllegalArgumentException("Batch download parallelism must be at least " + SEQUENTIAL_BATCH_DOWNLOADS);
+        }
+        this.batchDownloadParallelism = batchDownloadParallelism;
+        return this;
+    }
+
+    /**
+     * Downloads the files of at least the given size as several byte ranges over parallel connections.
+     * The ranges are written straight to the path of the file, so only the downloads made by the library
+     * and stored by a {@link FilePersistence} that writes the bytes as they are at that path are split,
+     * see {@link FilePersistence#writesBytesAtFilePath()}. Any other file is downloaded as a whole.
+     */
+    public DownloadManagerBuilder withSegmentedFileDownloads(int numberOfSegments, long minimumFileSizeInBytes) {
+        if (numberOfSegments < SINGLE_FILE_SEGMENT) {
+            throw new IllegalArgumentException("Number of file segments must be at least " + SINGLE_FILE_SEGMENT);
+        }
+        this.numberOfFileSegments = numberOfSegments;
+        this.minimumSegmentedFileSizeInBytes = minimumFileSizeInBytes;
+        return this;
+    }
+
+    public DownloadManagerBuilder withFileSizeRequestParallelism(int fileSizeRequestParallelism) {
+        if (fileSizeRequestParallelism < SEQUENTIAL_FILE_SIZE_REQUESTS) {
+            throw new IllegalArgumentException("File size request parallelism must be at least " + SEQUENTIAL_FILE_SIZE_REQUESTS);
+        }
+        this.fileSizeRequestParallelism = fileSizeRequestParallelism;
+        return this;
+    }
+
+    public DownloadManagerBuilder withSharedDownloadsOfSameUrl() {
+        this.shareDownloadsOfSameUrl = true;
+        return this;
+    }
+
+    public DownloadManagerBuilder withAdaptiveConnectionLimit(int minimumConnections, int maximumConnections) {
+        return withAdaptiveConnectionLimit(minimumConnections, maximumConnections, NO_CONNECTION_LIMIT_LISTENER);
+    }
+
+    /**
+     * Tunes the number of connections downloading at the same time, across every batch, file and segment,
+     * to the measured throughput. The parallelism of the batches, files and segments still bounds how many
+     * connections can be open, the limit only ever holds some of them back.
+     */
+    public DownloadManagerBuilder withAdaptiveConnectionLimit(int minimumConnections,
+                                                              int maximumConnections,
+                                                              ConnectionLimitListener connectionLimitListener) {
+        if (minimumConnections < MINIMUM_CONNECTIONS) {
+            throw new IllegalArgumentException("Minimum connections must be at least " + MINIMUM_CONNECTIONS);
+        }
+        if (maximumConnections < minimumConnections) {
+            throw new IllegalArgumentException("Maximum connections must be at least the minimum of " + minimumConnections);
+        }
+        if (connectionLimitListener == null) {
+            throw new IllegalArgumentException("Connection limit listener cannot be null");
+        }
+        this.adaptiveConnectionLimit = true;
+        this.minimumConnections = minimumConnections;
+        this.maximumConnections = maximumConnections;
+        this.connectionLimitListener = connectionLimitListener;
+        return this;
+    }
+
     // It creates the whole LiteDownloadManager, it is a long process!
     @SuppressWarnings("PMD.ExcessiveMethodLength")
     public DownloadManager build() {
         if (logHandle.isPresent()) {
+            Logger.setMinimumLevel(minimumLogLevel);
+            Logger.captureCallSites(logCallSites);
             Logger.attach(logHandle.get());
         }
 
@@ -257,8 +390,25 @@ public final class DownloadManagerBuilder {
 
         applicationContext.bindService(intent, serviceConnection, Service.BIND_AUTO_CREATE);
 
+        ByteBufferPool bufferPool = new ByteBufferPool(fileDownloadParallelism * batchDownloadParallelism * numberOfFileSegments);
         filePersistenceCreator.withStorageRequirementRules(storageRequirementRules);
-        FileOperations fileOperations = new FileOperations(filePersistenceCreator, fileSizeRequester, fileDownloaderCreator);
+        filePersistenceCreator.withBufferPool(bufferPool);
+        fileDownloaderCreator.withSegmentedDownloads(numberOfFileSegments, minimumSegmentedFileSizeInBytes);
+        fileDownloaderCreator.withBufferPool(bufferPool);
+        fileDownloaderCreator.withConnectionLimit(adaptiveConnectionLimit
+                ? AdaptiveConnectionLimit.newInstance(minimumConnections, maximumConnections, connectionLimitListener)
+                : AdaptiveConnectionLimit.disabled()
+        );
+        FileDownloadExecutor fileDownloadExecutor = FileDownloadExecutor.parallel(fileDownloadParallelism);
+        FileDownloadExecutor fileSizeExecutor = FileDownloadExecutor.parallel(fileSizeRequestParallelism);
+        FileOperations fileOperations = new FileOperations(
+                filePersistenceCreator,
+                fileSizeRequester,
+                fileDownloaderCreator,
+                fileDownloadExecutor,
+                fileSizeExecutor,
+                shareDownloadsOfSameUrl ? SharedFileDownloads.enabled() : SharedFileDownloads.disabled()
+        );
         Set<DownloadBatchStatusCallback> callbacks = new CopyOnWriteArraySet<>();
 
         CallbackThrottleCreator callbackThrottleCreator = getCallbackThrottleCreator(
@@ -272,12 +422,18 @@ public final class DownloadManagerBuilder {
         MerlinsBeard merlinsBeard = MerlinsBeard.from(applicationContext);
         ConnectionChecker connectionChecker = new ConnectionChecker(merlinsBeard, connectionTypeAllowed);
         Executor executor = Executors.newSingleThreadExecutor();
+        PendingBatchUpdates pendingBatchUpdates = new PendingBatchUpdates(
+                executor,
+                downloadsPersistence,
+                SchedulerFactory.createFixedRateTimerScheduler(PENDING_BATCH_UPDATES_INTERVAL_IN_MILLIS)
+        );
         DownloadsBatchPersistence downloadsBatchPersistence = new DownloadsBatchPersistence(
                 executor,
                 downloadsFilePersistence,
                 downloadsPersistence,
                 callbackThrottleCreator,
-                connectionChecker
+                connectionChecker,
+                pendingBatchUpdates
         );
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -299,11 +455,13 @@ public final class DownloadManagerBuilder {
         );
 
         DownloadBatchStatusFilter downloadBatchStatusFilter = new DownloadBatchStatusFilter();
+        BatchDownloadExecutor batchDownloadExecutor = BatchDownloadExecutor.newInstance(batchDownloadParallelism);
 
         LiteDownloadManagerDownloader downloader = new LiteDownloadManagerDownloader(
                 SERVICE_LOCK,
                 CALLBACK_LOCK,
                 EXECUTOR,
+                batchDownloadExecutor,
                 callbackHandler,
                 fileOperations,
                 downloadsBatchPersistence,
@@ -321,7 +479,7 @@ public final class DownloadManagerBuilder {
                 CALLBACK_LOCK,
                 EXECUTOR,
                 callbackHandler,
-                new HashMap<>(),
+                new ConcurrentHashMap<>(),
                 callbacks,
                 fileOperations,
                 downloadsBatchPersistence,
@@ -351,7 +509,6 @@ public final class DownloadManagerBuilder {
 
     private static class DownloadNotificationCustomizer implements NotificationCustomizer<DownloadBatchStatus> {
 
-        private static final boolean NOT_INDETERMINATE = false;
         private final Resources resources;
         private final int notificationIcon;
 
@@ -415,9 +572,10 @@ public final class DownloadManagerBuilder {
             int bytesFileSize = (int) payload.bytesTotalSize();
             int bytesDownloaded = (int) payload.bytesDownloaded();
             String content = resources.getString(R.string.download_notification_content_progress, payload.percentageDownloaded());
+            boolean totalSizeUnknown = bytesFileSize <= 0;
 
             return builder
-                    .setProgress(bytesFileSize, bytesDownloaded, NOT_INDETERMINATE)
+                    .setProgress(bytesFileSize, bytesDownloaded, totalSizeUnknown)
                     .setContentText(content)
                     .build();
         }
@@ -1,7 +1,22 @@
 package com.novoda.downloadmanager;
 
+import android.support.annotation.WorkerThread;
+
 interface DownloadService extends DownloadManagerService {
 
-    void download(DownloadBatch downloadBatch, DownloadBatchStatusCallback callback);
+    /**
+     * Downloads the batch on the calling thread, keeping the device awake while doing so.
+     *
+     * @param downloadBatch to download.
+     */
+    @WorkerThread
+    void download(DownloadBatch downloadBatch);
+
+    /**
+     * Runs the given action when the service is destroyed.
+     *
+     * @param action to run on the main thread.
+     */
+    void doOnDestroy(Runnable action);
 }
 
@@ -16,4 +16,12 @@ public interface DownloadsBatchPersisted {
     boolean notificationSeen();
 
     String storageRoot();
+
+    /**
+     * @return the priority the batch was submitted with, persistences that do not store it load their batches
+     * with {@link Batch#DEFAULT_PRIORITY}.
+     */
+    default int priority() {
+        return Batch.DEFAULT_PRIORITY;
+    }
 }
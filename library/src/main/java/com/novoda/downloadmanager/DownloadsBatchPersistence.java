@@ -6,8 +6,10 @@ import android.support.annotation.WorkerThread;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executor;
 
 class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, DownloadsNotificationSeenPersistence {
@@ -19,39 +21,63 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
     private final DownloadsPersistence downloadsPersistence;
     private final CallbackThrottleCreator callbackThrottleCreator;
     private final ConnectionChecker connectionChecker;
+    private final PendingBatchUpdates pendingBatchUpdates;
 
     DownloadsBatchPersistence(Executor executor,
                               DownloadsFilePersistence downloadsFilePersistence,
                               DownloadsPersistence downloadsPersistence,
                               CallbackThrottleCreator callbackThrottleCreator,
-                              ConnectionChecker connectionChecker) {
+                              ConnectionChecker connectionChecker,
+                              PendingBatchUpdates pendingBatchUpdates) {
         this.executor = executor;
         this.downloadsFilePersistence = downloadsFilePersistence;
         this.downloadsPersistence = downloadsPersistence;
         this.callbackThrottleCreator = callbackThrottleCreator;
         this.connectionChecker = connectionChecker;
+        this.pendingBatchUpdates = pendingBatchUpdates;
     }
 
+    @SuppressWarnings("checkstyle:parameternumber")
     void persistAsync(DownloadBatchTitle downloadBatchTitle,
                       DownloadBatchId downloadBatchId,
                       DownloadBatchStatus.Status status,
                       List<DownloadFile> downloadFiles,
                       long downloadedDateTimeInMillis,
                       boolean notificationSeen,
-                      String storageRoot) {
+                      String storageRoot,
+                      int priority) {
         executor.execute(() -> {
-            persist(downloadBatchTitle, downloadBatchId, status, downloadFiles, downloadedDateTimeInMillis, notificationSeen, storageRoot);
+            persist(downloadBatchTitle, downloadBatchId, status, downloadFiles, downloadedDateTimeInMillis, notificationSeen, storageRoot, priority);
+        });
+    }
+
+    /**
+     * Persists the batches in a single transaction, rather than one transaction per batch.
+     */
+    void persistAsync(List<DownloadBatch> downloadBatches) {
+        executor.execute(() -> {
+            downloadsPersistence.startTransaction();
+            try {
+                for (DownloadBatch downloadBatch : downloadBatches) {
+                    downloadBatch.persist();
+                }
+                downloadsPersistence.transactionSuccess();
+            } finally {
+                downloadsPersistence.endTransaction();
+            }
         });
     }
 
     @WorkerThread
+    @SuppressWarnings("checkstyle:parameternumber")
     void persist(DownloadBatchTitle downloadBatchTitle,
                  DownloadBatchId downloadBatchId,
                  DownloadBatchStatus.Status status,
                  List<DownloadFile> downloadFiles,
                  long downloadedDateTimeInMillis,
                  boolean notificationSeen,
-                 String storageRoot) {
+                 String storageRoot,
+                 int priority) {
         List<DownloadFile> downloadFilesToPersist = new ArrayList<>(downloadFiles);
         downloadsPersistence.startTransaction();
 
@@ -62,7 +88,8 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
                     status,
                     downloadedDateTimeInMillis,
                     notificationSeen,
-                    storageRoot
+                    storageRoot,
+                    priority
             );
             downloadsPersistence.persistBatch(batchPersisted);
             for (DownloadFile downloadFile : downloadFilesToPersist) {
@@ -74,14 +101,47 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
         }
     }
 
+    /**
+     * Loads all of the batches and all of the files in two queries, rather than one query for the files of every batch.
+     */
     void loadAsync(FileOperations fileOperations, LoadBatchesCallback callback) {
+        loadAsync(fileOperations, Collections.emptyMap(), callback);
+    }
+
+    /**
+     * Only builds the batches that are not held in memory, matched by their raw ids. The batches in memory are
+     * looked up on the executor, once the loads submitted before this one have handed over their batches.
+     */
+    void loadAsync(FileOperations fileOperations, Map<DownloadBatchId, DownloadBatch> batchesInMemory, LoadBatchesCallback callback) {
         executor.execute(() -> {
-            List<DownloadsBatchPersisted> batchPersistedList = downloadsPersistence.loadBatches();
+            Set<String> loadedRawBatchIds = new HashSet<>(batchesInMemory.size());
+            for (DownloadBatch downloadBatch : batchesInMemory.values()) {
+                loadedRawBatchIds.add(downloadBatch.getId().rawId());
+            }
+
+            List<DownloadsBatchPersisted> batchPersistedList;
+            List<DownloadsFilePersisted> filePersistedList;
+            downloadsPersistence.startTransaction();
+            try {
+                batchPersistedList = downloadsPersistence.loadBatches();
+                filePersistedList = downloadsPersistence.loadAllFiles();
+                downloadsPersistence.transactionSuccess();
+            } finally {
+                downloadsPersistence.endTransaction();
+            }
 
+            Map<String, List<DownloadsFilePersisted>> filesByBatchId = groupByRawBatchId(filePersistedList);
             List<DownloadBatch> downloadBatches = new ArrayList<>(batchPersistedList.size());
             for (DownloadsBatchPersisted batchPersisted : batchPersistedList) {
+                if (loadedRawBatchIds.contains(batchPersisted.downloadBatchId().rawId())) {
+                    continue;
+                }
                 try {
-                    DownloadBatch downloadBatch = getDownloadBatch(fileOperations, batchPersisted);
+                    List<DownloadsFilePersisted> batchFilePersistedList = filesByBatchId.get(batchPersisted.downloadBatchId().rawId());
+                    if (batchFilePersistedList == null) {
+                        batchFilePersistedList = Collections.emptyList();
+                    }
+                    DownloadBatch downloadBatch = getDownloadBatch(fileOperations, batchPersisted, batchFilePersistedList);
                     downloadBatches.add(downloadBatch);
                 } catch (SQLiteConstraintException e) {
                     Logger.e("exception loading async batch " + batchPersisted.downloadBatchId().rawId());
@@ -92,32 +152,46 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
         });
     }
 
-    private DownloadBatch getDownloadBatch(FileOperations fileOperations, DownloadsBatchPersisted batchPersisted) {
-        DownloadBatchStatus.Status status = batchPersisted.downloadBatchStatus();
-        DownloadBatchId downloadBatchId = batchPersisted.downloadBatchId();
-        DownloadBatchTitle downloadBatchTitle = batchPersisted.downloadBatchTitle();
-        long downloadedDateTimeInMillis = batchPersisted.downloadedDateTimeInMillis();
-        boolean notificationSeen = batchPersisted.notificationSeen();
-        String storageRoot = batchPersisted.storageRoot();
+    /**
+     * Grouped by raw id, as the ids of a custom {@link DownloadsPersistence} are not required to implement equals.
+     */
+    private static Map<String, List<DownloadsFilePersisted>> groupByRawBatchId(List<DownloadsFilePersisted> filePersistedList) {
+        Map<String, List<DownloadsFilePersisted>> filesByBatchId = new HashMap<>();
+        for (DownloadsFilePersisted filePersisted : filePersistedList) {
+            String rawBatchId = filePersisted.downloadBatchId().rawId();
+            List<DownloadsFilePersisted> batchFilePersistedList = filesByBatchId.get(rawBatchId);
+            if (batchFilePersistedList == null) {
+                batchFilePersistedList = new ArrayList<>();
+                filesByBatchId.put(rawBatchId, batchFilePersistedList);
+            }
+            batchFilePersistedList.add(filePersisted);
+        }
+        return filesByBatchId;
+    }
+
+    private DownloadBatch getDownloadBatch(FileOperations fileOperations,
+                                           DownloadsBatchPersisted batchPersisted,
+                                           List<DownloadsFilePersisted> filePersistedList) {
+        if (batchPersisted.downloadBatchStatus() == DownloadBatchStatus.Status.DOWNLOADED) {
+            return getCompletedDownloadBatch(fileOperations, batchPersisted, filePersistedList);
+        }
 
         List<DownloadFile> downloadFiles = downloadsFilePersistence.loadSync(
-                downloadBatchId,
-                status,
+                batchPersisted.downloadBatchId(),
+                batchPersisted.downloadBatchStatus(),
+                filePersistedList,
                 fileOperations,
                 downloadsFilePersistence
         );
 
         downloadFiles = Collections.unmodifiableList(downloadFiles);
 
-        Map<DownloadFileId, Long> downloadedFileSizeMap = new HashMap<>(downloadFiles.size());
-
         long currentBytesDownloaded = 0;
         long totalBatchSizeBytes = 0;
         for (DownloadFile downloadFile : downloadFiles) {
-            downloadedFileSizeMap.put(downloadFile.id(), downloadFile.getCurrentDownloadedBytes());
             currentBytesDownloaded += downloadFile.getCurrentDownloadedBytes();
-            long totalFileSize = downloadFile.getTotalSize();
-            if (totalFileSize == 0) {
+            long totalFileSize = downloadFile.getPersistedTotalSize();
+            if (totalFileSize <= 0) {
                 totalBatchSizeBytes = 0;
                 currentBytesDownloaded = 0;
                 break;
@@ -126,27 +200,68 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
             }
         }
 
-        InternalDownloadBatchStatus liteDownloadBatchStatus = new LiteDownloadBatchStatus(
-                downloadBatchId,
-                downloadBatchTitle,
-                storageRoot,
-                downloadedDateTimeInMillis,
-                currentBytesDownloaded,
-                totalBatchSizeBytes,
-                status,
-                notificationSeen,
-                NO_DOWNLOAD_ERROR
+        return new DownloadBatch(
+                batchStatusOf(batchPersisted, currentBytesDownloaded, totalBatchSizeBytes),
+                downloadFiles,
+                DownloadsBatchPersistence.this,
+                callbackThrottleCreator.create(),
+                connectionChecker,
+                fileOperations.fileDownloadExecutor(),
+                fileOperations.fileSizeExecutor()
         );
+    }
+
+    /**
+     * Completed batches usually make up most of the stored ones, their files are kept as persisted
+     * until the batch is acted upon, rather than each holding its downloaders and persistence.
+     */
+    private DownloadBatch getCompletedDownloadBatch(FileOperations fileOperations,
+                                                    DownloadsBatchPersisted batchPersisted,
+                                                    List<DownloadsFilePersisted> filePersistedList) {
+        SharedFileDownloads sharedFileDownloads = fileOperations.sharedFileDownloads();
+        long currentBytesDownloaded = 0;
+        long totalBatchSizeBytes = 0;
+        for (DownloadsFilePersisted filePersisted : filePersistedList) {
+            long totalFileSize = filePersisted.totalFileSize();
+            if (totalFileSize > 0) {
+                sharedFileDownloads.addCompletedFile(filePersisted.url(), filePersisted.filePath());
+            }
+            currentBytesDownloaded += PersistedDownloadFiles.completedSizeOf(filePersisted);
+            totalBatchSizeBytes += totalFileSize;
+        }
 
-        FileCallbackThrottle fileCallbackThrottle = callbackThrottleCreator.create();
+        PersistedDownloadFiles persistedDownloadFiles = new PersistedDownloadFiles(
+                batchPersisted.downloadBatchId(),
+                filePersistedList,
+                fileOperations,
+                downloadsFilePersistence
+        );
 
         return new DownloadBatch(
-                liteDownloadBatchStatus,
-                downloadFiles,
-                downloadedFileSizeMap,
+                batchStatusOf(batchPersisted, currentBytesDownloaded, totalBatchSizeBytes),
+                persistedDownloadFiles,
                 DownloadsBatchPersistence.this,
-                fileCallbackThrottle,
-                connectionChecker
+                callbackThrottleCreator.create(),
+                connectionChecker,
+                fileOperations.fileDownloadExecutor(),
+                fileOperations.fileSizeExecutor()
+        );
+    }
+
+    private static InternalDownloadBatchStatus batchStatusOf(DownloadsBatchPersisted batchPersisted,
+                                                             long currentBytesDownloaded,
+                                                             long totalBatchSizeBytes) {
+        return new LiteDownloadBatchStatus(
+                batchPersisted.downloadBatchId(),
+                batchPersisted.downloadBatchTitle(),
+                batchPersisted.storageRoot(),
+                batchPersisted.downloadedDateTimeInMillis(),
+                currentBytesDownloaded,
+                totalBatchSizeBytes,
+                batchPersisted.downloadBatchStatus(),
+                batchPersisted.notificationSeen(),
+                NO_DOWNLOAD_ERROR,
+                batchPersisted.priority()
         );
     }
 
@@ -162,9 +277,36 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
         });
     }
 
+    /**
+     * Deletes the batches in a single transaction, rather than one transaction per batch.
+     */
+    void deleteAsync(List<DownloadBatch> downloadBatches, DeleteBatchesCallback deleteBatchesCallback) {
+        executor.execute(() -> {
+            List<DownloadBatch> deletedBatches = new ArrayList<>(downloadBatches.size());
+            downloadsPersistence.startTransaction();
+            try {
+                for (DownloadBatch downloadBatch : downloadBatches) {
+                    DownloadBatchId downloadBatchId = downloadBatch.getId();
+                    pendingBatchUpdates.discard(downloadBatchId);
+                    if (downloadsPersistence.delete(downloadBatchId)) {
+                        deletedBatches.add(downloadBatch);
+                    } else {
+                        Logger.e("could not delete batch " + downloadBatchId.rawId() + " with status " + downloadBatch.status().status());
+                    }
+                }
+                downloadsPersistence.transactionSuccess();
+            } finally {
+                downloadsPersistence.endTransaction();
+            }
+
+            deleteBatchesCallback.onDeleted(deletedBatches);
+        });
+    }
+
     @WorkerThread
     boolean deleteSync(DownloadBatchStatus downloadBatchStatus) {
         DownloadBatchId downloadBatchId = downloadBatchStatus.getDownloadBatchId();
+        pendingBatchUpdates.discard(downloadBatchId);
         downloadsPersistence.startTransaction();
         try {
             if (downloadsPersistence.delete(downloadBatchId)) {
@@ -180,35 +322,23 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
 
     @Override
     public void updateStatusAsync(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
-        executor.execute(() -> {
-            downloadsPersistence.startTransaction();
-            try {
-                if (downloadsPersistence.update(downloadBatchId, status)) {
-                    downloadsPersistence.transactionSuccess();
-                } else {
-                    Logger.e("could not update batch status " + status + " failed for " + downloadBatchId.rawId());
-                }
-            } finally {
-                downloadsPersistence.endTransaction();
-            }
-        });
+        pendingBatchUpdates.updateStatus(downloadBatchId, status);
     }
 
     @Override
     public void updateNotificationSeenAsync(DownloadBatchStatus downloadBatchStatus, boolean notificationSeen) {
-        executor.execute(() -> {
-            downloadsPersistence.startTransaction();
-            try {
-                if (downloadsPersistence.update(downloadBatchStatus.getDownloadBatchId(), notificationSeen)) {
-                    downloadsPersistence.transactionSuccess();
-                } else {
-                    Logger.e("could not update notification to status " + downloadBatchStatus.status()
-                                     + " for batch id " + downloadBatchStatus.getDownloadBatchId().rawId());
-                }
-            } finally {
-                downloadsPersistence.endTransaction();
-            }
-        });
+        pendingBatchUpdates.updateNotificationSeen(downloadBatchStatus.getDownloadBatchId(), notificationSeen);
+    }
+
+    void updateDownloadedBytesAsync(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId, long downloadedBytes) {
+        pendingBatchUpdates.updateDownloadedBytes(downloadBatchId, downloadFileId, downloadedBytes);
+    }
+
+    /**
+     * Writes the updates that are waiting for the next tick, e.g. before the service goes away.
+     */
+    void flushPendingUpdatesAsync() {
+        pendingBatchUpdates.flushAsync();
     }
 
     @WorkerThread
@@ -237,4 +367,9 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
 
         void onDeleted(DownloadBatchId downloadBatchId);
     }
+
+    interface DeleteBatchesCallback {
+
+        void onDeleted(List<DownloadBatch> downloadBatches);
+    }
 }
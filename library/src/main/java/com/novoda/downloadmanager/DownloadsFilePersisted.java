@@ -11,6 +11,14 @@ public interface DownloadsFilePersisted {
 
     long totalFileSize();
 
+    /**
+     * @return the bytes downloaded when the file was last checkpointed, negative when they are unknown
+     * and have to be read from the file itself.
+     */
+    default long downloadedBytes() {
+        return -1;
+    }
+
     String url();
 
     DownloadFileId downloadFileId();
@@ -29,6 +29,7 @@ class DownloadsFilePersistence {
                 downloadFileStatus.downloadFileId(),
                 filePath,
                 fileSize.totalSize(),
+                fileSize.currentSize(),
                 url
         );
 
@@ -47,10 +48,9 @@ class DownloadsFilePersistence {
 
     List<DownloadFile> loadSync(DownloadBatchId batchId,
                                 DownloadBatchStatus.Status batchStatus,
+                                List<DownloadsFilePersisted> filePersistedList,
                                 FileOperations fileOperations,
                                 DownloadsFilePersistence downloadsFilePersistence) {
-        List<DownloadsFilePersisted> filePersistedList = downloadsPersistence.loadFiles(batchId);
-
         List<DownloadFile> downloadFiles = new ArrayList<>(filePersistedList.size());
         for (DownloadsFilePersisted filePersisted : filePersistedList) {
             DownloadFileId downloadFileId = filePersisted.downloadFileId();
@@ -58,23 +58,22 @@ class DownloadsFilePersistence {
             FilePersistenceCreator filePersistenceCreator = fileOperations.filePersistenceCreator();
             FilePersistence filePersistence = filePersistenceCreator.create();
 
-            long currentSize = filePersistence.getCurrentSize(filePersisted.filePath());
+            FileDownloaderCreator fileDownloaderCreator = fileOperations.fileDownloaderCreator();
+            SegmentedFileDownloader segmentedFileDownloader = fileDownloaderCreator.createSegmented();
+
+            long currentSize = currentSizeOf(filePersisted, segmentedFileDownloader, filePersistence);
             long totalFileSize = filePersisted.totalFileSize();
             InternalFileSize fileSize = InternalFileSizeCreator.createFromCurrentAndTotalSize(currentSize, totalFileSize);
+            InternalDownloadFileStatus downloadFileStatus = fileStatusOf(filePersisted, fileSize, batchStatus);
             String url = filePersisted.url();
-
             FilePath filePath = filePersisted.filePath();
-            InternalDownloadFileStatus downloadFileStatus = new LiteDownloadFileStatus(
-                    batchId,
-                    downloadFileId,
-                    getFileStatusFrom(batchStatus),
-                    fileSize,
-                    filePath
-            );
 
             FileSizeRequester fileSizeRequester = fileOperations.fileSizeRequester();
-            FileDownloaderCreator fileDownloaderCreator = fileOperations.fileDownloaderCreator();
             FileDownloader fileDownloader = fileDownloaderCreator.create();
+            SharedFileDownloads sharedFileDownloads = fileOperations.sharedFileDownloads();
+            if (totalFileSize > 0 && currentSize == totalFileSize) {
+                sharedFileDownloads.addCompletedFile(url, filePath);
+            }
 
             DownloadFile downloadFile = new DownloadFile(
                     batchId,
@@ -84,9 +83,12 @@ class DownloadsFilePersistence {
                     filePath,
                     fileSize,
                     fileDownloader,
+                    segmentedFileDownloader,
                     fileSizeRequester,
                     filePersistence,
-                    downloadsFilePersistence
+                    downloadsFilePersistence,
+                    sharedFileDownloads,
+                    fileDownloaderCreator.connectionLimit()
             );
 
             downloadFiles.add(downloadFile);
@@ -95,6 +97,29 @@ class DownloadsFilePersistence {
         return downloadFiles;
     }
 
+    InternalDownloadFileStatus fileStatusOf(DownloadsFilePersisted filePersisted, FileSize fileSize, DownloadBatchStatus.Status batchStatus) {
+        return new LiteDownloadFileStatus(
+                filePersisted.downloadBatchId(),
+                filePersisted.downloadFileId(),
+                getFileStatusFrom(batchStatus),
+                fileSize,
+                filePersisted.filePath()
+        );
+    }
+
+    /**
+     * The progress comes from the last checkpoint, the file itself is only read when it has none yet.
+     * A file that resumes downloading reads its actual size anyway, before requesting the bytes it misses.
+     */
+    private static long currentSizeOf(DownloadsFilePersisted filePersisted,
+                                      SegmentedFileDownloader segmentedFileDownloader,
+                                      FilePersistence filePersistence) {
+        if (filePersisted.downloadedBytes() >= 0) {
+            return filePersisted.downloadedBytes();
+        }
+        return segmentedFileDownloader.currentSize(filePersisted.filePath(), filePersistence);
+    }
+
     private InternalDownloadFileStatus.Status getFileStatusFrom(DownloadBatchStatus.Status batchStatus) {
         switch (batchStatus) {
             case QUEUED:
@@ -30,5 +30,15 @@ public interface DownloadsPersistence {
 
     boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen);
 
+    /**
+     * Checkpoints the progress of a file, so that it can be shown without reading the file when the downloads are loaded.
+     * Persistences that do not store checkpoints can leave it out, the progress is then read from the files.
+     *
+     * @return whether the checkpoint was stored.
+     */
+    default boolean update(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId, long downloadedBytes) {
+        return false;
+    }
+
     void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch);
 }
@@ -0,0 +1,69 @@
+package com.novoda.downloadmanager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the sum of a number of bytes per file of a batch by applying the difference of each update,
+ * so that an update costs the same whatever the number of files in the batch.
+ * Every file owns a primitive slot given by its position in the batch, updating it does not allocate
+ * and is safe from several threads.
+ */
+class FileBytesAccumulator {
+
+    private static final long NO_BYTES = 0;
+
+    private final Map<DownloadFileId, Integer> slotsByFileId;
+    private final AtomicLongArray fileBytes;
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicInteger filesWithBytes = new AtomicInteger();
+
+    static FileBytesAccumulator forFilesOf(List<DownloadFile> downloadFiles) {
+        Map<DownloadFileId, Integer> slotsByFileId = new HashMap<>(downloadFiles.size());
+        for (int slot = 0; slot < downloadFiles.size(); slot++) {
+            slotsByFileId.put(downloadFiles.get(slot).id(), slot);
+        }
+        return new FileBytesAccumulator(slotsByFileId);
+    }
+
+    private FileBytesAccumulator(Map<DownloadFileId, Integer> slotsByFileId) {
+        this.slotsByFileId = slotsByFileId;
+        this.fileBytes = new AtomicLongArray(slotsByFileId.size());
+    }
+
+    /**
+     * @return the sum of the bytes of every file, including the given one.
+     */
+    long update(DownloadFileId downloadFileId, long bytes) {
+        Integer slot = slotsByFileId.get(downloadFileId);
+        if (slot == null) {
+            Logger.w("file " + downloadFileId.rawId() + " does not belong to the batch, its bytes are not accounted");
+            return totalBytes.get();
+        }
+
+        long previousBytes = fileBytes.getAndSet(slot, bytes);
+        if (previousBytes == NO_BYTES && bytes != NO_BYTES) {
+            filesWithBytes.incrementAndGet();
+        } else if (previousBytes != NO_BYTES && bytes == NO_BYTES) {
+            filesWithBytes.decrementAndGet();
+        }
+        return totalBytes.addAndGet(bytes - previousBytes);
+    }
+
+    long bytesOf(DownloadFileId downloadFileId) {
+        Integer slot = slotsByFileId.get(downloadFileId);
+        return slot == null ? NO_BYTES : fileBytes.get(slot);
+    }
+
+    long totalBytes() {
+        return totalBytes.get();
+    }
+
+    boolean hasBytesForEveryFile() {
+        return filesWithBytes.get() == fileBytes.length();
+    }
+}
@@ -1,11 +1,16 @@
 package com.novoda.downloadmanager;
 
+/**
+ * Emits the latest status at most once per tick. The action is cancelled on the first tick
+ * without a new status, so a batch that stops updating does not keep a task on the timer.
+ */
 class FileCallbackThrottleByTime implements FileCallbackThrottle {
 
     private final ActionScheduler actionScheduler;
 
     private DownloadBatchStatus downloadBatchStatus;
     private DownloadBatchStatusCallback callback;
+    private boolean hasStatusToEmit;
 
     FileCallbackThrottleByTime(ActionScheduler actionScheduler) {
         this.actionScheduler = actionScheduler;
@@ -17,12 +22,13 @@ class FileCallbackThrottleByTime implements FileCallbackThrottle {
     }
 
     @Override
-    public void update(DownloadBatchStatus downloadBatchStatus) {
+    public synchronized void update(DownloadBatchStatus downloadBatchStatus) {
         if (callback == null) {
             return;
         }
 
         this.downloadBatchStatus = downloadBatchStatus;
+        hasStatusToEmit = true;
 
         if (!actionScheduler.isScheduled(action)) {
             actionScheduler.schedule(action);
@@ -32,16 +38,25 @@ class FileCallbackThrottleByTime implements FileCallbackThrottle {
     private final ActionScheduler.Action action = new ActionScheduler.Action() {
         @Override
         public void perform() {
-            callback.onUpdate(downloadBatchStatus);
+            synchronized (FileCallbackThrottleByTime.this) {
+                if (!hasStatusToEmit) {
+                    actionScheduler.cancel(this);
+                    return;
+                }
+
+                hasStatusToEmit = false;
+                callback.onUpdate(downloadBatchStatus);
+            }
         }
     };
 
     @Override
-    public void stopUpdates() {
+    public synchronized void stopUpdates() {
         if (callback != null) {
             callback.onUpdate(downloadBatchStatus);
         }
 
+        hasStatusToEmit = false;
         actionScheduler.cancelAll();
     }
 }
@@ -0,0 +1,119 @@
+package com.novoda.downloadmanager;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads the files of a batch, or performs any other per-file work such as resolving
+ * their sizes, using up to a fixed number of files in flight.
+ * The calling thread always takes part in the work, so a parallelism of one
+ * keeps the original sequential behaviour without any additional thread.
+ */
+class FileDownloadExecutor {
+
+    private static final int SEQUENTIAL = 1;
+
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    static FileDownloadExecutor sequential() {
+        return new FileDownloadExecutor(null, SEQUENTIAL);
+    }
+
+    static FileDownloadExecutor parallel(int parallelism) {
+        if (parallelism < SEQUENTIAL) {
+            throw new IllegalArgumentException("File download parallelism must be at least " + SEQUENTIAL + " but was " + parallelism);
+        }
+
+        if (parallelism == SEQUENTIAL) {
+            return sequential();
+        }
+
+        return new FileDownloadExecutor(Executors.newCachedThreadPool(), parallelism);
+    }
+
+    FileDownloadExecutor(ExecutorService executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Blocks until every file has been downloaded or the batch can no longer continue.
+     *
+     * @param downloadFiles    to download.
+     * @param callback         shared by all of the files, it must be safe to call from several threads.
+     * @param batchCanContinue checked before starting each file.
+     */
+    void download(List<DownloadFile> downloadFiles, DownloadFile.Callback callback, BatchCanContinue batchCanContinue) {
+        forEach(downloadFiles, downloadFile -> downloadFile.download(callback), batchCanContinue);
+    }
+
+    /**
+     * Blocks until the action has been performed on every file or the batch can no longer continue.
+     *
+     * @param downloadFiles    to perform the action on.
+     * @param fileAction       performed once per file, it must be safe to call from several threads.
+     * @param batchCanContinue checked before each file.
+     */
+    void forEach(List<DownloadFile> downloadFiles, FileAction fileAction, BatchCanContinue batchCanContinue) {
+        int numberOfWorkers = Math.min(parallelism, downloadFiles.size());
+        AtomicInteger nextFileIndex = new AtomicInteger();
+
+        if (numberOfWorkers <= SEQUENTIAL) {
+            performOnRemainingFiles(downloadFiles, nextFileIndex, fileAction, batchCanContinue);
+            return;
+        }
+
+        int numberOfAdditionalWorkers = numberOfWorkers - 1;
+        CountDownLatch additionalWorkersDone = new CountDownLatch(numberOfAdditionalWorkers);
+        for (int i = 0; i < numberOfAdditionalWorkers; i++) {
+            executor.execute(() -> {
+                try {
+                    performOnRemainingFiles(downloadFiles, nextFileIndex, fileAction, batchCanContinue);
+                } finally {
+                    additionalWorkersDone.countDown();
+                }
+            });
+        }
+
+        performOnRemainingFiles(downloadFiles, nextFileIndex, fileAction, batchCanContinue);
+
+        try {
+            additionalWorkersDone.await();
+        } catch (InterruptedException e) {
+            Logger.e(e, "Interrupted waiting for the files of the batch to be processed.");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void performOnRemainingFiles(List<DownloadFile> downloadFiles,
+                                                AtomicInteger nextFileIndex,
+                                                FileAction fileAction,
+                                                BatchCanContinue batchCanContinue) {
+        int fileIndex = nextFileIndex.getAndIncrement();
+        while (fileIndex < downloadFiles.size()) {
+            if (!batchCanContinue.canContinue()) {
+                return;
+            }
+            fileAction.performOn(downloadFiles.get(fileIndex));
+            fileIndex = nextFileIndex.getAndIncrement();
+        }
+    }
+
+    interface FileAction {
+
+        void performOn(DownloadFile downloadFile);
+    }
+
+    interface BatchCanContinue {
+
+        boolean canContinue();
+    }
+}
@@ -19,8 +19,24 @@ public interface FileDownloader {
      */
     void stopDownloading();
 
+    /**
+     * @return whether the total size of a file is told through {@link Callback#onTotalSizeResolved(long)}
+     * when it is not known upfront, saving a separate request to the {@link FileSizeRequester}.
+     */
+    default boolean resolvesTotalSize() {
+        return false;
+    }
+
     interface Callback {
 
+        /**
+         * Optionally called before the first bytes are read, when the total size was not known
+         * when the download started and the response tells it.
+         *
+         * @param totalSize of the asset in bytes.
+         */
+        void onTotalSizeResolved(long totalSize);
+
         void onBytesRead(byte[] buffer, int bytesRead);
 
         void onError(String cause);
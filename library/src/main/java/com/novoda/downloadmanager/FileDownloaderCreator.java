@@ -2,8 +2,13 @@ package com.novoda.downloadmanager;
 
 import android.support.annotation.Nullable;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 class FileDownloaderCreator {
 
+    private static final int SINGLE_POOLED_BUFFER = 1;
+
     enum FileDownloaderType {
         NETWORK,
         CUSTOM
@@ -14,6 +19,14 @@ class FileDownloaderCreator {
     private final Class<? extends FileDownloader> customClass;
     @Nullable
     private final HttpClient httpClient;
+    private final FileSegmentsPersistence segmentsPersistence = new FileSegmentsPersistence();
+
+    private int numberOfSegments = 1;
+    private long minimumSegmentedFileSizeInBytes = Long.MAX_VALUE;
+    @Nullable
+    private ExecutorService segmentsExecutor;
+    private ByteBufferPool bufferPool = new ByteBufferPool(SINGLE_POOLED_BUFFER);
+    private AdaptiveConnectionLimit connectionLimit = AdaptiveConnectionLimit.disabled();
 
     static FileDownloaderCreator newNetworkFileDownloaderCreator(HttpClient httpClient) {
         return new FileDownloaderCreator(FileDownloaderType.NETWORK, null, httpClient);
@@ -29,13 +42,33 @@ class FileDownloaderCreator {
         this.httpClient = httpClient;
     }
 
+    void withSegmentedDownloads(int numberOfSegments, long minimumSegmentedFileSizeInBytes) {
+        this.numberOfSegments = numberOfSegments;
+        this.minimumSegmentedFileSizeInBytes = minimumSegmentedFileSizeInBytes;
+    }
+
+    void withBufferPool(ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    void withConnectionLimit(AdaptiveConnectionLimit connectionLimit) {
+        this.connectionLimit = connectionLimit;
+    }
+
+    /**
+     * Shared by every download, whichever {@link FileDownloader} performs it.
+     */
+    AdaptiveConnectionLimit connectionLimit() {
+        return connectionLimit;
+    }
+
     FileDownloader create() {
         FileDownloader fileDownloader;
 
         switch (type) {
             case NETWORK:
                 NetworkRequestCreator requestCreator = new NetworkRequestCreator();
-                fileDownloader = new NetworkFileDownloader(httpClient, requestCreator);
+                fileDownloader = new NetworkFileDownloader(httpClient, requestCreator, bufferPool);
                 break;
             case CUSTOM:
                 fileDownloader = createCustomFileDownloader();
@@ -47,6 +80,31 @@ class FileDownloaderCreator {
         return fileDownloader;
     }
 
+    /**
+     * Only downloads performed by the library itself can be split in segments,
+     * a custom {@link FileDownloader} is always used as a whole.
+     */
+    synchronized SegmentedFileDownloader createSegmented() {
+        if (type != FileDownloaderType.NETWORK) {
+            return SegmentedFileDownloader.disabled();
+        }
+
+        if (segmentsExecutor == null) {
+            segmentsExecutor = Executors.newCachedThreadPool();
+        }
+
+        return new SegmentedFileDownloader(
+                httpClient,
+                new NetworkRequestCreator(),
+                segmentsExecutor,
+                bufferPool,
+                segmentsPersistence,
+                connectionLimit,
+                numberOfSegments,
+                minimumSegmentedFileSizeInBytes
+        );
+    }
+
     private FileDownloader createCustomFileDownloader() {
         if (customClass == null) {
             throw new CustomFileDownloaderException("CustomFileDownloader class cannot be accessed, is it public?");
@@ -5,11 +5,22 @@ class FileOperations {
     private final FilePersistenceCreator filePersistenceCreator;
     private final FileSizeRequester fileSizeRequester;
     private final FileDownloaderCreator fileDownloaderCreator;
+    private final FileDownloadExecutor fileDownloadExecutor;
+    private final FileDownloadExecutor fileSizeExecutor;
+    private final SharedFileDownloads sharedFileDownloads;
 
-    FileOperations(FilePersistenceCreator filePersistenceCreator, FileSizeRequester fileSizeRequester, FileDownloaderCreator fileDownloaderCreator) {
+    FileOperations(FilePersistenceCreator filePersistenceCreator,
+                   FileSizeRequester fileSizeRequester,
+                   FileDownloaderCreator fileDownloaderCreator,
+                   FileDownloadExecutor fileDownloadExecutor,
+                   FileDownloadExecutor fileSizeExecutor,
+                   SharedFileDownloads sharedFileDownloads) {
         this.filePersistenceCreator = filePersistenceCreator;
         this.fileSizeRequester = fileSizeRequester;
         this.fileDownloaderCreator = fileDownloaderCreator;
+        this.fileDownloadExecutor = fileDownloadExecutor;
+        this.fileSizeExecutor = fileSizeExecutor;
+        this.sharedFileDownloads = sharedFileDownloads;
     }
 
     FilePersistenceCreator filePersistenceCreator() {
@@ -23,4 +34,16 @@ class FileOperations {
     FileDownloaderCreator fileDownloaderCreator() {
         return fileDownloaderCreator;
     }
+
+    FileDownloadExecutor fileDownloadExecutor() {
+        return fileDownloadExecutor;
+    }
+
+    FileDownloadExecutor fileSizeExecutor() {
+        return fileSizeExecutor;
+    }
+
+    SharedFileDownloads sharedFileDownloads() {
+        return sharedFileDownloads;
+    }
 }
@@ -18,4 +18,14 @@ public interface FilePersistence {
     long getCurrentSize(FilePath filePath);
 
     void close();
+
+    /**
+     * Segmented downloads write the byte ranges of a file at their own offsets of its path, rather than through
+     * the persistence, so they are only used when the persistence stores the bytes as they are at that path.
+     *
+     * @return whether the bytes written through this persistence end up unchanged at the path of the file.
+     */
+    default boolean writesBytesAtFilePath() {
+        return false;
+    }
 }
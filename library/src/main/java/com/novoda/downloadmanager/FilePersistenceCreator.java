@@ -4,9 +4,14 @@ import android.content.Context;
 
 final class FilePersistenceCreator {
 
+    private static final int UNBUFFERED = 0;
+    private static final int SINGLE_POOLED_BUFFER = 1;
+
     private final Context context;
 
     private StorageRequirementRule storageRequirementRule;
+    private ByteBufferPool bufferPool = new ByteBufferPool(SINGLE_POOLED_BUFFER);
+    private int channelBufferSizeInBytes = UNBUFFERED;
 
     FilePersistenceCreator(Context context) {
         this.context = context.getApplicationContext();
@@ -16,8 +21,18 @@ final class FilePersistenceCreator {
         this.storageRequirementRule = storageRequirementRule;
     }
 
+    void withChannelBuffers(int bufferSizeInBytes) {
+        this.channelBufferSizeInBytes = bufferSizeInBytes;
+    }
+
+    void withBufferPool(ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
     FilePersistence create() {
-        FilePersistence filePersistence = new PathBasedFilePersistence();
+        FilePersistence filePersistence = channelBufferSizeInBytes == UNBUFFERED
+                ? new PathBasedFilePersistence()
+                : new ChannelFilePersistence(bufferPool, channelBufferSizeInBytes);
         filePersistence.initialiseWith(context, storageRequirementRule);
         return filePersistence;
     }
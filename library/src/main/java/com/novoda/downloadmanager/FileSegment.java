@@ -0,0 +1,51 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An inclusive byte range of a file that is downloaded over its own connection.
+ */
+class FileSegment {
+
+    private final long firstByte;
+    private final long lastByte;
+    private final AtomicLong downloadedBytes;
+
+    FileSegment(long firstByte, long lastByte, long downloadedBytes) {
+        this.firstByte = firstByte;
+        this.lastByte = lastByte;
+        this.downloadedBytes = new AtomicLong(downloadedBytes);
+    }
+
+    long firstByte() {
+        return firstByte;
+    }
+
+    long lastByte() {
+        return lastByte;
+    }
+
+    long downloadedBytes() {
+        return downloadedBytes.get();
+    }
+
+    long nextByte() {
+        return firstByte + downloadedBytes.get();
+    }
+
+    long remainingBytes() {
+        return lastByte - nextByte() + 1;
+    }
+
+    boolean isComplete() {
+        return nextByte() > lastByte;
+    }
+
+    void addToDownloadedBytes(long bytes) {
+        downloadedBytes.addAndGet(bytes);
+    }
+
+    FileSegment copy() {
+        return new FileSegment(firstByte, lastByte, downloadedBytes.get());
+    }
+}
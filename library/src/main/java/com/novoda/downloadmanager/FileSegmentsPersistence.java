@@ -0,0 +1,79 @@
+package com.novoda.downloadmanager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores the progress of each segment of a file in a small file next to it,
+ * so that a resumed download only requests the bytes that are still missing.
+ */
+class FileSegmentsPersistence {
+
+    private static final String SEGMENTS_EXTENSION = ".segments";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    boolean hasSegmentsFor(FilePath filePath) {
+        return segmentsFileFor(filePath).exists();
+    }
+
+    List<FileSegment> load(FilePath filePath) {
+        File segmentsFile = segmentsFileFor(filePath);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentsFile)))) {
+            int numberOfSegments = in.readInt();
+            List<FileSegment> segments = new ArrayList<>(numberOfSegments);
+            for (int i = 0; i < numberOfSegments; i++) {
+                segments.add(new FileSegment(in.readLong(), in.readLong(), in.readLong()));
+            }
+            return segments;
+        } catch (IOException e) {
+            Logger.e(e, "Failed to load the segments of " + filePath.path());
+            return Collections.emptyList();
+        }
+    }
+
+    long downloadedBytes(FilePath filePath) {
+        long downloadedBytes = 0;
+        for (FileSegment segment : load(filePath)) {
+            downloadedBytes += segment.downloadedBytes();
+        }
+        return downloadedBytes;
+    }
+
+    boolean persist(FilePath filePath, List<FileSegment> segments) {
+        File segmentsFile = segmentsFileFor(filePath);
+        File temporaryFile = new File(segmentsFile.getPath() + TEMPORARY_EXTENSION);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            out.writeInt(segments.size());
+            for (FileSegment segment : segments) {
+                out.writeLong(segment.firstByte());
+                out.writeLong(segment.lastByte());
+                out.writeLong(segment.downloadedBytes());
+            }
+        } catch (IOException e) {
+            Logger.e(e, "Failed to persist the segments of " + filePath.path());
+            return false;
+        }
+
+        return temporaryFile.renameTo(segmentsFile);
+    }
+
+    void delete(FilePath filePath) {
+        File segmentsFile = segmentsFileFor(filePath);
+        if (segmentsFile.exists() && !segmentsFile.delete()) {
+            Logger.w("Failed to delete the segments of " + filePath.path());
+        }
+    }
+
+    private static File segmentsFileFor(FilePath filePath) {
+        return new File(filePath.path() + SEGMENTS_EXTENSION);
+    }
+}
@@ -3,6 +3,8 @@ package com.novoda.downloadmanager;
 /**
  * For defining the mechanism by which a file size is determined.
  * Clients can create their own implementation and pass to {@link DownloadManagerBuilder#withFileDownloaderCustom(FileSizeRequester, Class)}.
+ * The size is not requested for a file that is paused, deleted or waiting for the network, however a request
+ * made by a custom implementation runs to completion even if the file is stopped in the meantime.
  */
 public interface FileSizeRequester {
 
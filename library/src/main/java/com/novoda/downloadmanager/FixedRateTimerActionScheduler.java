@@ -4,6 +4,10 @@ import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
+/**
+ * The timer may be shared with other schedulers, so only the tasks of this scheduler are ever cancelled.
+ * An action that throws is cancelled rather than killing the thread of the timer for everyone.
+ */
 class FixedRateTimerActionScheduler implements ActionScheduler {
 
     private static final long DELAY_IN_MILLIS = 0;
@@ -19,7 +23,7 @@ class FixedRateTimerActionScheduler implements ActionScheduler {
     }
 
     @Override
-    public void schedule(final Action action) {
+    public synchronized void schedule(final Action action) {
         if (actionTimerTasks.containsKey(action)) {
             return;
         }
@@ -27,7 +31,12 @@ class FixedRateTimerActionScheduler implements ActionScheduler {
         TimerTask taskToExecute = new TimerTask() {
             @Override
             public void run() {
-                action.perform();
+                try {
+                    action.perform();
+                } catch (RuntimeException e) {
+                    Logger.e(e, "Scheduled action failed, cancelling it");
+                    FixedRateTimerActionScheduler.this.cancel(action);
+                }
             }
         };
         timer.scheduleAtFixedRate(taskToExecute, DELAY_IN_MILLIS, frequencyInMillis);
@@ -35,7 +44,7 @@ class FixedRateTimerActionScheduler implements ActionScheduler {
     }
 
     @Override
-    public void cancel(Action action) {
+    public synchronized void cancel(Action action) {
         if (actionTimerTasks.containsKey(action)) {
             TimerTask timerTask = actionTimerTasks.get(action);
             timerTask.cancel();
@@ -44,7 +53,7 @@ class FixedRateTimerActionScheduler implements ActionScheduler {
     }
 
     @Override
-    public void cancelAll() {
+    public synchronized void cancelAll() {
         for (Map.Entry<Action, TimerTask> timerTaskEntry : actionTimerTasks.entrySet()) {
             TimerTask timerTask = timerTaskEntry.getValue();
             timerTask.cancel();
@@ -53,7 +62,7 @@ class FixedRateTimerActionScheduler implements ActionScheduler {
     }
 
     @Override
-    public boolean isScheduled(Action action) {
+    public synchronized boolean isScheduled(Action action) {
         return actionTimerTasks.containsKey(action);
     }
 
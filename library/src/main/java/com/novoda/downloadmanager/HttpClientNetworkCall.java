@@ -0,0 +1,54 @@
+package com.novoda.downloadmanager;
+
+import java.io.IOException;
+
+/**
+ * Cancels the requests of a custom {@link HttpClient} by closing the body of their response,
+ * which unblocks a pending read on most clients. A request still waiting for its response is
+ * only cancelled once the response arrives.
+ */
+class HttpClientNetworkCall implements NetworkCall {
+
+    private final HttpClient httpClient;
+    private final NetworkRequest networkRequest;
+
+    private volatile NetworkResponse response;
+    private volatile boolean cancelled;
+
+    HttpClientNetworkCall(HttpClient httpClient, NetworkRequest networkRequest) {
+        this.httpClient = httpClient;
+        this.networkRequest = networkRequest;
+    }
+
+    @Override
+    public NetworkResponse execute() throws IOException {
+        if (cancelled) {
+            throw new IOException("Canceled");
+        }
+
+        response = httpClient.execute(networkRequest);
+        if (cancelled) {
+            closeResponse();
+        }
+        return response;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+        closeResponse();
+    }
+
+    private void closeResponse() {
+        NetworkResponse networkResponse = response;
+        if (networkResponse == null) {
+            return;
+        }
+
+        try {
+            networkResponse.closeByteStream();
+        } catch (IOException e) {
+            Logger.w("Cannot close the body response of " + networkRequest.url() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps track of the http calls of a downloader, so that stopping it aborts them straight away
+ * and releases their connections instead of waiting for a stalled read to time out.
+ */
+class InFlightCalls {
+
+    private final Set<NetworkCall> calls = new HashSet<>();
+
+    private boolean cancelled;
+
+    synchronized void open() {
+        cancelled = false;
+    }
+
+    /**
+     * The call must be handed back through {@link #remove(NetworkCall)} once its response has been closed.
+     */
+    NetworkCall newCall(HttpClient httpClient, NetworkRequest networkRequest) {
+        NetworkCall call = httpClient instanceof CancellableHttpClient
+                ? ((CancellableHttpClient) httpClient).newCall(networkRequest)
+                : new HttpClientNetworkCall(httpClient, networkRequest);
+
+        synchronized (this) {
+            if (!cancelled) {
+                calls.add(call);
+                return call;
+            }
+        }
+        call.cancel();
+        return call;
+    }
+
+    synchronized void remove(NetworkCall call) {
+        calls.remove(call);
+    }
+
+    void cancelAll() {
+        List<NetworkCall> callsToCancel;
+        synchronized (this) {
+            cancelled = true;
+            callsToCancel = new ArrayList<>(calls);
+            calls.clear();
+        }
+
+        for (NetworkCall call : callsToCancel) {
+            call.cancel();
+        }
+    }
+}
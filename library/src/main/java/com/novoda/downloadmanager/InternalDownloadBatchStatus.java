@@ -2,17 +2,22 @@ package com.novoda.downloadmanager;
 
 interface InternalDownloadBatchStatus extends DownloadBatchStatus {
 
+    int priority();
+
     void updateTotalSize(long totalBatchSizeBytes);
 
     void updateDownloaded(long currentBytesDownloaded);
 
     void markAsDownloading(DownloadsBatchStatusPersistence persistence);
 
-    void markAsPaused(DownloadsBatchStatusPersistence persistence);
+    boolean markAsPaused(DownloadsBatchStatusPersistence persistence);
 
-    void markAsQueued(DownloadsBatchStatusPersistence persistence);
+    boolean markAsQueued(DownloadsBatchStatusPersistence persistence);
 
-    void markAsDeleting();
+    /**
+     * @return the status the batch was in, absent when it was already deleting or deleted.
+     */
+    Optional<Status> markAsDeleting();
 
     void markAsDeleted();
 
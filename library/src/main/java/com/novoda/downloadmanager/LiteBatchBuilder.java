@@ -10,6 +10,7 @@ final class LiteBatchBuilder implements InternalBatchBuilder {
     private final DownloadBatchId downloadBatchId;
     private final String title;
     private final List<BatchFile> batchFiles;
+    private int priority = Batch.DEFAULT_PRIORITY;
 
     LiteBatchBuilder(StorageRoot storageRoot, DownloadBatchId downloadBatchId, String title, List<BatchFile> batchFiles) {
         this.storageRoot = storageRoot;
@@ -28,10 +29,16 @@ final class LiteBatchBuilder implements InternalBatchBuilder {
         return BatchFile.from(storageRoot, downloadBatchId, networkAddress).withParentBuilder(this);
     }
 
+    @Override
+    public BatchBuilder withPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
     @Override
     public Batch build() {
         ensureNoFileIdDuplicates(batchFiles);
-        return new Batch(storageRoot, downloadBatchId, title, batchFiles);
+        return new Batch(storageRoot, downloadBatchId, title, batchFiles, priority);
     }
 
     private void ensureNoFileIdDuplicates(List<BatchFile> batchFiles) {
@@ -2,6 +2,15 @@ package com.novoda.downloadmanager;
 
 import android.support.annotation.Nullable;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Read and updated from the download threads, the control executor and the main thread, without locking.
+ * The status only moves through compare-and-set transitions, a transition that is not allowed from the
+ * current status is dropped, e.g. a batch that is being deleted can no longer be paused or downloaded,
+ * so that concurrent requests resolve the same way whatever the order in which they run.
+ * The status and its error move together, a batch is never seen in error without the error that caused it.
+ */
 class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
 
     private static final long ZERO_BYTES = 0;
@@ -11,13 +20,14 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
     private final DownloadBatchId downloadBatchId;
     private final String storageRoot;
     private final long downloadedDateTimeInMillis;
+    private final int priority;
 
-    private Status status;
-    private boolean notificationSeen;
-    private long bytesDownloaded;
-    private long totalBatchSizeBytes;
-    private int percentageDownloaded;
-    private Optional<DownloadError> downloadError;
+    private final AtomicReference<State> state;
+
+    private volatile boolean notificationSeen;
+    private volatile long bytesDownloaded;
+    private volatile long totalBatchSizeBytes;
+    private volatile int percentageDownloaded;
 
     @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     LiteDownloadBatchStatus(DownloadBatchId downloadBatchId,
@@ -28,17 +38,23 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
                             long totalBatchSizeBytes,
                             Status status,
                             boolean notificationSeen,
-                            Optional<DownloadError> downloadError) {
+                            Optional<DownloadError> downloadError,
+                            int priority) {
         this.downloadBatchTitle = downloadBatchTitle;
         this.downloadBatchId = downloadBatchId;
         this.storageRoot = storageRoot;
         this.downloadedDateTimeInMillis = downloadedDateTimeInMillis;
         this.bytesDownloaded = bytesDownloaded;
         this.totalBatchSizeBytes = totalBatchSizeBytes;
-        this.downloadError = downloadError;
         this.percentageDownloaded = getPercentageFrom(bytesDownloaded, totalBatchSizeBytes);
-        this.status = status;
+        this.state = new AtomicReference<>(new State(status, downloadError));
         this.notificationSeen = notificationSeen;
+        this.priority = priority;
+    }
+
+    @Override
+    public int priority() {
+        return priority;
     }
 
     @Override
@@ -92,7 +108,7 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
 
     @Override
     public Status status() {
-        return status;
+        return state.get().status;
     }
 
     @Override
@@ -102,55 +118,109 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
 
     @Override
     public void markAsDownloading(DownloadsBatchStatusPersistence persistence) {
-        status = Status.DOWNLOADING;
-        updateStatusAsync(status, persistence);
+        moveToAndPersist(Status.DOWNLOADING, persistence);
     }
 
     @Override
-    public void markAsPaused(DownloadsBatchStatusPersistence persistence) {
-        status = Status.PAUSED;
-        updateStatusAsync(status, persistence);
+    public boolean markAsPaused(DownloadsBatchStatusPersistence persistence) {
+        return moveToAndPersist(Status.PAUSED, persistence);
     }
 
     @Override
-    public void markAsQueued(DownloadsBatchStatusPersistence persistence) {
-        status = Status.QUEUED;
-        updateStatusAsync(status, persistence);
+    public boolean markAsQueued(DownloadsBatchStatusPersistence persistence) {
+        return moveToAndPersist(Status.QUEUED, persistence);
     }
 
     @Override
-    public void markAsDeleting() {
-        status = Status.DELETING;
-        notificationSeen = false;
+    public Optional<Status> markAsDeleting() {
+        Optional<Status> previousStatus = moveTo(Status.DELETING);
+        if (previousStatus.isPresent()) {
+            notificationSeen = false;
+        }
+        return previousStatus;
     }
 
     @Override
     public void markAsDeleted() {
-        status = Status.DELETED;
-        notificationSeen = false;
+        if (moveTo(Status.DELETED).isPresent()) {
+            notificationSeen = false;
+        }
     }
 
     @Override
     public void markAsError(Optional<DownloadError> downloadError, DownloadsBatchStatusPersistence persistence) {
-        this.status = Status.ERROR;
-        this.downloadError = downloadError;
-        updateStatusAsync(status, persistence);
+        if (moveTo(Status.ERROR, downloadError).isPresent()) {
+            persistence.updateStatusAsync(downloadBatchId, Status.ERROR);
+        }
     }
 
     @Override
     public void markAsDownloaded(DownloadsBatchStatusPersistence persistence) {
-        this.status = Status.DOWNLOADED;
-        updateStatusAsync(status, persistence);
+        moveToAndPersist(Status.DOWNLOADED, persistence);
     }
 
     @Override
     public void markAsWaitingForNetwork(DownloadsBatchPersistence persistence) {
-        this.status = Status.WAITING_FOR_NETWORK;
-        updateStatusAsync(status, persistence);
+        moveToAndPersist(Status.WAITING_FOR_NETWORK, persistence);
+    }
+
+    private boolean moveToAndPersist(Status newStatus, DownloadsBatchStatusPersistence persistence) {
+        if (moveTo(newStatus).isPresent()) {
+            persistence.updateStatusAsync(downloadBatchId, newStatus);
+            return true;
+        }
+        return false;
+    }
+
+    private Optional<Status> moveTo(Status newStatus) {
+        return moveTo(newStatus, Optional.absent());
+    }
+
+    /**
+     * @param newDownloadError the error of the batch once in error, the other statuses keep the error the batch had.
+     * @return the status the batch moved from, absent when the transition is not allowed from the current status.
+     */
+    private Optional<Status> moveTo(Status newStatus, Optional<DownloadError> newDownloadError) {
+        State currentState = state.get();
+        while (canMove(currentState.status, newStatus)) {
+            Optional<DownloadError> downloadError = newStatus == Status.ERROR ? newDownloadError : currentState.downloadError;
+            if (state.compareAndSet(currentState, new State(newStatus, downloadError))) {
+                return Optional.of(currentState.status);
+            }
+            currentState = state.get();
+        }
+        if (Logger.isEnabled(LogLevel.VERBOSE)) {
+            Logger.v("batch " + downloadBatchId.rawId() + " cannot move from " + currentState.status + " to " + newStatus);
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Deleting wins over everything else, a downloaded batch stays downloaded
+     * and a paused batch must be queued again before it downloads.
+     */
+    private static boolean canMove(Status currentStatus, Status newStatus) {
+        if (currentStatus == Status.DELETED) {
+            return false;
+        }
+        if (currentStatus == Status.DELETING) {
+            return newStatus == Status.DELETED;
+        }
+        if (newStatus == Status.DELETING || newStatus == Status.DELETED) {
+            return true;
+        }
+        if (currentStatus == Status.DOWNLOADED) {
+            return newStatus == Status.DOWNLOADED;
+        }
+        if (currentStatus == Status.PAUSED) {
+            return newStatus != Status.DOWNLOADING && newStatus != Status.ERROR && newStatus != Status.WAITING_FOR_NETWORK;
+        }
+        return true;
     }
 
     @Override
     public InternalDownloadBatchStatus copy() {
+        State currentState = state.get();
         return new LiteDownloadBatchStatus(
                 downloadBatchId,
                 downloadBatchTitle,
@@ -158,19 +228,17 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
                 downloadedDateTimeInMillis,
                 bytesDownloaded,
                 totalBatchSizeBytes,
-                status,
+                currentState.status,
                 notificationSeen,
-                downloadError
+                currentState.downloadError,
+                priority
         );
     }
 
-    private void updateStatusAsync(Status status, DownloadsBatchStatusPersistence persistence) {
-        persistence.updateStatusAsync(downloadBatchId, status);
-    }
-
     @Nullable
     @Override
     public DownloadError downloadError() {
+        Optional<DownloadError> downloadError = state.get().downloadError;
         if (downloadError.isPresent()) {
             return downloadError.get();
         } else {
@@ -197,6 +265,9 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
         if (downloadedDateTimeInMillis != that.downloadedDateTimeInMillis) {
             return false;
         }
+        if (priority != that.priority) {
+            return false;
+        }
         if (notificationSeen != that.notificationSeen) {
             return false;
         }
@@ -218,10 +289,7 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
         if (storageRoot != null ? !storageRoot.equals(that.storageRoot) : that.storageRoot != null) {
             return false;
         }
-        if (status != that.status) {
-            return false;
-        }
-        return downloadError != null ? downloadError.equals(that.downloadError) : that.downloadError == null;
+        return state.get().equals(that.state.get());
     }
 
     @Override
@@ -230,28 +298,67 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
         result = 31 * result + (downloadBatchId != null ? downloadBatchId.hashCode() : 0);
         result = 31 * result + (storageRoot != null ? storageRoot.hashCode() : 0);
         result = 31 * result + (int) (downloadedDateTimeInMillis ^ (downloadedDateTimeInMillis >>> 32));
-        result = 31 * result + (status != null ? status.hashCode() : 0);
+        State currentState = state.get();
+        result = 31 * result + currentState.status.hashCode();
         result = 31 * result + (notificationSeen ? 1 : 0);
         result = 31 * result + (int) (bytesDownloaded ^ (bytesDownloaded >>> 32));
         result = 31 * result + (int) (totalBatchSizeBytes ^ (totalBatchSizeBytes >>> 32));
         result = 31 * result + percentageDownloaded;
-        result = 31 * result + (downloadError != null ? downloadError.hashCode() : 0);
+        result = 31 * result + (currentState.downloadError != null ? currentState.downloadError.hashCode() : 0);
+        result = 31 * result + priority;
         return result;
     }
 
     @Override
     public String toString() {
+        State currentState = state.get();
         return "LiteDownloadBatchStatus{"
                 + "downloadBatchTitle=" + downloadBatchTitle
                 + ", downloadBatchId=" + downloadBatchId
                 + ", storageRoot='" + storageRoot + '\''
                 + ", downloadedDateTimeInMillis=" + downloadedDateTimeInMillis
-                + ", status=" + status
+                + ", status=" + currentState.status
                 + ", notificationSeen=" + notificationSeen
                 + ", bytesDownloaded=" + bytesDownloaded
                 + ", totalBatchSizeBytes=" + totalBatchSizeBytes
                 + ", percentageDownloaded=" + percentageDownloaded
-                + ", downloadError=" + downloadError
+                + ", downloadError=" + currentState.downloadError
+                + ", priority=" + priority
                 + '}';
     }
+
+    private static final class State {
+
+        private final Status status;
+        private final Optional<DownloadError> downloadError;
+
+        State(Status status, Optional<DownloadError> downloadError) {
+            this.status = status;
+            this.downloadError = downloadError;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            State that = (State) o;
+
+            if (status != that.status) {
+                return false;
+            }
+            return downloadError != null ? downloadError.equals(that.downloadError) : that.downloadError == null;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = status.hashCode();
+            result = 31 * result + (downloadError != null ? downloadError.hashCode() : 0);
+            return result;
+        }
+    }
 }
@@ -1,19 +1,27 @@
 package com.novoda.downloadmanager;
 
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The status only moves through compare-and-set transitions, so that the download loop can read it
+ * cheaply while it is paused or deleted from other threads. A deleted file stays deleted and a paused
+ * file must be queued again before it downloads.
+ */
 class LiteDownloadFileStatus implements InternalDownloadFileStatus {
 
     private final DownloadBatchId downloadBatchId;
     private final DownloadFileId downloadFileId;
 
-    private FileSize fileSize;
-    private FilePath localFilePath;
-    private Status status;
-    private Optional<DownloadError> downloadError = Optional.absent();
+    private final AtomicReference<Status> status;
+
+    private volatile FileSize fileSize;
+    private volatile FilePath localFilePath;
+    private volatile Optional<DownloadError> downloadError = Optional.absent();
 
     LiteDownloadFileStatus(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId, Status status, FileSize fileSize, FilePath localFilePath) {
         this.downloadBatchId = downloadBatchId;
         this.downloadFileId = downloadFileId;
-        this.status = status;
+        this.status = new AtomicReference<>(status);
         this.fileSize = fileSize;
         this.localFilePath = localFilePath;
     }
@@ -29,7 +37,7 @@ class LiteDownloadFileStatus implements InternalDownloadFileStatus {
     }
 
     private void markAsDownloaded() {
-        status = Status.DOWNLOADED;
+        moveTo(Status.DOWNLOADED);
     }
 
     @Override
@@ -59,58 +67,80 @@ class LiteDownloadFileStatus implements InternalDownloadFileStatus {
 
     @Override
     public boolean isMarkedAsDownloading() {
-        return status == Status.DOWNLOADING;
+        return status.get() == Status.DOWNLOADING;
     }
 
     @Override
     public boolean isMarkedAsQueued() {
-        return status == Status.QUEUED;
+        return status.get() == Status.QUEUED;
     }
 
     @Override
     public boolean isMarkedAsDeleted() {
-        return status == Status.DELETED;
+        return status.get() == Status.DELETED;
     }
 
     @Override
     public void markAsDownloading() {
-        status = Status.DOWNLOADING;
+        moveTo(Status.DOWNLOADING);
     }
 
     @Override
     public void markAsPaused() {
-        status = Status.PAUSED;
+        moveTo(Status.PAUSED);
     }
 
     @Override
     public boolean isMarkedAsError() {
-        return status == Status.ERROR;
+        return status.get() == Status.ERROR;
     }
 
     @Override
     public void markAsQueued() {
-        status = Status.QUEUED;
+        moveTo(Status.QUEUED);
     }
 
     @Override
     public void markAsDeleted() {
-        status = Status.DELETED;
+        moveTo(Status.DELETED);
     }
 
     @Override
     public void markAsError(DownloadError downloadError) {
-        status = Status.ERROR;
-        this.downloadError = Optional.of(downloadError);
+        if (moveTo(Status.ERROR)) {
+            this.downloadError = Optional.of(downloadError);
+        }
     }
 
     @Override
     public boolean isMarkedAsWaitingForNetwork() {
-        return status == Status.WAITING_FOR_NETWORK;
+        return status.get() == Status.WAITING_FOR_NETWORK;
     }
 
     @Override
     public void waitForNetwork() {
-        status = Status.WAITING_FOR_NETWORK;
+        moveTo(Status.WAITING_FOR_NETWORK);
+    }
+
+    private boolean moveTo(Status newStatus) {
+        Status currentStatus = status.get();
+        while (canMove(currentStatus, newStatus)) {
+            if (status.compareAndSet(currentStatus, newStatus)) {
+                return true;
+            }
+            currentStatus = status.get();
+        }
+        return false;
+    }
+
+    private static boolean canMove(Status currentStatus, Status newStatus) {
+        if (currentStatus == Status.DELETED) {
+            return false;
+        }
+        if (currentStatus == Status.PAUSED) {
+            return newStatus != Status.DOWNLOADING && newStatus != Status.ERROR && newStatus != Status.WAITING_FOR_NETWORK;
+        }
+        return true;
     }
 
     @Override
@@ -120,7 +150,7 @@ class LiteDownloadFileStatus implements InternalDownloadFileStatus {
 
     @Override
     public Status status() {
-        return status;
+        return status.get();
     }
 
     @Override
@@ -146,7 +176,7 @@ class LiteDownloadFileStatus implements InternalDownloadFileStatus {
         if (localFilePath != null ? !localFilePath.equals(that.localFilePath) : that.localFilePath != null) {
             return false;
         }
-        if (status != that.status) {
+        if (status.get() != that.status.get()) {
             return false;
         }
         return downloadError != null ? downloadError.equals(that.downloadError) : that.downloadError == null;
@@ -158,7 +188,7 @@ class LiteDownloadFileStatus implements InternalDownloadFileStatus {
         result = 31 * result + (downloadFileId != null ? downloadFileId.hashCode() : 0);
         result = 31 * result + (fileSize != null ? fileSize.hashCode() : 0);
         result = 31 * result + (localFilePath != null ? localFilePath.hashCode() : 0);
-        result = 31 * result + (status != null ? status.hashCode() : 0);
+        result = 31 * result + status.get().hashCode();
         result = 31 * result + (downloadError != null ? downloadError.hashCode() : 0);
         return result;
     }
@@ -170,7 +200,7 @@ class LiteDownloadFileStatus implements InternalDownloadFileStatus {
                 + ", downloadFileId=" + downloadFileId
                 + ", fileSize=" + fileSize
                 + ", localFilePath=" + localFilePath
-                + ", status=" + status
+                + ", status=" + status.get()
                 + ", downloadError=" + downloadError
                 + '}';
     }
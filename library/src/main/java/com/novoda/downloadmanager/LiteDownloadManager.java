@@ -5,18 +5,24 @@ import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 
+import static com.novoda.downloadmanager.DownloadBatchStatus.Status.ERROR;
+import static com.novoda.downloadmanager.DownloadBatchStatus.Status.WAITING_FOR_NETWORK;
+
 class LiteDownloadManager implements DownloadManager {
 
     private final Object waitForDownloadService;
     private final Object waitForDownloadBatchStatusCallback;
     private final ExecutorService executor;
     private final Handler callbackHandler;
-    private final Map<DownloadBatchId, DownloadBatch> downloadBatchMap;
+    private final ConcurrentMap<DownloadBatchId, DownloadBatch> downloadBatchMap;
     private final Set<DownloadBatchStatusCallback> callbacks;
     private final FileOperations fileOperations;
     private final DownloadsBatchPersistence downloadsBatchPersistence;
@@ -24,13 +30,15 @@ class LiteDownloadManager implements DownloadManager {
     private final ConnectionChecker connectionChecker;
     private final Wait.Criteria serviceCriteria;
 
+    private volatile boolean storedDownloadsLoaded;
+
     // LiteDownloadManager is a complex object.
     @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     LiteDownloadManager(Object waitForDownloadService,
                         Object waitForDownloadBatchStatusCallback,
                         ExecutorService executor,
                         Handler callbackHandler,
-                        Map<DownloadBatchId, DownloadBatch> downloadBatchMap,
+                        ConcurrentMap<DownloadBatchId, DownloadBatch> downloadBatchMap,
                         Set<DownloadBatchStatusCallback> callbacks,
                         FileOperations fileOperations,
                         DownloadsBatchPersistence downloadsBatchPersistence,
@@ -52,6 +60,7 @@ class LiteDownloadManager implements DownloadManager {
 
     void initialise(DownloadService downloadService) {
         downloader.setDownloadService(downloadService);
+        downloadService.doOnDestroy(downloadsBatchPersistence::flushPendingUpdatesAsync);
         serviceCriteria.update(downloadService);
         synchronized (waitForDownloadService) {
             waitForDownloadService.notifyAll();
@@ -66,14 +75,43 @@ class LiteDownloadManager implements DownloadManager {
     private DownloadsBatchPersistence.LoadBatchesCallback loadBatchesCallback(AllStoredDownloadsSubmittedCallback callback) {
         return downloadBatches -> {
             for (DownloadBatch downloadBatch : downloadBatches) {
-                downloadBatchMap.put(downloadBatch.getId(), downloadBatch);
-                downloader.download(downloadBatch, downloadBatchMap);
+                // A batch already held in memory is live, the copy just read from storage must not replace it nor run alongside it.
+                if (downloadBatchMap.putIfAbsent(downloadBatch.getId(), downloadBatch) == null) {
+                    downloader.download(downloadBatch, downloadBatchMap);
+                }
             }
 
+            storedDownloadsLoaded = true;
             callbackHandler.post(callback::onAllDownloadsSubmitted);
         };
     }
 
+    /**
+     * Re-queues the batches held in memory that stopped for the network, rather than reloading every batch.
+     * The stored batches are only read when they have not been loaded yet, skipping the ones held in memory
+     * by the time they are read, which includes the ones inserted by a load that was still pending.
+     */
+    void reconcileStoredDownloads(AllStoredDownloadsSubmittedCallback callback) {
+        for (DownloadBatch downloadBatch : downloadBatchMap.values()) {
+            requeueIfStoppedForNetwork(downloadBatch);
+        }
+
+        if (storedDownloadsLoaded) {
+            callbackHandler.post(callback::onAllDownloadsSubmitted);
+        } else {
+            downloadsBatchPersistence.loadAsync(fileOperations, downloadBatchMap, loadBatchesCallback(callback));
+        }
+    }
+
+    private void requeueIfStoppedForNetwork(DownloadBatch downloadBatch) {
+        DownloadBatchStatus.Status status = downloadBatch.status().status();
+        if (status == WAITING_FOR_NETWORK || status == ERROR) {
+            Logger.v(() -> "requeue batch " + downloadBatch.getId().rawId() + " from " + status);
+            downloadBatch.resume();
+            downloader.download(downloadBatch, downloadBatchMap);
+        }
+    }
+
     @Override
     public void download(Batch batch) {
         DownloadBatchId downloadBatchId = batch.downloadBatchId();
@@ -81,7 +119,28 @@ class LiteDownloadManager implements DownloadManager {
         if (downloadBatch == null) {
             downloader.download(batch, downloadBatchMap);
         } else {
-            Logger.v("abort download batch " + downloadBatchId + " will not download as exists already in the running batches map");
+            Logger.v(() -> "abort download batch " + downloadBatchId + " will not download as exists already in the running batches map");
+        }
+    }
+
+    @Override
+    public void download(Collection<Batch> batches) {
+        if (batches == null) {
+            throw new IllegalArgumentException("Batches cannot be null");
+        }
+
+        Map<DownloadBatchId, Batch> batchesToDownload = new LinkedHashMap<>(batches.size());
+        for (Batch batch : batches) {
+            DownloadBatchId downloadBatchId = batch.downloadBatchId();
+            if (downloadBatchMap.containsKey(downloadBatchId) || batchesToDownload.containsKey(downloadBatchId)) {
+                Logger.v(() -> "abort download batch " + downloadBatchId + " will not download as exists already in the running batches map");
+            } else {
+                batchesToDownload.put(downloadBatchId, batch);
+            }
+        }
+
+        if (!batchesToDownload.isEmpty()) {
+            downloader.download(new ArrayList<>(batchesToDownload.values()), downloadBatchMap);
         }
     }
 
@@ -89,7 +148,7 @@ class LiteDownloadManager implements DownloadManager {
     public void pause(DownloadBatchId downloadBatchId) {
         DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
         if (downloadBatch == null) {
-            Logger.v("abort pause batch " + downloadBatchId + " will not be paused as it does not exists in the running batches map");
+            Logger.v(() -> "abort pause batch " + downloadBatchId + " will not be paused as it does not exists in the running batches map");
             return;
         }
         downloadBatch.pause();
@@ -99,12 +158,12 @@ class LiteDownloadManager implements DownloadManager {
     public void resume(DownloadBatchId downloadBatchId) {
         DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
         if (downloadBatch == null) {
-            Logger.v("abort resume batch " + downloadBatchId + " will not be resume as it does not exists in the running batches map");
+            Logger.v(() -> "abort resume batch " + downloadBatchId + " will not be resume as it does not exists in the running batches map");
             return;
         }
 
         if (downloadBatch.status().status() == DownloadBatchStatus.Status.DOWNLOADING) {
-            Logger.v("abort resume batch " + downloadBatchId + " will not be resume as it's already downloading");
+            Logger.v(() -> "abort resume batch " + downloadBatchId + " will not be resume as it's already downloading");
             return;
         }
 
@@ -116,13 +175,137 @@ class LiteDownloadManager implements DownloadManager {
     public void delete(DownloadBatchId downloadBatchId) {
         DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
         if (downloadBatch == null) {
-            Logger.v("abort delete batch " + downloadBatchId + " will not be deleted as it does not exists in the running batches map");
+            Logger.v(() -> "abort delete batch " + downloadBatchId + " will not be deleted as it does not exists in the running batches map");
             return;
         }
 
         downloadBatch.delete();
     }
 
+    @Override
+    public void pauseAll(Collection<DownloadBatchId> downloadBatchIds) {
+        pauseAll(batchesWith(downloadBatchIds));
+    }
+
+    @Override
+    public void pauseAll(DownloadBatchStatusPredicate predicate) {
+        pauseAll(batchesMatching(predicate));
+    }
+
+    private void pauseAll(List<DownloadBatch> downloadBatches) {
+        downloader.coalesceUpdates(() -> {
+            for (DownloadBatch downloadBatch : downloadBatches) {
+                downloadBatch.pause();
+            }
+        });
+    }
+
+    @Override
+    public void resumeAll(Collection<DownloadBatchId> downloadBatchIds) {
+        resumeAll(batchesWith(downloadBatchIds));
+    }
+
+    @Override
+    public void resumeAll(DownloadBatchStatusPredicate predicate) {
+        resumeAll(batchesMatching(predicate));
+    }
+
+    private void resumeAll(List<DownloadBatch> downloadBatches) {
+        List<DownloadBatch> resumedBatches = new ArrayList<>(downloadBatches.size());
+        downloader.coalesceUpdates(() -> {
+            for (DownloadBatch downloadBatch : downloadBatches) {
+                if (downloadBatch.status().status() != DownloadBatchStatus.Status.DOWNLOADING) {
+                    downloadBatch.resume();
+                    resumedBatches.add(downloadBatch);
+                }
+            }
+        });
+
+        if (!resumedBatches.isEmpty()) {
+            downloader.downloadAll(resumedBatches, downloadBatchMap);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<DownloadBatchId> downloadBatchIds) {
+        deleteAll(batchesWith(downloadBatchIds));
+    }
+
+    @Override
+    public void deleteAll(DownloadBatchStatusPredicate predicate) {
+        deleteAll(batchesMatching(predicate));
+    }
+
+    /**
+     * The batches that are downloading are deleted by their download once it stops, as with {@link #delete(DownloadBatchId)}.
+     * The stopped ones are deleted from the persistence together, before sweeping their files in the background.
+     */
+    private void deleteAll(List<DownloadBatch> downloadBatches) {
+        List<DownloadBatch> stoppedBatches = new ArrayList<>(downloadBatches.size());
+        downloader.coalesceUpdates(() -> {
+            for (DownloadBatch downloadBatch : downloadBatches) {
+                Optional<DownloadBatchStatus.Status> previousStatus = downloadBatch.markAsDeleting();
+                if (previousStatus.isAbsent()) {
+                    continue;
+                }
+
+                if (DownloadBatch.isStopped(previousStatus.get())) {
+                    stoppedBatches.add(downloadBatch);
+                } else {
+                    downloadBatch.deleteFiles();
+                }
+            }
+        });
+
+        if (stoppedBatches.isEmpty()) {
+            return;
+        }
+
+        downloadsBatchPersistence.deleteAsync(stoppedBatches, deletedBatches -> {
+            downloader.coalesceUpdates(() -> {
+                for (DownloadBatch deletedBatch : deletedBatches) {
+                    deletedBatch.markAsDeleted();
+                }
+            });
+
+            for (DownloadBatch deletedBatch : deletedBatches) {
+                deletedBatch.deleteFiles();
+            }
+            Logger.v(() -> "swept the files of " + deletedBatches.size() + " deleted batches");
+        });
+    }
+
+    private List<DownloadBatch> batchesWith(Collection<DownloadBatchId> downloadBatchIds) {
+        if (downloadBatchIds == null) {
+            throw new IllegalArgumentException("Download batch ids cannot be null");
+        }
+
+        List<DownloadBatch> downloadBatches = new ArrayList<>(downloadBatchIds.size());
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
+            if (downloadBatch == null) {
+                Logger.v(() -> "skip batch " + downloadBatchId + " as it does not exists in the running batches map");
+            } else {
+                downloadBatches.add(downloadBatch);
+            }
+        }
+        return downloadBatches;
+    }
+
+    private List<DownloadBatch> batchesMatching(DownloadBatchStatusPredicate predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("Predicate cannot be null");
+        }
+
+        List<DownloadBatch> downloadBatches = new ArrayList<>();
+        for (DownloadBatch downloadBatch : downloadBatchMap.values()) {
+            if (predicate.matches(downloadBatch.status())) {
+                downloadBatches.add(downloadBatch);
+            }
+        }
+        return downloadBatches;
+    }
+
     @Override
     public void addDownloadBatchCallback(DownloadBatchStatusCallback downloadBatchCallback) {
         synchronized (waitForDownloadBatchStatusCallback) {
@@ -200,6 +383,11 @@ class LiteDownloadManager implements DownloadManager {
                 }));
     }
 
+    @Override
+    public List<DownloadBatchId> getDownloadBatchQueue() {
+        return downloader.downloadBatchQueue();
+    }
+
     @Override
     public void updateAllowedConnectionType(ConnectionType allowedConnectionType) {
         if (allowedConnectionType == null) {
@@ -209,7 +397,7 @@ class LiteDownloadManager implements DownloadManager {
         DownloadsNetworkRecoveryCreator.getInstance().updateAllowedConnectionType(allowedConnectionType);
 
         if (connectionChecker.isAllowedToDownload()) {
-            submitAllStoredDownloads(() -> Logger.v("Allowed connectionType updated to " + allowedConnectionType + ". All jobs submitted"));
+            reconcileStoredDownloads(() -> Logger.v(() -> "Allowed connectionType updated to " + allowedConnectionType + ". All jobs submitted"));
         } else {
             for (DownloadBatch downloadBatch : downloadBatchMap.values()) {
                 downloadBatch.waitForNetwork();
@@ -1,7 +1,12 @@
 package com.novoda.downloadmanager;
 
 import android.os.Handler;
+import android.support.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -16,6 +21,7 @@ class LiteDownloadManagerDownloader {
     private final Object waitForDownloadService;
     private final Object waitForDownloadBatchStatusCallback;
     private final ExecutorService executor;
+    private final BatchDownloadExecutor batchDownloadExecutor;
     private final Handler callbackHandler;
     private final FileOperations fileOperations;
     private final DownloadsBatchPersistence downloadsBatchPersistence;
@@ -26,14 +32,17 @@ class LiteDownloadManagerDownloader {
     private final CallbackThrottleCreator callbackThrottleCreator;
     private final DownloadBatchStatusFilter downloadBatchStatusFilter;
     private final Wait.Criteria serviceCriteria;
+    private final ThreadLocal<List<DownloadBatchStatus>> coalescedUpdates = new ThreadLocal<>();
 
-    private DownloadService downloadService;
+    @Nullable
+    private volatile DownloadService downloadService;
 
     @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
 // Can't group anymore these are customisable options.
     LiteDownloadManagerDownloader(Object waitForDownloadService,
                                   Object waitForDownloadBatchStatusCallback,
                                   ExecutorService executor,
+                                  BatchDownloadExecutor batchDownloadExecutor,
                                   Handler callbackHandler,
                                   FileOperations fileOperations,
                                   DownloadsBatchPersistence downloadsBatchPersistence,
@@ -47,6 +56,7 @@ class LiteDownloadManagerDownloader {
         this.waitForDownloadService = waitForDownloadService;
         this.waitForDownloadBatchStatusCallback = waitForDownloadBatchStatusCallback;
         this.executor = executor;
+        this.batchDownloadExecutor = batchDownloadExecutor;
         this.callbackHandler = callbackHandler;
         this.fileOperations = fileOperations;
         this.downloadsBatchPersistence = downloadsBatchPersistence;
@@ -70,10 +80,43 @@ class LiteDownloadManagerDownloader {
         );
 
         downloadBatchMap.put(downloadBatch.getId(), downloadBatch);
-        executor.submit(downloadBatch::updateTotalSize);
         download(downloadBatch, downloadBatchMap);
     }
 
+    /**
+     * Submits the batches as a group, their statuses and files are persisted in a single transaction.
+     */
+    void download(Collection<Batch> batches, Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
+        List<DownloadBatch> downloadBatches = new ArrayList<>(batches.size());
+        for (Batch batch : batches) {
+            DownloadBatch downloadBatch = DownloadBatchFactory.newInstance(
+                    batch,
+                    fileOperations,
+                    downloadsBatchPersistence,
+                    downloadsFilePersistence,
+                    callbackThrottleCreator.create(),
+                    connectionChecker
+            );
+            downloadBatchMap.put(downloadBatch.getId(), downloadBatch);
+            downloadBatches.add(downloadBatch);
+        }
+
+        downloadAll(downloadBatches, downloadBatchMap);
+    }
+
+    /**
+     * Submits the batches held in memory as a group, e.g. when resuming many batches at once.
+     */
+    void downloadAll(List<DownloadBatch> downloadBatches, Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                Wait.<Void>waitFor(serviceCriteria, waitForDownloadService)
+                        .thenPerform(executeDownloads(downloadBatches, downloadBatchMap));
+            }
+        });
+    }
+
     void download(DownloadBatch downloadBatch, Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
         DownloadBatchId downloadBatchId = downloadBatch.getId();
         if (!downloadBatchMap.containsKey(downloadBatchId)) {
@@ -91,14 +134,60 @@ class LiteDownloadManagerDownloader {
 
     private Wait.ThenPerform.Action<Void> executeDownload(DownloadBatch downloadBatch, Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
         return () -> {
-            InternalDownloadBatchStatus downloadBatchStatus = downloadBatch.status();
-            updateStatusToQueuedIfNeeded(downloadBatchStatus);
+            updateStatusToQueuedIfNeeded(downloadBatch.status());
             downloadBatch.persistAsync();
-            downloadService.download(downloadBatch, downloadBatchCallback(downloadBatchMap));
+
+            schedule(downloadBatch, downloadBatchCallback(downloadBatchMap));
+            return null;
+        };
+    }
+
+    private Wait.ThenPerform.Action<Void> executeDownloads(List<DownloadBatch> downloadBatches,
+                                                           Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
+        return () -> {
+            for (DownloadBatch downloadBatch : downloadBatches) {
+                updateStatusToQueuedIfNeeded(downloadBatch.status());
+            }
+            downloadsBatchPersistence.persistAsync(downloadBatches);
+
+            DownloadBatchStatusCallback callback = downloadBatchCallback(downloadBatchMap);
+            coalesceUpdates(() -> {
+                for (DownloadBatch downloadBatch : downloadBatches) {
+                    schedule(downloadBatch, callback);
+                }
+            });
             return null;
         };
     }
 
+    private void schedule(DownloadBatch downloadBatch, DownloadBatchStatusCallback callback) {
+        callback.onUpdate(downloadBatch.status());
+        downloadBatch.setCallback(callback);
+        batchDownloadExecutor.execute(downloadBatch.getId(), downloadBatch.status().priority(), batchDownloadOf(downloadBatch));
+    }
+
+    private BatchDownloadExecutor.BatchDownload batchDownloadOf(DownloadBatch downloadBatch) {
+        return new BatchDownloadExecutor.BatchDownload() {
+            @Override
+            public void run() {
+                DownloadService currentDownloadService = awaitDownloadService();
+                if (currentDownloadService != null) {
+                    currentDownloadService.download(downloadBatch);
+                }
+            }
+
+            @Override
+            public boolean preempt() {
+                return downloadBatch.preempt();
+            }
+
+            @Override
+            public boolean requeue() {
+                return downloadBatch.requeueAfterPreemption();
+            }
+        };
+    }
+
     private void updateStatusToQueuedIfNeeded(InternalDownloadBatchStatus downloadBatchStatus) {
         DownloadBatchStatus.Status status = downloadBatchStatus.status();
         if (status != PAUSED && status != DOWNLOADED && status != DELETING && status != DELETED) {
@@ -106,32 +195,108 @@ class LiteDownloadManagerDownloader {
         }
     }
 
+    /**
+     * Receives the live status of the batch, it is only copied once it passes the filter,
+     * so that the callbacks get a snapshot that the download thread does not change under them.
+     */
     private DownloadBatchStatusCallback downloadBatchCallback(Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
-        return downloadBatchStatus -> {
-            if (downloadBatchStatus == null || downloadBatchStatusFilter.shouldFilterOut(downloadBatchStatus)) {
+        return liveDownloadBatchStatus -> {
+            if (liveDownloadBatchStatus == null || downloadBatchStatusFilter.shouldFilterOut(liveDownloadBatchStatus)) {
                 return;
             }
 
+            DownloadBatchStatus downloadBatchStatus = ((InternalDownloadBatchStatus) liveDownloadBatchStatus).copy();
             DownloadBatchId downloadBatchId = downloadBatchStatus.getDownloadBatchId();
             if (downloadBatchStatus.status() == DELETED) {
                 Logger.v("batch " + downloadBatchId.rawId() + " is finally deleted, removing it from the map");
                 downloadBatchMap.remove(downloadBatchId);
             }
 
-            callbackHandler.post(() -> {
-                synchronized (waitForDownloadBatchStatusCallback) {
+            List<DownloadBatchStatus> coalescingUpdates = coalescedUpdates.get();
+            if (coalescingUpdates == null) {
+                deliver(Collections.singletonList(downloadBatchStatus));
+            } else {
+                coalescingUpdates.add(downloadBatchStatus);
+            }
+        };
+    }
+
+    /**
+     * Runs an operation on many batches, the updates it raises on the calling thread are delivered
+     * to the callbacks in a single post once it is done, rather than in a post per update.
+     */
+    void coalesceUpdates(Runnable operation) {
+        if (coalescedUpdates.get() != null) {
+            operation.run();
+            return;
+        }
+
+        List<DownloadBatchStatus> updates = new ArrayList<>();
+        coalescedUpdates.set(updates);
+        try {
+            operation.run();
+        } finally {
+            coalescedUpdates.remove();
+        }
+
+        if (!updates.isEmpty()) {
+            deliver(updates);
+        }
+    }
+
+    private void deliver(List<DownloadBatchStatus> downloadBatchStatuses) {
+        callbackHandler.post(() -> {
+            synchronized (waitForDownloadBatchStatusCallback) {
+                for (DownloadBatchStatus downloadBatchStatus : downloadBatchStatuses) {
                     for (DownloadBatchStatusCallback callback : callbacks) {
                         callback.onUpdate(downloadBatchStatus);
                     }
                     notificationDispatcher.updateNotification(downloadBatchStatus);
                 }
-            });
-        };
+            }
+        });
+    }
+
+    List<DownloadBatchId> downloadBatchQueue() {
+        return batchDownloadExecutor.queue();
     }
 
     void setDownloadService(DownloadService downloadService) {
         this.downloadService = downloadService;
         notificationDispatcher.setDownloadService(downloadService);
+        downloadService.doOnDestroy(() -> onDownloadServiceDestroyed(downloadService));
+    }
+
+    /**
+     * Batches are not handed to a destroyed service, the running ones are preempted and,
+     * as the waiting ones, only run again once another service is attached.
+     */
+    private void onDownloadServiceDestroyed(DownloadService destroyedDownloadService) {
+        synchronized (waitForDownloadService) {
+            if (downloadService != destroyedDownloadService) {
+                return;
+            }
+            downloadService = null;
+            serviceCriteria.update(null);
+        }
+        Logger.w("download service destroyed, the batches wait for it to be attached again");
+        batchDownloadExecutor.preemptRunningBatches();
+    }
+
+    @Nullable
+    private DownloadService awaitDownloadService() {
+        synchronized (waitForDownloadService) {
+            while (downloadService == null) {
+                try {
+                    waitForDownloadService.wait();
+                } catch (InterruptedException e) {
+                    Logger.e(e, "Interrupted waiting for the download service");
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return downloadService;
+        }
     }
 
     public boolean addCompletedBatch(CompletedDownloadBatch completedDownloadBatch, Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
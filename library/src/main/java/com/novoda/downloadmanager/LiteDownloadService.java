@@ -7,9 +7,10 @@ import android.os.Binder;
 import android.os.IBinder;
 import android.os.PowerManager;
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 public class LiteDownloadService extends Service implements DownloadService {
@@ -17,14 +18,13 @@ public class LiteDownloadService extends Service implements DownloadService {
     private static final long TEN_MINUTES_IN_MILLIS = TimeUnit.MINUTES.toMillis(10);
     private static final String WAKELOCK_TAG = "liteDownloadService:wakelocktag";
 
-    private ExecutorService executor;
+    private final List<Runnable> onDestroyActions = new CopyOnWriteArrayList<>();
+
     private IBinder binder;
-    private PowerManager.WakeLock wakeLock;
 
     @Override
     public void onCreate() {
         super.onCreate();
-        executor = Executors.newSingleThreadExecutor();
         binder = new DownloadServiceBinder();
     }
 
@@ -50,36 +50,46 @@ public class LiteDownloadService extends Service implements DownloadService {
         return binder;
     }
 
+    @WorkerThread
     @Override
-    public void download(DownloadBatch downloadBatch, DownloadBatchStatusCallback callback) {
-        callback.onUpdate(downloadBatch.status().copy());
-        downloadBatch.setCallback(callback);
-
-        executor.execute(() -> {
-            acquireCpuWakeLock();
+    public void download(DownloadBatch downloadBatch) {
+        PowerManager.WakeLock wakeLock = acquireCpuWakeLock();
+        try {
             downloadBatch.persist();
             downloadBatch.download();
-            releaseHeldCpuWakeLock();
-        });
+        } finally {
+            releaseHeldCpuWakeLock(wakeLock);
+        }
     }
 
-    private void acquireCpuWakeLock() {
+    @Nullable
+    private PowerManager.WakeLock acquireCpuWakeLock() {
         PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
-        if (powerManager != null) {
-            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKELOCK_TAG);
-            wakeLock.acquire(TEN_MINUTES_IN_MILLIS);
+        if (powerManager == null) {
+            return null;
         }
+        PowerManager.WakeLock wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKELOCK_TAG);
+        wakeLock.acquire(TEN_MINUTES_IN_MILLIS);
+        return wakeLock;
     }
 
-    private void releaseHeldCpuWakeLock() {
-        if (wakeLock.isHeld()) {
+    private void releaseHeldCpuWakeLock(@Nullable PowerManager.WakeLock wakeLock) {
+        if (wakeLock != null && wakeLock.isHeld()) {
             wakeLock.release();
         }
     }
 
+    @Override
+    public void doOnDestroy(Runnable action) {
+        onDestroyActions.add(action);
+    }
+
     @Override
     public void onDestroy() {
-        executor.shutdown();
+        for (Runnable action : onDestroyActions) {
+            action.run();
+        }
+        onDestroyActions.clear();
         super.onDestroy();
     }
 
@@ -8,19 +8,22 @@ class LiteDownloadsBatchPersisted implements DownloadsBatchPersisted {
     private final long downloadedDateTimeInMillis;
     private final boolean notificationSeen;
     private final String storageRoot;
+    private final int priority;
 
     LiteDownloadsBatchPersisted(DownloadBatchTitle downloadBatchTitle,
                                 DownloadBatchId downloadBatchId,
                                 DownloadBatchStatus.Status status,
                                 long downloadedDateTimeInMillis,
                                 boolean notificationSeen,
-                                String storageRoot) {
+                                String storageRoot,
+                                int priority) {
         this.downloadBatchTitle = downloadBatchTitle;
         this.downloadBatchId = downloadBatchId;
         this.status = status;
         this.downloadedDateTimeInMillis = downloadedDateTimeInMillis;
         this.notificationSeen = notificationSeen;
         this.storageRoot = storageRoot;
+        this.priority = priority;
     }
 
     @Override
@@ -52,4 +55,9 @@ class LiteDownloadsBatchPersisted implements DownloadsBatchPersisted {
     public String storageRoot() {
         return storageRoot;
     }
+
+    @Override
+    public int priority() {
+        return priority;
+    }
 }
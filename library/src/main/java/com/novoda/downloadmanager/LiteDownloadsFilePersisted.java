@@ -6,17 +6,20 @@ class LiteDownloadsFilePersisted implements DownloadsFilePersisted {
     private final DownloadFileId downloadFileId;
     private final FilePath filePath;
     private final long totalFileSize;
+    private final long downloadedBytes;
     private final String url;
 
     LiteDownloadsFilePersisted(DownloadBatchId downloadBatchId,
                                DownloadFileId downloadFileId,
                                FilePath filePath,
                                long totalFileSize,
+                               long downloadedBytes,
                                String url) {
         this.downloadBatchId = downloadBatchId;
         this.downloadFileId = downloadFileId;
         this.filePath = filePath;
         this.totalFileSize = totalFileSize;
+        this.downloadedBytes = downloadedBytes;
         this.url = url;
     }
 
@@ -35,6 +38,11 @@ class LiteDownloadsFilePersisted implements DownloadsFilePersisted {
         return totalFileSize;
     }
 
+    @Override
+    public long downloadedBytes() {
+        return downloadedBytes;
+    }
+
     @Override
     public String url() {
         return url;
@@ -0,0 +1,18 @@
+package com.novoda.downloadmanager;
+
+/**
+ * The levels a {@link LogHandle} can be attached at, from the most to the least verbose.
+ * Messages below the level are neither built nor passed to the handles.
+ */
+public enum LogLevel {
+
+    VERBOSE,
+
+    DEBUG,
+
+    INFO,
+
+    WARN,
+
+    ERROR
+}
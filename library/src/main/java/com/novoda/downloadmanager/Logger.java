@@ -1,19 +1,22 @@
 package com.novoda.downloadmanager;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * This class provides a mechanism for adding a variety
  * of {@link LogHandle} that when logging will log to all handles.
+ * Messages below the minimum {@link LogLevel}, or logged while no handle is attached, cost a single check,
+ * messages that are expensive to build can be supplied lazily through a {@link Message}.
  */
 @SuppressWarnings("PMD.ShortMethodName")
 final class Logger {
 
-    private static final int DOT_CLASS = 5;
-    private static final int STACK_DEPTH = 4;
-    private static final List<LogHandle> HANDLES = new ArrayList<>();
+    private static final String LOGGER_CLASS_NAME = Logger.class.getName();
+    private static final List<LogHandle> HANDLES = new CopyOnWriteArrayList<>();
+
+    private static volatile LogLevel minimumLevel = LogLevel.VERBOSE;
+    private static volatile boolean callSitesCaptured = true;
 
     private Logger() {
         // Uses static methods.
@@ -44,15 +47,42 @@ final class Logger {
         HANDLES.clear();
     }
 
+    static void setMinimumLevel(LogLevel level) {
+        minimumLevel = level;
+    }
+
+    /**
+     * The call site is prefixed to every message by walking the stack, which is the most expensive part of logging.
+     */
+    static void captureCallSites(boolean captured) {
+        callSitesCaptured = captured;
+    }
+
+    static boolean isEnabled(LogLevel level) {
+        return level.compareTo(minimumLevel) >= 0 && !HANDLES.isEmpty();
+    }
+
     /**
      * Calls each internally stored {@link LogHandle#v(Object...)}
      *
      * @param message to pass to each {@link LogHandle}
      */
     public static void v(Object... message) {
-        for (int i = 0; i < HANDLES.size(); i++) {
-            LogHandle handle = HANDLES.get(i);
-            handle.v(getDetailedLog(message));
+        if (!isEnabled(LogLevel.VERBOSE)) {
+            return;
+        }
+        Object[] detailedLog = getDetailedLog(message);
+        for (LogHandle handle : HANDLES) {
+            handle.v(detailedLog);
+        }
+    }
+
+    /**
+     * Builds the message only when verbose messages are logged.
+     */
+    public static void v(Message message) {
+        if (isEnabled(LogLevel.VERBOSE)) {
+            v(message.build());
         }
     }
 
@@ -62,9 +92,12 @@ final class Logger {
      * @param message to pass to each {@link LogHandle}
      */
     public static void i(Object... message) {
-        for (int i = 0; i < HANDLES.size(); i++) {
-            LogHandle handle = HANDLES.get(i);
-            handle.i(getDetailedLog(message));
+        if (!isEnabled(LogLevel.INFO)) {
+            return;
+        }
+        Object[] detailedLog = getDetailedLog(message);
+        for (LogHandle handle : HANDLES) {
+            handle.i(detailedLog);
         }
     }
 
@@ -74,9 +107,21 @@ final class Logger {
      * @param message to pass to each {@link LogHandle}
      */
     public static void d(Object... message) {
-        for (int i = 0; i < HANDLES.size(); i++) {
-            LogHandle handle = HANDLES.get(i);
-            handle.d(getDetailedLog(message));
+        if (!isEnabled(LogLevel.DEBUG)) {
+            return;
+        }
+        Object[] detailedLog = getDetailedLog(message);
+        for (LogHandle handle : HANDLES) {
+            handle.d(detailedLog);
+        }
+    }
+
+    /**
+     * Builds the message only when debug messages are logged.
+     */
+    public static void d(Message message) {
+        if (isEnabled(LogLevel.DEBUG)) {
+            d(message.build());
         }
     }
 
@@ -87,9 +132,12 @@ final class Logger {
      * @param message   to pass to each {@link LogHandle}
      */
     public static void d(Throwable throwable, Object... message) {
-        for (int i = 0; i < HANDLES.size(); i++) {
-            LogHandle handle = HANDLES.get(i);
-            handle.d(throwable, getDetailedLog(message));
+        if (!isEnabled(LogLevel.DEBUG)) {
+            return;
+        }
+        Object[] detailedLog = getDetailedLog(message);
+        for (LogHandle handle : HANDLES) {
+            handle.d(throwable, detailedLog);
         }
     }
 
@@ -99,9 +147,12 @@ final class Logger {
      * @param message to pass to each {@link LogHandle}
      */
     public static void w(Object... message) {
-        for (int i = 0; i < HANDLES.size(); i++) {
-            LogHandle handle = HANDLES.get(i);
-            handle.w(getDetailedLog(message));
+        if (!isEnabled(LogLevel.WARN)) {
+            return;
+        }
+        Object[] detailedLog = getDetailedLog(message);
+        for (LogHandle handle : HANDLES) {
+            handle.w(detailedLog);
         }
     }
 
@@ -112,9 +163,12 @@ final class Logger {
      * @param message   to pass to each {@link LogHandle}
      */
     public static void w(Throwable throwable, Object... message) {
-        for (int i = 0; i < HANDLES.size(); i++) {
-            LogHandle handle = HANDLES.get(i);
-            handle.w(throwable, getDetailedLog(message));
+        if (!isEnabled(LogLevel.WARN)) {
+            return;
+        }
+        Object[] detailedLog = getDetailedLog(message);
+        for (LogHandle handle : HANDLES) {
+            handle.w(throwable, detailedLog);
         }
     }
 
@@ -124,9 +178,12 @@ final class Logger {
      * @param message to pass to each {@link LogHandle}
      */
     public static void e(Object... message) {
-        for (int i = 0; i < HANDLES.size(); i++) {
-            LogHandle handle = HANDLES.get(i);
-            handle.e(getDetailedLog(message));
+        if (!isEnabled(LogLevel.ERROR)) {
+            return;
+        }
+        Object[] detailedLog = getDetailedLog(message);
+        for (LogHandle handle : HANDLES) {
+            handle.e(detailedLog);
         }
     }
 
@@ -137,27 +194,59 @@ final class Logger {
      * @param message   to pass to each {@link LogHandle}
      */
     public static void e(Throwable throwable, Object... message) {
-        for (int i = 0; i < HANDLES.size(); i++) {
-            LogHandle handle = HANDLES.get(i);
-            handle.e(throwable, getDetailedLog(message));
+        if (!isEnabled(LogLevel.ERROR)) {
+            return;
+        }
+        Object[] detailedLog = getDetailedLog(message);
+        for (LogHandle handle : HANDLES) {
+            handle.e(throwable, detailedLog);
         }
     }
 
     private static Object[] getDetailedLog(Object... message) {
         Thread currentThread = Thread.currentThread();
-        final StackTraceElement trace = currentThread.getStackTrace()[STACK_DEPTH];
-        final String filename = trace.getFileName();
-        final String linkableSourcePosition = String.format(
-                Locale.UK,
-                "(%s.java:%d)",
-                filename.substring(0, filename.length() - DOT_CLASS),
-                trace.getLineNumber()
-        );
-        final String logPrefix = String.format("[%s][%s.%s] ", currentThread.getName(), linkableSourcePosition, trace.getMethodName());
+        StringBuilder logPrefix = new StringBuilder()
+                .append('[')
+                .append(currentThread.getName())
+                .append(']');
+        if (callSitesCaptured) {
+            appendCallSite(logPrefix, currentThread.getStackTrace());
+        }
+        logPrefix.append(' ');
+
         Object[] detailedMessage = new Object[message.length + 1];
-        detailedMessage[0] = logPrefix;
+        detailedMessage[0] = logPrefix.toString();
         System.arraycopy(message, 0, detailedMessage, 1, message.length);
         return detailedMessage;
     }
 
+    /**
+     * The call site is the first frame after the ones of the logger, whichever method of the logger was called.
+     */
+    private static void appendCallSite(StringBuilder logPrefix, StackTraceElement[] stackTrace) {
+        boolean inLogger = false;
+        for (StackTraceElement trace : stackTrace) {
+            boolean isLogger = LOGGER_CLASS_NAME.equals(trace.getClassName());
+            if (inLogger && !isLogger) {
+                String filename = trace.getFileName();
+                logPrefix.append("[(")
+                        .append(filename == null ? trace.getClassName() : filename)
+                        .append(':')
+                        .append(trace.getLineNumber())
+                        .append(").")
+                        .append(trace.getMethodName())
+                        .append(']');
+                return;
+            }
+            inLogger |= isLogger;
+        }
+    }
+
+    /**
+     * A message that is only built when its level is logged.
+     */
+    interface Message {
+
+        String build();
+    }
 }
@@ -0,0 +1,27 @@
+package com.novoda.downloadmanager;
+
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import android.system.ErrnoException;
+import android.system.Os;
+
+/**
+ * Kept apart from {@link SharedFileDownloads}, so that older devices never load the classes it depends on.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+final class LollipopHardLinks {
+
+    private LollipopHardLinks() {
+        // non-instantiable class
+    }
+
+    static boolean link(FilePath completedFilePath, FilePath filePath) {
+        try {
+            Os.link(completedFilePath.path(), filePath.path());
+            return true;
+        } catch (ErrnoException e) {
+            Logger.w("Cannot link " + filePath.path() + " to " + completedFilePath.path() + ", errno " + e.errno);
+            return false;
+        }
+    }
+}
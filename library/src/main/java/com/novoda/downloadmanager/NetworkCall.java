@@ -0,0 +1,14 @@
+package com.novoda.downloadmanager;
+
+import java.io.IOException;
+
+/**
+ * A single http request that can be aborted from another thread, whether it is still
+ * waiting for the response or its body is being read.
+ */
+interface NetworkCall {
+
+    NetworkResponse execute() throws IOException;
+
+    void cancel();
+}
@@ -3,35 +3,52 @@ package com.novoda.downloadmanager;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 class NetworkFileDownloader implements FileDownloader {
 
     private static final int BUFFER_SIZE = 8 * 512;
+    private static final int BYTE_BUFFER_SIZE = 64 * 1024;
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String CONTENT_RANGE_TOTAL_SEPARATOR = "/";
+    private static final long UNKNOWN_TOTAL_SIZE = -1;
 
     private final HttpClient httpClient;
     private final NetworkRequestCreator requestCreator;
+    private final ByteBufferPool bufferPool;
+    private final InFlightCalls inFlightCalls = new InFlightCalls();
 
-    private boolean canDownload;
+    private volatile boolean canDownload;
 
-    NetworkFileDownloader(HttpClient httpClient, NetworkRequestCreator requestCreator) {
+    NetworkFileDownloader(HttpClient httpClient, NetworkRequestCreator requestCreator, ByteBufferPool bufferPool) {
         this.httpClient = httpClient;
         this.requestCreator = requestCreator;
+        this.bufferPool = bufferPool;
     }
 
     @Override
     public void startDownloading(String url, FileSize fileSize, Callback callback) {
         canDownload = true;
+        inFlightCalls.open();
 
         NetworkRequest request = createRequestFrom(url, fileSize);
+        NetworkCall call = inFlightCalls.newCall(httpClient, request);
         NetworkResponse response = null;
         try {
-            response = httpClient.execute(request);
+            response = call.execute();
             int responseCode = response.code();
-            processResponse(callback, response, responseCode, url);
+            processResponse(callback, response, responseCode, url, fileSize);
         } catch (IOException e) {
-            Logger.e(e, "Exception with http request");
-            callback.onError(e.getMessage());
+            if (canDownload) {
+                Logger.e(e, "Exception with http request");
+                callback.onError(e.getMessage());
+            } else if (Logger.isEnabled(LogLevel.VERBOSE)) {
+                Logger.v("download of " + url + " stopped");
+            }
         } finally {
+            inFlightCalls.remove(call);
             try {
                 if (response != null) {
                     response.closeByteStream();
@@ -44,18 +61,25 @@ class NetworkFileDownloader implements FileDownloader {
         callback.onDownloadFinished();
     }
 
-    private void processResponse(Callback callback, NetworkResponse response, int responseCode, String url) throws IOException {
+    private void processResponse(Callback callback,
+                                 NetworkResponse response,
+                                 int responseCode,
+                                 String url,
+                                 FileSize fileSize) throws IOException {
         if (isValid(responseCode)) {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            int readLast = 0;
-            try (InputStream in = response.openByteStream()) {
-                while (canDownload && readLast != -1) {
-                    readLast = in.read(buffer);
-
-                    if (readLast != 0 && readLast != -1) {
-                        callback.onBytesRead(buffer, readLast);
-                    }
+            if (fileSize.isTotalSizeUnknown()) {
+                long totalSize = totalSizeFrom(response, responseCode);
+                if (totalSize == UNKNOWN_TOTAL_SIZE) {
+                    Logger.w("Response for " + url + " does not tell the total size, the download cannot start");
+                    return;
                 }
+                callback.onTotalSizeResolved(totalSize);
+            }
+
+            if (callback instanceof ByteBufferFileDownloaderCallback && ((ByteBufferFileDownloaderCallback) callback).acceptsByteBuffers()) {
+                readInto((ByteBufferFileDownloaderCallback) callback, response);
+            } else {
+                readInto(callback, response);
             }
         } else {
             Logger.e("Network response code is not ok, responseCode: " + responseCode);
@@ -68,12 +92,77 @@ class NetworkFileDownloader implements FileDownloader {
         }
     }
 
+    private void readInto(Callback callback, NetworkResponse response) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int readLast = 0;
+        try (InputStream in = response.openByteStream()) {
+            while (canDownload && readLast != -1) {
+                readLast = in.read(buffer);
+
+                if (readLast != 0 && readLast != -1) {
+                    callback.onBytesRead(buffer, readLast);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills a large direct buffer before handing it over, so that the file is written in
+     * large chunks without the bytes being copied into an intermediate array.
+     */
+    private void readInto(ByteBufferFileDownloaderCallback callback, NetworkResponse response) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire(BYTE_BUFFER_SIZE);
+        int readLast = 0;
+        try (ReadableByteChannel source = openByteChannel(response)) {
+            while (canDownload && readLast != -1) {
+                readLast = source.read(buffer);
+
+                boolean bufferReady = !buffer.hasRemaining() || readLast == -1;
+                if (bufferReady && buffer.position() > 0) {
+                    buffer.flip();
+                    callback.onBytesRead(buffer);
+                    buffer.clear();
+                }
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    static ReadableByteChannel openByteChannel(NetworkResponse response) throws IOException {
+        if (response instanceof ByteChannelNetworkResponse) {
+            return ((ByteChannelNetworkResponse) response).openByteChannel();
+        }
+        return Channels.newChannel(response.openByteStream());
+    }
+
+    /**
+     * A partial response tells the total size in its Content-Range, its length being the remaining bytes only.
+     */
+    private long totalSizeFrom(NetworkResponse response, int responseCode) {
+        if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+            String contentRange = response.header(HEADER_CONTENT_RANGE, "");
+            int separatorIndex = contentRange.lastIndexOf(CONTENT_RANGE_TOTAL_SEPARATOR);
+            try {
+                return separatorIndex == -1 ? UNKNOWN_TOTAL_SIZE : Long.parseLong(contentRange.substring(separatorIndex + 1).trim());
+            } catch (NumberFormatException e) {
+                Logger.w("Cannot parse total size from Content-Range: " + contentRange);
+                return UNKNOWN_TOTAL_SIZE;
+            }
+        }
+
+        long contentLength = response.bodyContentLength();
+        return contentLength > 0 ? contentLength : UNKNOWN_TOTAL_SIZE;
+    }
+
     private boolean isValid(int responseCode) {
         return responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL;
     }
 
     private NetworkRequest createRequestFrom(String url, FileSize fileSize) {
-        if (fileSize.areBytesDownloadedKnown()) {
+        if (fileSize.areBytesDownloadedKnown() && fileSize.isTotalSizeUnknown()) {
+            return requestCreator.createDownloadRequestFrom(url, fileSize.currentSize());
+        } else if (fileSize.areBytesDownloadedKnown()) {
             return requestCreator.createDownloadRequestWithDownloadedBytesHeader(url, fileSize.currentSize(), fileSize.totalSize());
         } else {
             return requestCreator.createDownloadRequest(url);
@@ -83,5 +172,11 @@ class NetworkFileDownloader implements FileDownloader {
     @Override
     public void stopDownloading() {
         canDownload = false;
+        inFlightCalls.cancelAll();
+    }
+
+    @Override
+    public boolean resolvesTotalSize() {
+        return true;
     }
 }
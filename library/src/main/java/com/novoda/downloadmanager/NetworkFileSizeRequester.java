@@ -2,7 +2,7 @@ package com.novoda.downloadmanager;
 
 import java.io.IOException;
 
-class NetworkFileSizeRequester implements FileSizeRequester {
+class NetworkFileSizeRequester implements CancellableFileSizeRequester {
 
     private static final String HEADER_CONTENT_LENGTH = "Content-Length";
     private static final int UNKNOWN_CONTENT_LENGTH = -1;
@@ -18,8 +18,13 @@ class NetworkFileSizeRequester implements FileSizeRequester {
 
     @Override
     public FileSize requestFileSize(String url) {
+        return requestFileSize(url, new InFlightCalls());
+    }
+
+    @Override
+    public FileSize requestFileSize(String url, InFlightCalls inFlightCalls) {
         try {
-            long fileSize = executeRequestFileSize(url);
+            long fileSize = executeRequestFileSize(url, inFlightCalls);
             if (fileSize == UNKNOWN_CONTENT_LENGTH || fileSize == ZERO_FILE_SIZE) {
                 return FileSizeCreator.unknownFileSize();
             } else {
@@ -32,11 +37,11 @@ class NetworkFileSizeRequester implements FileSizeRequester {
         return FileSizeCreator.unknownFileSize();
     }
 
-    private long executeRequestFileSize(String url) throws IOException {
-        long fileSize = requestFileSizeThroughHeaderRequest(url);
+    private long executeRequestFileSize(String url, InFlightCalls inFlightCalls) throws IOException {
+        long fileSize = requestFileSizeThroughHeaderRequest(url, inFlightCalls);
         if (fileSize == UNKNOWN_CONTENT_LENGTH || fileSize == ZERO_FILE_SIZE) {
             Logger.w(String.format("file size header request '%s' returned %s, we'll try with a body request", url, fileSize));
-            fileSize = requestFileSizeThroughBodyRequest(url);
+            fileSize = requestFileSizeThroughBodyRequest(url, inFlightCalls);
             if (fileSize == UNKNOWN_CONTENT_LENGTH || fileSize == ZERO_FILE_SIZE) {
                 Logger.w(String.format("file size body request '%s' returned %s", url, fileSize));
             }
@@ -45,26 +50,35 @@ class NetworkFileSizeRequester implements FileSizeRequester {
         return fileSize;
     }
 
-    private long requestFileSizeThroughHeaderRequest(String url) throws IOException {
+    private long requestFileSizeThroughHeaderRequest(String url, InFlightCalls inFlightCalls) throws IOException {
         NetworkRequest fileSizeRequest = requestCreator.createFileSizeHeadRequest(url);
-        NetworkResponse response = httpClient.execute(fileSizeRequest);
-        long fileSize = ZERO_FILE_SIZE;
-        if (response.isSuccessful()) {
-            fileSize = Long.parseLong(response.header(HEADER_CONTENT_LENGTH, String.valueOf(UNKNOWN_CONTENT_LENGTH)));
-            response.closeByteStream();
+        NetworkCall call = inFlightCalls.newCall(httpClient, fileSizeRequest);
+        try {
+            NetworkResponse response = call.execute();
+            long fileSize = ZERO_FILE_SIZE;
+            if (response.isSuccessful()) {
+                fileSize = Long.parseLong(response.header(HEADER_CONTENT_LENGTH, String.valueOf(UNKNOWN_CONTENT_LENGTH)));
+                response.closeByteStream();
+            }
+            return fileSize;
+        } finally {
+            inFlightCalls.remove(call);
         }
-        return fileSize;
     }
 
-    private long requestFileSizeThroughBodyRequest(String url) throws IOException {
+    private long requestFileSizeThroughBodyRequest(String url, InFlightCalls inFlightCalls) throws IOException {
         NetworkRequest downloadRequest = requestCreator.createFileSizeBodyRequest(url);
-        NetworkResponse response = httpClient.execute(downloadRequest);
-        long fileSize = ZERO_FILE_SIZE;
-        if (response.isSuccessful()) {
-            fileSize = response.bodyContentLength();
-            response.closeByteStream();
+        NetworkCall call = inFlightCalls.newCall(httpClient, downloadRequest);
+        try {
+            NetworkResponse response = call.execute();
+            long fileSize = ZERO_FILE_SIZE;
+            if (response.isSuccessful()) {
+                fileSize = response.bodyContentLength();
+                response.closeByteStream();
+            }
+            return fileSize;
+        } finally {
+            inFlightCalls.remove(call);
         }
-
-        return fileSize;
     }
 }
@@ -6,6 +6,7 @@ import java.util.Map;
 class NetworkRequestCreator {
 
     private static final String DOWNLOADED_BYTES_VALUE_FORMAT = "bytes=%s-%s";
+    private static final String REMAINING_BYTES_VALUE_FORMAT = "bytes=%s-";
     private static final Map<String, String> DISABLE_COMPRESSION_HEADERS = new HashMap<>(1);
 
     static {
@@ -25,8 +26,20 @@ class NetworkRequestCreator {
     }
 
     NetworkRequest createDownloadRequestWithDownloadedBytesHeader(String url, long currentSize, long totalSize) {
+        return createDownloadRequestWithRange(url, currentSize, totalSize - 1);
+    }
+
+    NetworkRequest createDownloadRequestWithRange(String url, long firstByte, long lastByte) {
+        Map<String, String> headers = new HashMap<>();
+        String headerValue = String.format(DOWNLOADED_BYTES_VALUE_FORMAT, firstByte, lastByte);
+        headers.put("Range", headerValue);
+
+        return new LiteNetworkRequest(headers, url, NetworkRequest.Method.GET);
+    }
+
+    NetworkRequest createDownloadRequestFrom(String url, long firstByte) {
         Map<String, String> headers = new HashMap<>();
-        String headerValue = String.format(DOWNLOADED_BYTES_VALUE_FORMAT, currentSize, totalSize - 1);
+        String headerValue = String.format(REMAINING_BYTES_VALUE_FORMAT, firstByte);
         headers.put("Range", headerValue);
 
         return new LiteNetworkRequest(headers, url, NetworkRequest.Method.GET);
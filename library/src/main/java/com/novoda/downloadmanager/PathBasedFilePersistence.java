@@ -7,8 +7,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
-class PathBasedFilePersistence implements FilePersistence {
+class PathBasedFilePersistence implements ByteBufferFilePersistence {
 
     private static final boolean APPEND = true;
 
@@ -80,6 +82,25 @@ class PathBasedFilePersistence implements FilePersistence {
         }
     }
 
+    @Override
+    public boolean write(ByteBuffer buffer) {
+        if (fileOutputStream == null) {
+            Logger.e("Cannot write, you must create the file first");
+            return false;
+        }
+
+        try {
+            FileChannel fileChannel = fileOutputStream.getChannel();
+            while (buffer.hasRemaining()) {
+                fileChannel.write(buffer);
+            }
+            return true;
+        } catch (IOException e) {
+            Logger.e(e, "Exception while writing to internal physical storage");
+            return false;
+        }
+    }
+
     @Override
     public void delete(FilePath absoluteFilePath) {
         if (absoluteFilePath == null || absoluteFilePath.isUnknown()) {
@@ -98,6 +119,11 @@ class PathBasedFilePersistence implements FilePersistence {
         Logger.d(getClass().getSimpleName(), message);
     }
 
+    @Override
+    public boolean writesBytesAtFilePath() {
+        return true;
+    }
+
     @Override
     public long getCurrentSize(FilePath filePath) {
         File file = new File(filePath.path());
@@ -0,0 +1,140 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes the status, notification seen and progress checkpoint updates of the batches behind, keeping
+ * only the latest update of each batch and file and writing all of them in a single transaction per tick.
+ * A batch that stops downloading has its updates written straight away, so that they are not lost
+ * if the process dies before the next tick.
+ */
+class PendingBatchUpdates {
+
+    private final Executor executor;
+    private final DownloadsPersistence downloadsPersistence;
+    private final ActionScheduler scheduler;
+    private final Map<DownloadBatchId, PendingUpdate> pendingUpdates = new LinkedHashMap<>();
+    private final ActionScheduler.Action flushOnTick = this::flushAsync;
+
+    PendingBatchUpdates(Executor executor, DownloadsPersistence downloadsPersistence, ActionScheduler scheduler) {
+        this.executor = executor;
+        this.downloadsPersistence = downloadsPersistence;
+        this.scheduler = scheduler;
+    }
+
+    synchronized void updateStatus(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        pendingUpdateOf(downloadBatchId).status = status;
+        if (stopsDownloading(status)) {
+            flushAsync();
+        } else {
+            scheduler.schedule(flushOnTick);
+        }
+    }
+
+    synchronized void updateNotificationSeen(DownloadBatchId downloadBatchId, boolean notificationSeen) {
+        pendingUpdateOf(downloadBatchId).notificationSeen = notificationSeen;
+        scheduler.schedule(flushOnTick);
+    }
+
+    synchronized void updateDownloadedBytes(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId, long downloadedBytes) {
+        pendingUpdateOf(downloadBatchId).downloadedBytes.put(downloadFileId, downloadedBytes);
+        scheduler.schedule(flushOnTick);
+    }
+
+    /**
+     * Drops the updates of a batch that is being deleted, they would only fail to find its row.
+     */
+    synchronized void discard(DownloadBatchId downloadBatchId) {
+        pendingUpdates.remove(downloadBatchId);
+    }
+
+    void flushAsync() {
+        executor.execute(this::flush);
+    }
+
+    @WorkerThread
+    void flush() {
+        Map<DownloadBatchId, PendingUpdate> updatesToWrite;
+        synchronized (this) {
+            if (pendingUpdates.isEmpty()) {
+                scheduler.cancel(flushOnTick);
+                return;
+            }
+            updatesToWrite = new LinkedHashMap<>(pendingUpdates);
+            pendingUpdates.clear();
+        }
+
+        downloadsPersistence.startTransaction();
+        try {
+            for (Map.Entry<DownloadBatchId, PendingUpdate> entry : updatesToWrite.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            downloadsPersistence.transactionSuccess();
+        } finally {
+            downloadsPersistence.endTransaction();
+        }
+        if (Logger.isEnabled(LogLevel.VERBOSE)) {
+            Logger.v("flushed the pending updates of " + updatesToWrite.size() + " batches");
+        }
+    }
+
+    private void write(DownloadBatchId downloadBatchId, PendingUpdate pendingUpdate) {
+        DownloadBatchStatus.Status status = pendingUpdate.status;
+        if (status != null && !downloadsPersistence.update(downloadBatchId, status)) {
+            Logger.e("could not update batch status " + status + " failed for " + downloadBatchId.rawId());
+        }
+
+        Boolean notificationSeen = pendingUpdate.notificationSeen;
+        if (notificationSeen != null && !downloadsPersistence.update(downloadBatchId, notificationSeen)) {
+            Logger.e("could not update notification seen to " + notificationSeen + " for batch id " + downloadBatchId.rawId());
+        }
+
+        for (Map.Entry<DownloadFileId, Long> fileDownloadedBytes : pendingUpdate.downloadedBytes.entrySet()) {
+            DownloadFileId downloadFileId = fileDownloadedBytes.getKey();
+            if (!downloadsPersistence.update(downloadBatchId, downloadFileId, fileDownloadedBytes.getValue())) {
+                // Not every persistence stores checkpoints, the progress of the file is then read from disk when it is loaded.
+                if (Logger.isEnabled(LogLevel.VERBOSE)) {
+                    Logger.v("file " + downloadFileId.rawId() + " of batch id " + downloadBatchId.rawId() + " was not checkpointed");
+                }
+            }
+        }
+    }
+
+    private PendingUpdate pendingUpdateOf(DownloadBatchId downloadBatchId) {
+        PendingUpdate pendingUpdate = pendingUpdates.get(downloadBatchId);
+        if (pendingUpdate == null) {
+            pendingUpdate = new PendingUpdate();
+            pendingUpdates.put(downloadBatchId, pendingUpdate);
+        }
+        return pendingUpdate;
+    }
+
+    private static boolean stopsDownloading(DownloadBatchStatus.Status status) {
+        switch (status) {
+            case PAUSED:
+            case ERROR:
+            case DOWNLOADED:
+            case WAITING_FOR_NETWORK:
+            case DELETED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static class PendingUpdate {
+
+        private final Map<DownloadFileId, Long> downloadedBytes = new HashMap<>();
+
+        @Nullable
+        private DownloadBatchStatus.Status status;
+        @Nullable
+        private Boolean notificationSeen;
+    }
+}
@@ -23,9 +23,11 @@ class PercentageBasedRemainingStorageRequirementRule implements StorageRequireme
         long usableStorageInBytes = storageDirectory.getUsableSpace();
         long remainingStorageAfterDownloadInBytes = usableStorageInBytes - downloadFileSize.remainingSize();
 
-        Logger.v("Storage capacity in bytes: ", storageCapacityInBytes);
-        Logger.v("Usable storage in bytes: ", usableStorageInBytes);
-        Logger.v("Minimum required storage in bytes: ", minimumStorageRequiredInBytes);
+        if (Logger.isEnabled(LogLevel.VERBOSE)) {
+            Logger.v("Storage capacity in bytes: ", storageCapacityInBytes);
+            Logger.v("Usable storage in bytes: ", usableStorageInBytes);
+            Logger.v("Minimum required storage in bytes: ", minimumStorageRequiredInBytes);
+        }
         return remainingStorageAfterDownloadInBytes < minimumStorageRequiredInBytes;
     }
 
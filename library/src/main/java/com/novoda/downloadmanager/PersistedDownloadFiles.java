@@ -0,0 +1,78 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The files of a batch as they were persisted, e.g. the files of a completed batch.
+ * They are only turned into {@link DownloadFile}s, with their downloaders and persistence,
+ * once the batch needs to act on them.
+ */
+class PersistedDownloadFiles {
+
+    private final DownloadBatchId downloadBatchId;
+    private final List<DownloadsFilePersisted> filePersistedList;
+    private final FileOperations fileOperations;
+    private final DownloadsFilePersistence downloadsFilePersistence;
+
+    PersistedDownloadFiles(DownloadBatchId downloadBatchId,
+                           List<DownloadsFilePersisted> filePersistedList,
+                           FileOperations fileOperations,
+                           DownloadsFilePersistence downloadsFilePersistence) {
+        this.downloadBatchId = downloadBatchId;
+        this.filePersistedList = filePersistedList;
+        this.fileOperations = fileOperations;
+        this.downloadsFilePersistence = downloadsFilePersistence;
+    }
+
+    List<DownloadFile> hydrate(DownloadBatchStatus.Status batchStatus) {
+        Logger.v(() -> "hydrate " + filePersistedList.size() + " files of batch " + downloadBatchId.rawId() + " with status " + batchStatus);
+        List<DownloadFile> downloadFiles = downloadsFilePersistence.loadSync(
+                downloadBatchId,
+                batchStatus,
+                filePersistedList,
+                fileOperations,
+                downloadsFilePersistence
+        );
+        return Collections.unmodifiableList(downloadFiles);
+    }
+
+    /**
+     * Removes the files from the storage, as {@link DownloadFile#delete()} does for a file that is not downloading.
+     */
+    void delete() {
+        Logger.v(() -> "delete " + filePersistedList.size() + " persisted files of batch " + downloadBatchId.rawId());
+        SharedFileDownloads sharedFileDownloads = fileOperations.sharedFileDownloads();
+        for (DownloadsFilePersisted filePersisted : filePersistedList) {
+            FilePersistence filePersistence = fileOperations.filePersistenceCreator().create();
+            SegmentedFileDownloader segmentedFileDownloader = fileOperations.fileDownloaderCreator().createSegmented();
+            FilePath filePath = filePersisted.filePath();
+            segmentedFileDownloader.delete(filePath);
+            sharedFileDownloads.delete(filePersisted.url(), filePath, () -> filePersistence.delete(filePath));
+        }
+    }
+
+    @Nullable
+    DownloadFileStatus fileStatusWith(DownloadFileId downloadFileId, DownloadBatchStatus.Status batchStatus) {
+        for (DownloadsFilePersisted filePersisted : filePersistedList) {
+            if (filePersisted.downloadFileId().rawId().equals(downloadFileId.rawId())) {
+                FileSize fileSize = InternalFileSizeCreator.createFromCurrentAndTotalSize(
+                        completedSizeOf(filePersisted),
+                        filePersisted.totalFileSize()
+                );
+                return downloadsFilePersistence.fileStatusOf(filePersisted, fileSize, batchStatus);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Files are only kept as persisted for completed batches, a file without a checkpoint holds all of its bytes.
+     */
+    static long completedSizeOf(DownloadsFilePersisted filePersisted) {
+        long downloadedBytes = filePersisted.downloadedBytes();
+        return downloadedBytes < 0 ? filePersisted.totalFileSize() : downloadedBytes;
+    }
+}
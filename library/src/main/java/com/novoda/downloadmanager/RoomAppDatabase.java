@@ -8,13 +8,15 @@ import android.arch.persistence.room.migration.Migration;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
-@Database(entities = {RoomBatch.class, RoomFile.class}, version = 4)
+@Database(entities = {RoomBatch.class, RoomFile.class}, version = 6)
 abstract class RoomAppDatabase extends RoomDatabase {
 
     private static final int VERSION_ONE = 1;
     private static final int VERSION_TWO = 2;
     private static final int VERSION_THREE = 3;
     private static final int VERSION_FOUR = 4;
+    private static final int VERSION_FIVE = 5;
+    private static final int VERSION_SIX = 6;
 
     private static volatile RoomAppDatabase singleInstance;
 
@@ -44,6 +46,8 @@ abstract class RoomAppDatabase extends RoomDatabase {
                 .addMigrations(new VersionOneToVersionTwoMigration())
                 .addMigrations(new VersionTwoToVersionThreeMigration(storageRoot))
                 .addMigrations(new VersionThreeToVersionFourMigration())
+                .addMigrations(new VersionFourToVersionFiveMigration())
+                .addMigrations(new VersionFiveToVersionSixMigration())
                 .build();
     }
 
@@ -104,4 +108,33 @@ abstract class RoomAppDatabase extends RoomDatabase {
         }
     }
 
+    static final class VersionFourToVersionFiveMigration extends Migration {
+
+        private static final long UNKNOWN_DOWNLOADED_BYTES = -1;
+
+        VersionFourToVersionFiveMigration() {
+            super(VERSION_FOUR, VERSION_FIVE);
+        }
+
+        /**
+         * The files downloaded so far have no checkpoint yet, they are read once more the next time they are loaded.
+         */
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN 'downloaded_bytes' INTEGER NOT NULL DEFAULT " + UNKNOWN_DOWNLOADED_BYTES);
+        }
+    }
+
+    static final class VersionFiveToVersionSixMigration extends Migration {
+
+        VersionFiveToVersionSixMigration() {
+            super(VERSION_FIVE, VERSION_SIX);
+        }
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE RoomBatch ADD COLUMN 'priority' INTEGER NOT NULL DEFAULT " + Batch.DEFAULT_PRIORITY);
+        }
+    }
+
 }
@@ -29,4 +29,7 @@ class RoomBatch {
 
     @ColumnInfo(name = "storage_root")
     public String storageRoot;
+
+    @ColumnInfo(name = "priority")
+    public int priority;
 }
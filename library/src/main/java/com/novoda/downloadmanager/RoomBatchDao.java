@@ -1,7 +1,6 @@
 package com.novoda.downloadmanager;
 
 import android.arch.persistence.room.Dao;
-import android.arch.persistence.room.Delete;
 import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
@@ -24,9 +23,24 @@ interface RoomBatchDao {
     @Query("SELECT * FROM RoomBatch WHERE RoomBatch.batch_id = :batchId")
     RoomBatch load(String batchId);
 
-    @Delete
-    void delete(RoomBatch... roomBatches);
-
     @Update(onConflict = OnConflictStrategy.REPLACE)
     void update(RoomBatch... roomBatches);
+
+    /**
+     * @return the number of batches updated, 0 when there is no batch with the given id.
+     */
+    @Query("UPDATE RoomBatch SET batch_status = :status WHERE batch_id = :batchId")
+    int updateStatus(String batchId, String status);
+
+    /**
+     * @return the number of batches updated, 0 when there is no batch with the given id.
+     */
+    @Query("UPDATE RoomBatch SET notification_seen = :notificationSeen WHERE batch_id = :batchId")
+    int updateNotificationSeen(String batchId, boolean notificationSeen);
+
+    /**
+     * @return the number of batches deleted, 0 when there is no batch with the given id.
+     */
+    @Query("DELETE FROM RoomBatch WHERE batch_id = :batchId")
+    int delete(String batchId);
 }
@@ -44,6 +44,7 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
         roomBatch.downloadedDateTimeInMillis = batchPersisted.downloadedDateTimeInMillis();
         roomBatch.notificationSeen = batchPersisted.notificationSeen();
         roomBatch.storageRoot = batchPersisted.storageRoot();
+        roomBatch.priority = batchPersisted.priority();
 
         database.roomBatchDao().insert(roomBatch);
     }
@@ -60,7 +61,8 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
                     DownloadBatchStatus.Status.from(roomBatch.status),
                     roomBatch.downloadedDateTimeInMillis,
                     roomBatch.notificationSeen,
-                    roomBatch.storageRoot
+                    roomBatch.storageRoot,
+                    roomBatch.priority
             );
             batchPersistedList.add(batchPersisted);
         }
@@ -72,6 +74,7 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
     public void persistFile(DownloadsFilePersisted filePersisted) {
         RoomFile roomFile = new RoomFile();
         roomFile.totalSize = filePersisted.totalFileSize();
+        roomFile.downloadedBytes = filePersisted.downloadedBytes();
         roomFile.batchId = filePersisted.downloadBatchId().rawId();
         roomFile.url = filePersisted.url();
         roomFile.path = filePersisted.filePath().path();
@@ -100,6 +103,7 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
                     DownloadFileIdCreator.createFrom(roomFile.fileId),
                     new LiteFilePath(roomFile.path),
                     roomFile.totalSize,
+                    roomFile.downloadedBytes,
                     roomFile.url
             );
             filePersistedList.add(filePersisted);
@@ -110,36 +114,22 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
 
     @Override
     public boolean delete(DownloadBatchId downloadBatchId) {
-        RoomBatch roomBatch = database.roomBatchDao().load(downloadBatchId.rawId());
-        if (roomBatch == null) {
-            return false;
-        }
-
-        database.roomBatchDao().delete(roomBatch);
-        return true;
+        return database.roomBatchDao().delete(downloadBatchId.rawId()) > 0;
     }
 
     @Override
     public boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
-        RoomBatch roomBatch = database.roomBatchDao().load(downloadBatchId.rawId());
-        if (roomBatch == null) {
-            return false;
-        }
-
-        roomBatch.status = status.toRawValue();
-        database.roomBatchDao().update(roomBatch);
-        return true;
+        return database.roomBatchDao().updateStatus(downloadBatchId.rawId(), status.toRawValue()) > 0;
     }
 
     @Override
     public boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen) {
-        RoomBatch roomBatch = database.roomBatchDao().load(downloadBatchId.rawId());
-        if (roomBatch == null) {
-            return false;
-        }
-        roomBatch.notificationSeen = notificationSeen;
-        database.roomBatchDao().update(roomBatch);
-        return true;
+        return database.roomBatchDao().updateNotificationSeen(downloadBatchId.rawId(), notificationSeen) > 0;
+    }
+
+    @Override
+    public boolean update(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId, long downloadedBytes) {
+        return database.roomFileDao().updateDownloadedBytes(downloadBatchId.rawId(), downloadFileId.rawId(), downloadedBytes) > 0;
     }
 
     @Override
@@ -156,7 +146,8 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
                 downloadBatchStatus,
                 downloadedDateTimeInMillis,
                 NOTIFICATION_SEEN,
-                storageRoot.path()
+                storageRoot.path(),
+                Batch.DEFAULT_PRIORITY
         );
         persistBatch(persistedBatch);
 
@@ -171,6 +162,7 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
                     downloadFileId,
                     new LiteFilePath(completedDownloadFile.newFileLocation()),
                     completedDownloadFile.fileSize().totalSize(),
+                    completedDownloadFile.fileSize().totalSize(),
                     url
             );
             persistFile(persistedFile);
@@ -30,6 +30,9 @@ class RoomFile {
     @ColumnInfo(name = "total_size")
     long totalSize;
 
+    @ColumnInfo(name = "downloaded_bytes")
+    long downloadedBytes;
+
     @ColumnInfo(name = "url")
     String url;
 }
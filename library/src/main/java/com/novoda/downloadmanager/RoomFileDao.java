@@ -21,4 +21,10 @@ interface RoomFileDao {
     @Transaction
     @Query("SELECT * FROM RoomFile")
     List<RoomFile> loadAllFiles();
+
+    /**
+     * @return the number of files updated, 0 when there is no such file in the batch.
+     */
+    @Query("UPDATE RoomFile SET downloaded_bytes = :downloadedBytes WHERE batch_id = :batchId AND file_id = :fileId")
+    int updateDownloadedBytes(String batchId, String fileId, long downloadedBytes);
 }
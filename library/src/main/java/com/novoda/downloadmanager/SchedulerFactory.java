@@ -5,12 +5,27 @@ import java.util.Timer;
 
 final class SchedulerFactory {
 
+    private static final String TIMER_NAME = "download-progress-ticks";
+    private static final boolean IS_DAEMON = true;
+
+    private static Timer sharedTimer;
+
     private SchedulerFactory() {
         // Uses static methods.
     }
 
+    /**
+     * Every scheduler shares the same timer, hence a single thread, however many batches are throttled.
+     */
     static ActionScheduler createFixedRateTimerScheduler(long frequencyInMillis) {
-        return new FixedRateTimerActionScheduler(new Timer(), frequencyInMillis, new HashMap<>());
+        return new FixedRateTimerActionScheduler(sharedTimer(), frequencyInMillis, new HashMap<>());
+    }
+
+    private static synchronized Timer sharedTimer() {
+        if (sharedTimer == null) {
+            sharedTimer = new Timer(TIMER_NAME, IS_DAEMON);
+        }
+        return sharedTimer;
     }
 
 }
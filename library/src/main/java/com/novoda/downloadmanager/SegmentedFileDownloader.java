@@ -0,0 +1,421 @@
+package com.novoda.downloadmanager;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads a single large file as several byte ranges over parallel connections,
+ * writing each range at its own offset of the target file. The progress of every
+ * segment is checkpointed so that a resumed download only requests the missing bytes.
+ */
+class SegmentedFileDownloader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long CHECKPOINT_INTERVAL_IN_BYTES = 4 * 1024 * 1024;
+    private static final int SINGLE_SEGMENT = 1;
+    private static final String READ_WRITE_MODE = "rw";
+
+    @Nullable
+    private final HttpClient httpClient;
+    @Nullable
+    private final NetworkRequestCreator requestCreator;
+    @Nullable
+    private final ExecutorService executor;
+    @Nullable
+    private final ByteBufferPool bufferPool;
+    private final FileSegmentsPersistence segmentsPersistence;
+    private final AdaptiveConnectionLimit connectionLimit;
+    private final int numberOfSegments;
+    private final long minimumFileSizeInBytes;
+
+    private final InFlightCalls inFlightCalls = new InFlightCalls();
+
+    private volatile boolean canDownload;
+
+    static SegmentedFileDownloader disabled() {
+        return new SegmentedFileDownloader(
+                null,
+                null,
+                null,
+                null,
+                new FileSegmentsPersistence(),
+                AdaptiveConnectionLimit.disabled(),
+                SINGLE_SEGMENT,
+                Long.MAX_VALUE
+        );
+    }
+
+    @SuppressWarnings("checkstyle:parameternumber")
+    SegmentedFileDownloader(@Nullable HttpClient httpClient,
+                            @Nullable NetworkRequestCreator requestCreator,
+                            @Nullable ExecutorService executor,
+                            @Nullable ByteBufferPool bufferPool,
+                            FileSegmentsPersistence segmentsPersistence,
+                            AdaptiveConnectionLimit connectionLimit,
+                            int numberOfSegments,
+                            long minimumFileSizeInBytes) {
+        this.httpClient = httpClient;
+        this.requestCreator = requestCreator;
+        this.executor = executor;
+        this.bufferPool = bufferPool;
+        this.segmentsPersistence = segmentsPersistence;
+        this.connectionLimit = connectionLimit;
+        this.numberOfSegments = numberOfSegments;
+        this.minimumFileSizeInBytes = minimumFileSizeInBytes;
+    }
+
+    /**
+     * A file that already has segments keeps on being downloaded in segments, otherwise
+     * only large enough files that have not been started yet are split. The segments are
+     * written straight to the path of the file, so a persistence that does not store the
+     * bytes as they are at that path always downloads the file as a whole.
+     */
+    boolean shouldDownloadInSegments(FilePath filePath, FileSize fileSize, FilePersistence filePersistence) {
+        if (!isEnabled() || filePath.isUnknown()) {
+            return false;
+        }
+
+        if (!filePersistence.writesBytesAtFilePath()) {
+            Logger.w("file " + filePath.path() + " is not downloaded in segments, "
+                             + filePersistence.getClass().getSimpleName() + " does not write its bytes at its path");
+            return false;
+        }
+
+        if (segmentsPersistence.hasSegmentsFor(filePath)) {
+            return true;
+        }
+
+        return numberOfSegments > SINGLE_SEGMENT
+                && fileSize.currentSize() == 0
+                && fileSize.totalSize() >= minimumFileSizeInBytes;
+    }
+
+    /**
+     * Splitting a file requires its total size before the first request.
+     */
+    boolean splitsNewFiles() {
+        return isEnabled() && numberOfSegments > SINGLE_SEGMENT;
+    }
+
+    /**
+     * The length of a file downloaded in segments does not reflect its progress, as the
+     * segments are written at their own offsets, so the persisted segments are used instead.
+     */
+    long currentSize(FilePath filePath, FilePersistence filePersistence) {
+        if (isEnabled() && !filePath.isUnknown() && segmentsPersistence.hasSegmentsFor(filePath)) {
+            return segmentsPersistence.downloadedBytes(filePath);
+        }
+        return filePersistence.getCurrentSize(filePath);
+    }
+
+    /**
+     * Blocks until every segment has been downloaded, the download is stopped or a segment fails.
+     *
+     * @return false when the server does not support byte ranges, in which case nothing has been written
+     * and the file should be downloaded in a single request instead.
+     */
+    @WorkerThread
+    boolean startDownloading(String url, FilePath filePath, FileSize fileSize, Callback callback) {
+        canDownload = true;
+        inFlightCalls.open();
+
+        List<FileSegment> segments = segmentsFor(filePath, fileSize.totalSize());
+        List<FileSegment> remainingSegments = remainingSegmentsOf(segments);
+        if (remainingSegments.isEmpty()) {
+            segmentsPersistence.delete(filePath);
+            callback.onDownloadFinished();
+            return true;
+        }
+
+        FileSegment firstSegment = remainingSegments.get(0);
+        NetworkRequest firstRequest = requestCreator.createDownloadRequestWithRange(url, firstSegment.nextByte(), firstSegment.lastByte());
+        NetworkCall firstCall = inFlightCalls.newCall(httpClient, firstRequest);
+        NetworkResponse firstResponse = null;
+        try {
+            firstResponse = firstCall.execute();
+            if (firstResponse.code() != HttpURLConnection.HTTP_PARTIAL) {
+                if (firstResponse.isSuccessful()) {
+                    Logger.w("Byte ranges are not supported for " + url);
+                    segmentsPersistence.delete(filePath);
+                    return false;
+                }
+                callback.onError(errorMessageFor(url, firstSegment, firstResponse.code()));
+                callback.onDownloadFinished();
+                return true;
+            }
+
+            if (!segmentsPersistence.persist(filePath, segments)) {
+                callback.onError("Cannot persist the segments of " + filePath.path());
+                callback.onDownloadFinished();
+                return true;
+            }
+
+            downloadSegments(url, filePath, segments, remainingSegments, firstResponse, callback);
+        } catch (IOException e) {
+            if (canDownload) {
+                Logger.e(e, "Exception with segmented http request");
+                callback.onError(e.getMessage());
+            }
+        } finally {
+            closeQuietly(firstResponse);
+            inFlightCalls.remove(firstCall);
+        }
+
+        if (remainingSegmentsOf(segments).isEmpty()) {
+            segmentsPersistence.delete(filePath);
+        } else {
+            segmentsPersistence.persist(filePath, segments);
+        }
+
+        callback.onDownloadFinished();
+        return true;
+    }
+
+    private void downloadSegments(String url,
+                                  FilePath filePath,
+                                  List<FileSegment> segments,
+                                  List<FileSegment> remainingSegments,
+                                  NetworkResponse firstResponse,
+                                  Callback callback) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filePath.path(), READ_WRITE_MODE)) {
+            SegmentsWriter writer = new SegmentsWriter(file.getChannel(), filePath, segments, callback);
+
+            // The first segment uses the connection of the file, the others only get one if the limit allows it.
+            List<FileSegment> parallelSegments = new ArrayList<>();
+            List<FileSegment> deferredSegments = new ArrayList<>();
+            for (FileSegment segment : remainingSegments.subList(1, remainingSegments.size())) {
+                if (connectionLimit.tryAcquire()) {
+                    parallelSegments.add(segment);
+                } else {
+                    deferredSegments.add(segment);
+                }
+            }
+
+            CountDownLatch additionalSegmentsDone = new CountDownLatch(parallelSegments.size());
+            for (FileSegment segment : parallelSegments) {
+                executor.execute(() -> {
+                    try {
+                        downloadSegment(url, segment, writer);
+                    } finally {
+                        connectionLimit.release();
+                        additionalSegmentsDone.countDown();
+                    }
+                });
+            }
+
+            readSegment(firstResponse, remainingSegments.get(0), writer);
+            for (FileSegment segment : deferredSegments) {
+                downloadSegment(url, segment, writer);
+            }
+
+            try {
+                additionalSegmentsDone.await();
+            } catch (InterruptedException e) {
+                Logger.e(e, "Interrupted waiting for the segments of " + filePath.path());
+                Thread.currentThread().interrupt();
+            }
+
+            file.getChannel().force(false);
+        }
+    }
+
+    private void downloadSegment(String url, FileSegment segment, SegmentsWriter writer) {
+        if (!canDownload) {
+            return;
+        }
+
+        NetworkRequest request = requestCreator.createDownloadRequestWithRange(url, segment.nextByte(), segment.lastByte());
+        NetworkCall call = inFlightCalls.newCall(httpClient, request);
+        NetworkResponse response = null;
+        try {
+            response = call.execute();
+            if (response.code() == HttpURLConnection.HTTP_PARTIAL) {
+                readSegment(response, segment, writer);
+            } else {
+                writer.fail(errorMessageFor(url, segment, response.code()));
+            }
+        } catch (IOException e) {
+            if (canDownload) {
+                Logger.e(e, "Exception with segmented http request");
+                writer.fail(e.getMessage());
+            }
+        } finally {
+            closeQuietly(response);
+            inFlightCalls.remove(call);
+        }
+    }
+
+    private void readSegment(NetworkResponse response, FileSegment segment, SegmentsWriter writer) {
+        ByteBuffer buffer = bufferPool.acquire(BUFFER_SIZE);
+        int readLast = 0;
+        try (ReadableByteChannel source = NetworkFileDownloader.openByteChannel(response)) {
+            while (canDownload && readLast != -1 && !segment.isComplete()) {
+                readLast = source.read(buffer);
+
+                if (buffer.position() > 0) {
+                    buffer.flip();
+                    writer.write(segment, buffer);
+                    buffer.clear();
+                }
+            }
+        } catch (IOException e) {
+            if (canDownload) {
+                Logger.e(e, "Exception while downloading segment starting at " + segment.firstByte());
+                writer.fail(e.getMessage());
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private List<FileSegment> segmentsFor(FilePath filePath, long totalSize) {
+        if (segmentsPersistence.hasSegmentsFor(filePath)) {
+            List<FileSegment> persistedSegments = segmentsPersistence.load(filePath);
+            if (areValid(persistedSegments, totalSize)) {
+                return persistedSegments;
+            }
+            Logger.w("Discarding the segments of " + filePath.path() + " as they do not match the total size " + totalSize);
+        }
+
+        return split(totalSize);
+    }
+
+    private boolean areValid(List<FileSegment> segments, long totalSize) {
+        return !segments.isEmpty() && segments.get(segments.size() - 1).lastByte() == totalSize - 1;
+    }
+
+    private List<FileSegment> split(long totalSize) {
+        int segmentCount = (int) Math.max(SINGLE_SEGMENT, Math.min(numberOfSegments, totalSize));
+        long segmentSize = totalSize / segmentCount;
+
+        List<FileSegment> segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            long firstByte = i * segmentSize;
+            long lastByte = i == segmentCount - 1 ? totalSize - 1 : firstByte + segmentSize - 1;
+            segments.add(new FileSegment(firstByte, lastByte, 0));
+        }
+        return segments;
+    }
+
+    private static List<FileSegment> remainingSegmentsOf(List<FileSegment> segments) {
+        List<FileSegment> remainingSegments = new ArrayList<>(segments.size());
+        for (FileSegment segment : segments) {
+            if (!segment.isComplete()) {
+                remainingSegments.add(segment);
+            }
+        }
+        return remainingSegments;
+    }
+
+    private static String errorMessageFor(String url, FileSegment segment, int responseCode) {
+        return String.format(
+                "Request: %s for bytes %s-%s with response code: %s failed.",
+                url,
+                segment.nextByte(),
+                segment.lastByte(),
+                responseCode
+        );
+    }
+
+    private static void closeQuietly(@Nullable NetworkResponse response) {
+        if (response == null) {
+            return;
+        }
+
+        try {
+            response.closeByteStream();
+        } catch (IOException e) {
+            Logger.e(e, "Exception while closing the body response");
+        }
+    }
+
+    private boolean isEnabled() {
+        return httpClient != null;
+    }
+
+    void stopDownloading() {
+        canDownload = false;
+        inFlightCalls.cancelAll();
+    }
+
+    void delete(FilePath filePath) {
+        segmentsPersistence.delete(filePath);
+    }
+
+    interface Callback {
+
+        void onBytesWritten(int bytesWritten);
+
+        void onError(String cause);
+
+        void onDownloadFinished();
+    }
+
+    /**
+     * Shared by the segments of a single download, it writes their bytes at the right offsets,
+     * checkpoints their progress and reports the first failure only.
+     */
+    private class SegmentsWriter {
+
+        private final FileChannel channel;
+        private final FilePath filePath;
+        private final List<FileSegment> segments;
+        private final Callback callback;
+        private final AtomicLong bytesSinceCheckpoint = new AtomicLong();
+        private final AtomicBoolean failed = new AtomicBoolean();
+
+        SegmentsWriter(FileChannel channel, FilePath filePath, List<FileSegment> segments, Callback callback) {
+            this.channel = channel;
+            this.filePath = filePath;
+            this.segments = segments;
+            this.callback = callback;
+        }
+
+        void write(FileSegment segment, ByteBuffer buffer) throws IOException {
+            int bytesToWrite = (int) Math.min(buffer.remaining(), segment.remainingBytes());
+            buffer.limit(buffer.position() + bytesToWrite);
+            long position = segment.nextByte();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+
+            segment.addToDownloadedBytes(bytesToWrite);
+            callback.onBytesWritten(bytesToWrite);
+
+            if (bytesSinceCheckpoint.addAndGet(bytesToWrite) >= CHECKPOINT_INTERVAL_IN_BYTES) {
+                bytesSinceCheckpoint.set(0);
+                checkpoint();
+            }
+        }
+
+        private synchronized void checkpoint() throws IOException {
+            List<FileSegment> snapshot = new ArrayList<>(segments.size());
+            for (FileSegment segment : segments) {
+                snapshot.add(segment.copy());
+            }
+            channel.force(false);
+            segmentsPersistence.persist(filePath, snapshot);
+        }
+
+        void fail(String cause) {
+            canDownload = false;
+            if (failed.compareAndSet(false, true)) {
+                callback.onError(cause);
+                inFlightCalls.cancelAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.novoda.downloadmanager;
+
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Downloads a url only once at a time, across all of the batches. The first file to download a url
+ * leads, the other files for the same url wait for it and then take its bytes, by hard link where
+ * available or by copy otherwise.
+ * The files holding the bytes of a url are reference counted, a file that is being linked or copied
+ * from is only deleted once the last file taking its bytes is done with it.
+ */
+class SharedFileDownloads {
+
+    private static final long WAIT_INTERVAL_IN_MILLIS = 500;
+
+    private final boolean enabled;
+    private final Map<String, SharedUrl> sharedUrls = new HashMap<>();
+
+    static SharedFileDownloads disabled() {
+        return new SharedFileDownloads(false);
+    }
+
+    static SharedFileDownloads enabled() {
+        return new SharedFileDownloads(true);
+    }
+
+    private SharedFileDownloads(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Blocks while another file is downloading the url and the given file keeps on waiting.
+     *
+     * @return a completed file for the url whose bytes must be taken and then handed back through
+     * {@link #releaseCompletedFile(String, FilePath, FilePath, boolean)}. When absent, the given file
+     * downloads the url itself and must then call {@link #finishDownloading(String, FilePath, boolean)}.
+     */
+    @WorkerThread
+    synchronized Optional<FilePath> acquire(String url, FilePath filePath, KeepWaiting keepWaiting) {
+        if (!enabled || filePath.isUnknown()) {
+            return Optional.absent();
+        }
+
+        SharedUrl sharedUrl = sharedUrlFor(url);
+        while (sharedUrl.isDownloadedByAnotherFileThan(filePath) && keepWaiting.keepWaiting()) {
+            try {
+                wait(WAIT_INTERVAL_IN_MILLIS);
+            } catch (InterruptedException e) {
+                Logger.e(e, "Interrupted waiting for " + url + " to be downloaded");
+                Thread.currentThread().interrupt();
+                return Optional.absent();
+            }
+            sharedUrl = sharedUrlFor(url);
+        }
+
+        if (!keepWaiting.keepWaiting() || sharedUrl.completedFilePaths.contains(filePath)) {
+            removeIfUnused(url, sharedUrl);
+            return Optional.absent();
+        }
+
+        FilePath completedFilePath = sharedUrl.completedFileOtherThan(filePath);
+        if (completedFilePath != null) {
+            sharedUrl.addReader(completedFilePath);
+            Logger.v(() -> "taking " + url + " from " + completedFilePath.path() + " for " + filePath.path());
+            return Optional.of(completedFilePath);
+        }
+
+        sharedUrl.downloadingFilePath = filePath;
+        return Optional.absent();
+    }
+
+    synchronized void finishDownloading(String url, FilePath filePath, boolean completed) {
+        SharedUrl sharedUrl = sharedUrls.get(url);
+        if (sharedUrl == null || !filePath.equals(sharedUrl.downloadingFilePath)) {
+            return;
+        }
+
+        sharedUrl.downloadingFilePath = null;
+        if (completed) {
+            sharedUrl.addCompletedFile(filePath);
+        }
+        removeIfUnused(url, sharedUrl);
+        notifyAll();
+    }
+
+    /**
+     * Hands back a completed file that no longer has the expected size, e.g. one truncated since it was downloaded.
+     * It is not offered to other files anymore and the given file downloads the url itself, as when
+     * {@link #acquire(String, FilePath, KeepWaiting)} returns absent.
+     */
+    synchronized void rejectCompletedFile(String url, FilePath completedFilePath, FilePath filePath) {
+        SharedUrl sharedUrl = sharedUrls.get(url);
+        if (sharedUrl == null) {
+            return;
+        }
+
+        Runnable pendingDelete = sharedUrl.removeReader(completedFilePath);
+        if (pendingDelete != null) {
+            pendingDelete.run();
+        }
+        sharedUrl.completedFilePaths.remove(completedFilePath);
+        if (sharedUrl.downloadingFilePath == null) {
+            sharedUrl.downloadingFilePath = filePath;
+        }
+        removeIfUnused(url, sharedUrl);
+    }
+
+    synchronized void releaseCompletedFile(String url, FilePath completedFilePath, FilePath filePath, boolean taken) {
+        SharedUrl sharedUrl = sharedUrls.get(url);
+        if (sharedUrl == null) {
+            return;
+        }
+
+        Runnable pendingDelete = sharedUrl.removeReader(completedFilePath);
+        if (pendingDelete != null) {
+            pendingDelete.run();
+        }
+        if (taken) {
+            sharedUrl.addCompletedFile(filePath);
+        }
+        removeIfUnused(url, sharedUrl);
+        notifyAll();
+    }
+
+    /**
+     * Registers a file that already holds all of the bytes of a url, e.g. one downloaded in a previous session.
+     */
+    synchronized void addCompletedFile(String url, FilePath filePath) {
+        if (!enabled || filePath.isUnknown()) {
+            return;
+        }
+
+        sharedUrlFor(url).addCompletedFile(filePath);
+    }
+
+    /**
+     * Deletes the file straight away, unless another file is taking its bytes in which case
+     * it is deleted once that file is done with it.
+     */
+    synchronized void delete(String url, FilePath filePath, Runnable deleteFile) {
+        SharedUrl sharedUrl = sharedUrls.get(url);
+        if (sharedUrl == null) {
+            deleteFile.run();
+            return;
+        }
+
+        sharedUrl.completedFilePaths.remove(filePath);
+        if (sharedUrl.hasReaders(filePath)) {
+            Logger.v(() -> "deferring the deletion of " + filePath.path() + " as its bytes are still being taken");
+            sharedUrl.pendingDeletes.put(filePath, deleteFile);
+        } else {
+            deleteFile.run();
+        }
+        removeIfUnused(url, sharedUrl);
+    }
+
+    /**
+     * Hard links do not use any extra space, but are only available from Lollipop.
+     */
+    static boolean link(FilePath completedFilePath, FilePath filePath) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+
+        File file = new File(filePath.path());
+        File parentDirectory = file.getParentFile();
+        if (parentDirectory != null && !parentDirectory.exists() && !parentDirectory.mkdirs()) {
+            return false;
+        }
+
+        return LollipopHardLinks.link(completedFilePath, filePath);
+    }
+
+    private SharedUrl sharedUrlFor(String url) {
+        SharedUrl sharedUrl = sharedUrls.get(url);
+        if (sharedUrl == null) {
+            sharedUrl = new SharedUrl();
+            sharedUrls.put(url, sharedUrl);
+        }
+        return sharedUrl;
+    }
+
+    private void removeIfUnused(String url, SharedUrl sharedUrl) {
+        if (sharedUrl.isUnused()) {
+            sharedUrls.remove(url);
+        }
+    }
+
+    interface KeepWaiting {
+
+        boolean keepWaiting();
+    }
+
+    private static class SharedUrl {
+
+        private final List<FilePath> completedFilePaths = new ArrayList<>();
+        private final Map<FilePath, Integer> readers = new HashMap<>();
+        private final Map<FilePath, Runnable> pendingDeletes = new HashMap<>();
+
+        @Nullable
+        private FilePath downloadingFilePath;
+
+        void addCompletedFile(FilePath filePath) {
+            if (!completedFilePaths.contains(filePath)) {
+                completedFilePaths.add(filePath);
+            }
+        }
+
+        boolean isDownloadedByAnotherFileThan(FilePath filePath) {
+            return downloadingFilePath != null && !downloadingFilePath.equals(filePath);
+        }
+
+        @Nullable
+        FilePath completedFileOtherThan(FilePath filePath) {
+            for (int i = completedFilePaths.size() - 1; i >= 0; i--) {
+                FilePath completedFilePath = completedFilePaths.get(i);
+                if (!new File(completedFilePath.path()).exists()) {
+                    completedFilePaths.remove(i);
+                } else if (!completedFilePath.equals(filePath)) {
+                    return completedFilePath;
+                }
+            }
+            return null;
+        }
+
+        void addReader(FilePath completedFilePath) {
+            Integer count = readers.get(completedFilePath);
+            readers.put(completedFilePath, count == null ? 1 : count + 1);
+        }
+
+        @Nullable
+        Runnable removeReader(FilePath completedFilePath) {
+            Integer count = readers.get(completedFilePath);
+            if (count == null || count <= 1) {
+                readers.remove(completedFilePath);
+                return pendingDeletes.remove(completedFilePath);
+            }
+            readers.put(completedFilePath, count - 1);
+            return null;
+        }
+
+        boolean hasReaders(FilePath filePath) {
+            return readers.containsKey(filePath);
+        }
+
+        boolean isUnused() {
+            return downloadingFilePath == null && completedFilePaths.isEmpty() && readers.isEmpty();
+        }
+    }
+}
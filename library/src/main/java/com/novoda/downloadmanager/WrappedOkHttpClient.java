@@ -7,7 +7,7 @@ import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 
-class WrappedOkHttpClient implements HttpClient {
+class WrappedOkHttpClient implements CancellableHttpClient {
 
     private final OkHttpClient httpClient;
 
@@ -17,6 +17,11 @@ class WrappedOkHttpClient implements HttpClient {
 
     @Override
     public NetworkResponse execute(NetworkRequest request) throws IOException {
+        return newCall(request).execute();
+    }
+
+    @Override
+    public NetworkCall newCall(NetworkRequest request) {
         Request.Builder requestBuilder = new Request.Builder()
                 .url(request.url());
 
@@ -30,6 +35,19 @@ class WrappedOkHttpClient implements HttpClient {
 
         Call call = httpClient.newCall(requestBuilder.build());
 
-        return new WrappedOkHttpResponse(call.execute());
+        return new NetworkCall() {
+            @Override
+            public NetworkResponse execute() throws IOException {
+                return new WrappedOkHttpResponse(call.execute());
+            }
+
+            /**
+             * Closes the socket of the call, which fails any pending read with an IOException.
+             */
+            @Override
+            public void cancel() {
+                call.cancel();
+            }
+        };
     }
 }
@@ -2,10 +2,11 @@ package com.novoda.downloadmanager;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
 
 import okhttp3.Response;
 
-class WrappedOkHttpResponse implements NetworkResponse {
+class WrappedOkHttpResponse implements ByteChannelNetworkResponse {
 
     private final Response response;
 
@@ -33,6 +34,11 @@ class WrappedOkHttpResponse implements NetworkResponse {
         return response.body().byteStream();
     }
 
+    @Override
+    public ReadableByteChannel openByteChannel() {
+        return response.body().source();
+    }
+
     @Override
     public void closeByteStream() throws IOException {
         response.body().close();
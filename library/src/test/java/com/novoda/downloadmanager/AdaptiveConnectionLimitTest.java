@@ -0,0 +1,182 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class AdaptiveConnectionLimitTest {
+
+    private static final int MINIMUM_CONNECTIONS = 1;
+    private static final int MAXIMUM_CONNECTIONS = 8;
+    private static final long ONE_SECOND_SAMPLES = 1000;
+    private static final long BYTES_PER_SECOND_PER_CONNECTION = 200_000;
+    private static final long LINK_BYTES_PER_SECOND = 1_000_000;
+    private static final int CONNECTIONS_SATURATING_LINK = 5;
+    private static final double LOSS_PER_EXTRA_CONNECTION = 0.1;
+    private static final int ENOUGH_SAMPLES_TO_SETTLE = 20;
+
+    private final ActionScheduler scheduler = mock(ActionScheduler.class);
+    private final List<ConnectionLimitDecision> decisions = new ArrayList<>();
+    private final AdaptiveConnectionLimit connectionLimit = new AdaptiveConnectionLimit(
+            scheduler,
+            decisions::add,
+            MINIMUM_CONNECTIONS,
+            MAXIMUM_CONNECTIONS,
+            ONE_SECOND_SAMPLES
+    );
+    private final BandwidthShapedLink link = new BandwidthShapedLink(
+            BYTES_PER_SECOND_PER_CONNECTION,
+            LINK_BYTES_PER_SECOND,
+            LOSS_PER_EXTRA_CONNECTION
+    );
+
+    @Test
+    public void settlesOnTheConnectionsThatSaturateTheLink() {
+        downloadFor(ENOUGH_SAMPLES_TO_SETTLE);
+
+        assertThat(connectionLimit.limit()).isEqualTo(CONNECTIONS_SATURATING_LINK);
+    }
+
+    @Test
+    public void givesBackConnection_whenIncreaseDoesNotImproveThroughput() {
+        downloadFor(CONNECTIONS_SATURATING_LINK + 1);
+
+        ConnectionLimitDecision lastDecision = decisions.get(decisions.size() - 1);
+        assertThat(lastDecision.type()).isEqualTo(ConnectionLimitDecision.Type.DECREASE);
+        assertThat(lastDecision.limit()).isEqualTo(CONNECTIONS_SATURATING_LINK);
+    }
+
+    @Test
+    public void backsOff_whenDownloadsFail() {
+        downloadFor(3);
+        int limitBeforeError = connectionLimit.limit();
+
+        connectionLimit.onError();
+        connectionLimit.sample();
+
+        ConnectionLimitDecision lastDecision = decisions.get(decisions.size() - 1);
+        assertThat(lastDecision.type()).isEqualTo(ConnectionLimitDecision.Type.BACK_OFF_ON_ERROR);
+        assertThat(connectionLimit.limit()).isEqualTo(limitBeforeError / 2);
+    }
+
+    @Test
+    public void backsOff_whenThroughputCollapses() {
+        downloadFor(ENOUGH_SAMPLES_TO_SETTLE);
+
+        link.congest();
+        downloadFor(1);
+
+        ConnectionLimitDecision lastDecision = decisions.get(decisions.size() - 1);
+        assertThat(lastDecision.type()).isEqualTo(ConnectionLimitDecision.Type.BACK_OFF_ON_COLLAPSE);
+        assertThat(connectionLimit.limit()).isEqualTo(CONNECTIONS_SATURATING_LINK / 2);
+    }
+
+    @Test
+    public void neverAllowsMoreThanMaximumConnections() {
+        BandwidthShapedLink unboundedLink = new BandwidthShapedLink(BYTES_PER_SECOND_PER_CONNECTION, Long.MAX_VALUE, 0);
+
+        downloadFor(ENOUGH_SAMPLES_TO_SETTLE, unboundedLink);
+
+        assertThat(connectionLimit.limit()).isEqualTo(MAXIMUM_CONNECTIONS);
+    }
+
+    @Test
+    public void doesNotTakeConnection_whenLimitIsReached() {
+        connectionLimit.tryAcquire();
+
+        assertThat(connectionLimit.tryAcquire()).isFalse();
+    }
+
+    @Test
+    public void stopsWaitingForConnection_whenDownloadIsStopped() {
+        connectionLimit.tryAcquire();
+
+        boolean acquired = connectionLimit.acquire(() -> false);
+
+        assertThat(acquired).isFalse();
+        assertThat(connectionLimit.activeConnections()).isEqualTo(1);
+    }
+
+    @Test
+    public void stopsSampling_whenNoConnectionWasOpenDuringSample() {
+        connectionLimit.tryAcquire();
+        connectionLimit.release();
+        connectionLimit.sample();
+
+        connectionLimit.sample();
+
+        verify(scheduler).cancel(any(ActionScheduler.Action.class));
+    }
+
+    @Test
+    public void neverLimitsConnections_whenDisabled() {
+        AdaptiveConnectionLimit disabledLimit = AdaptiveConnectionLimit.disabled();
+
+        for (int i = 0; i < MAXIMUM_CONNECTIONS; i++) {
+            disabledLimit.tryAcquire();
+        }
+
+        assertThat(disabledLimit.tryAcquire()).isTrue();
+    }
+
+    private void downloadFor(int numberOfSamples) {
+        downloadFor(numberOfSamples, link);
+    }
+
+    /**
+     * Keeps as many connections open as the limit allows, as a queue with plenty of files would.
+     */
+    private void downloadFor(int numberOfSamples, BandwidthShapedLink link) {
+        for (int i = 0; i < numberOfSamples; i++) {
+            while (connectionLimit.tryAcquire()) {
+                // opens the connections allowed by the last decision.
+            }
+            connectionLimit.onBytesDownloaded((int) link.bytesPerSecond(connectionLimit.activeConnections()));
+            connectionLimit.sample();
+            while (connectionLimit.activeConnections() > connectionLimit.limit()) {
+                connectionLimit.release();
+            }
+        }
+    }
+
+    /**
+     * Stands in for a server behind a shaped link: each connection is capped, the link is shared,
+     * and every connection beyond the ones the link can carry loses some of the goodput to contention.
+     */
+    private static class BandwidthShapedLink {
+
+        private static final int CONGESTION_DIVISOR = 4;
+
+        private final long bytesPerSecondPerConnection;
+        private final double lossPerExtraConnection;
+
+        private long linkBytesPerSecond;
+
+        BandwidthShapedLink(long bytesPerSecondPerConnection, long linkBytesPerSecond, double lossPerExtraConnection) {
+            this.bytesPerSecondPerConnection = bytesPerSecondPerConnection;
+            this.linkBytesPerSecond = linkBytesPerSecond;
+            this.lossPerExtraConnection = lossPerExtraConnection;
+        }
+
+        void congest() {
+            linkBytesPerSecond /= CONGESTION_DIVISOR;
+        }
+
+        long bytesPerSecond(int connections) {
+            long offeredBytesPerSecond = connections * bytesPerSecondPerConnection;
+            if (offeredBytesPerSecond <= linkBytesPerSecond) {
+                return offeredBytesPerSecond;
+            }
+
+            long connectionsCarried = linkBytesPerSecond / bytesPerSecondPerConnection;
+            double goodput = 1 - lossPerExtraConnection * (connections - connectionsCarried);
+            return (long) (linkBytesPerSecond * Math.max(0, goodput));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+
+public class BatchDownloadExecutorTest {
+
+    private static final DownloadBatchId FIRST_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("first").build();
+    private static final DownloadBatchId SECOND_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("second").build();
+    private static final DownloadBatchId THIRD_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("third").build();
+    private static final int TWO_BATCHES_AT_ONCE = 2;
+    private static final int ONE_BATCH_AT_A_TIME = 1;
+    private static final int HIGH_PRIORITY = 10;
+
+    private final CollectingExecutor executor = new CollectingExecutor();
+    private final BatchDownloadExecutor batchDownloadExecutor = new BatchDownloadExecutor(executor, TWO_BATCHES_AT_ONCE);
+
+    @Test
+    public void runsBatchesAtTheSameTime_upToTheConcurrencyLimit() {
+        batchDownloadExecutor.execute(FIRST_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+        batchDownloadExecutor.execute(SECOND_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+        batchDownloadExecutor.execute(THIRD_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+
+        assertThat(executor.pendingCount()).isEqualTo(TWO_BATCHES_AT_ONCE);
+    }
+
+    @Test
+    public void listsRunningBatchesFollowedByWaitingBatches() {
+        batchDownloadExecutor.execute(FIRST_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+        batchDownloadExecutor.execute(SECOND_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+        batchDownloadExecutor.execute(THIRD_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+
+        assertThat(batchDownloadExecutor.queue()).containsExactly(FIRST_BATCH_ID, SECOND_BATCH_ID, THIRD_BATCH_ID).inOrder();
+    }
+
+    @Test
+    public void removesBatchFromQueue_whenFinished() {
+        batchDownloadExecutor.execute(FIRST_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+
+        executor.runNext();
+
+        assertThat(batchDownloadExecutor.queue()).isEmpty();
+    }
+
+    @Test
+    public void dropsExecution_whenBatchIsAlreadyWaiting() {
+        CollectingExecutor executor = new CollectingExecutor();
+        BatchDownloadExecutor singleWorkerExecutor = new BatchDownloadExecutor(executor, ONE_BATCH_AT_A_TIME);
+        singleWorkerExecutor.execute(FIRST_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+        singleWorkerExecutor.execute(SECOND_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+
+        singleWorkerExecutor.execute(SECOND_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+
+        assertThat(singleWorkerExecutor.queue()).containsExactly(FIRST_BATCH_ID, SECOND_BATCH_ID).inOrder();
+    }
+
+    @Test
+    public void runsBatchAgainOnceFinished_whenResumedWhileRunning() {
+        AtomicInteger runCount = new AtomicInteger();
+        Runnable pausableBatch = runCount::incrementAndGet;
+        batchDownloadExecutor.execute(FIRST_BATCH_ID, pausableBatch);
+
+        // Pausing stops the run in the background, resuming executes the batch again before it has finished.
+        batchDownloadExecutor.execute(FIRST_BATCH_ID, pausableBatch);
+
+        assertThat(batchDownloadExecutor.queue()).containsExactly(FIRST_BATCH_ID);
+        assertThat(executor.pendingCount()).isEqualTo(1);
+
+        executor.runNext();
+
+        assertThat(executor.pendingCount()).isEqualTo(1);
+
+        executor.runNext();
+
+        assertThat(runCount.get()).isEqualTo(2);
+        assertThat(batchDownloadExecutor.queue()).isEmpty();
+    }
+
+    @Test
+    public void startsHighestPriorityWaitingBatchFirst() {
+        CollectingExecutor executor = new CollectingExecutor();
+        BatchDownloadExecutor prioritisingExecutor = new BatchDownloadExecutor(executor, ONE_BATCH_AT_A_TIME);
+        prioritisingExecutor.execute(FIRST_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+        prioritisingExecutor.execute(SECOND_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+        prioritisingExecutor.execute(THIRD_BATCH_ID, HIGH_PRIORITY, new FakeBatchDownload(false, false));
+
+        executor.runNext();
+
+        assertThat(prioritisingExecutor.queue()).containsExactly(THIRD_BATCH_ID, SECOND_BATCH_ID).inOrder();
+    }
+
+    @Test
+    public void preemptsRunningBatch_whenHigherPriorityBatchIsWaiting() {
+        CollectingExecutor executor = new CollectingExecutor();
+        BatchDownloadExecutor prioritisingExecutor = new BatchDownloadExecutor(executor, ONE_BATCH_AT_A_TIME);
+        FakeBatchDownload lowPriorityDownload = new FakeBatchDownload(true, true);
+        prioritisingExecutor.execute(FIRST_BATCH_ID, Batch.DEFAULT_PRIORITY, lowPriorityDownload);
+
+        prioritisingExecutor.execute(SECOND_BATCH_ID, HIGH_PRIORITY, new FakeBatchDownload(false, false));
+
+        assertThat(lowPriorityDownload.preempted).isTrue();
+    }
+
+    @Test
+    public void requeuesPreemptedBatch_behindHigherPriorityBatch() {
+        CollectingExecutor executor = new CollectingExecutor();
+        BatchDownloadExecutor prioritisingExecutor = new BatchDownloadExecutor(executor, ONE_BATCH_AT_A_TIME);
+        prioritisingExecutor.execute(FIRST_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(true, true));
+        prioritisingExecutor.execute(SECOND_BATCH_ID, HIGH_PRIORITY, new FakeBatchDownload(false, false));
+        prioritisingExecutor.execute(THIRD_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+
+        executor.runNext();
+
+        assertThat(prioritisingExecutor.queue()).containsExactly(SECOND_BATCH_ID, FIRST_BATCH_ID, THIRD_BATCH_ID).inOrder();
+    }
+
+    @Test
+    public void doesNotRequeuePreemptedBatch_whenItWasStoppedInTheMeantime() {
+        CollectingExecutor executor = new CollectingExecutor();
+        BatchDownloadExecutor prioritisingExecutor = new BatchDownloadExecutor(executor, ONE_BATCH_AT_A_TIME);
+        prioritisingExecutor.execute(FIRST_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(true, false));
+        prioritisingExecutor.execute(SECOND_BATCH_ID, HIGH_PRIORITY, new FakeBatchDownload(false, false));
+
+        executor.runNext();
+
+        assertThat(prioritisingExecutor.queue()).containsExactly(SECOND_BATCH_ID);
+    }
+
+    @Test
+    public void doesNotPreemptBatchWithSamePriority() {
+        CollectingExecutor executor = new CollectingExecutor();
+        BatchDownloadExecutor prioritisingExecutor = new BatchDownloadExecutor(executor, ONE_BATCH_AT_A_TIME);
+        FakeBatchDownload runningDownload = new FakeBatchDownload(true, true);
+        prioritisingExecutor.execute(FIRST_BATCH_ID, Batch.DEFAULT_PRIORITY, runningDownload);
+
+        prioritisingExecutor.execute(SECOND_BATCH_ID, Batch.DEFAULT_PRIORITY, new FakeBatchDownload(false, false));
+
+        assertThat(runningDownload.preempted).isFalse();
+    }
+
+    @Test
+    public void requeuesEveryRunningBatch_whenRunningBatchesArePreempted() {
+        FakeBatchDownload firstDownload = new FakeBatchDownload(true, true);
+        FakeBatchDownload secondDownload = new FakeBatchDownload(true, true);
+        batchDownloadExecutor.execute(FIRST_BATCH_ID, Batch.DEFAULT_PRIORITY, firstDownload);
+        batchDownloadExecutor.execute(SECOND_BATCH_ID, Batch.DEFAULT_PRIORITY, secondDownload);
+
+        batchDownloadExecutor.preemptRunningBatches();
+        executor.runNext();
+        executor.runNext();
+
+        assertThat(firstDownload.preempted && secondDownload.preempted).isTrue();
+        assertThat(batchDownloadExecutor.queue()).containsExactly(FIRST_BATCH_ID, SECOND_BATCH_ID).inOrder();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsException_whenParallelismIsLessThanOne() {
+        BatchDownloadExecutor.newInstance(0);
+    }
+
+    private static class CollectingExecutor implements Executor {
+
+        private final List<Runnable> runnables = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnables.add(runnable);
+        }
+
+        void runNext() {
+            runnables.remove(0).run();
+        }
+
+        int pendingCount() {
+            return runnables.size();
+        }
+    }
+
+    private static class FakeBatchDownload implements BatchDownloadExecutor.BatchDownload {
+
+        private final boolean preemptible;
+        private final boolean requeueable;
+
+        private boolean preempted;
+
+        FakeBatchDownload(boolean preemptible, boolean requeueable) {
+            this.preemptible = preemptible;
+            this.requeueable = requeueable;
+        }
+
+        @Override
+        public void run() {
+            // finishes straight away.
+        }
+
+        @Override
+        public boolean preempt() {
+            preempted = preemptible;
+            return preemptible;
+        }
+
+        @Override
+        public boolean requeue() {
+            return requeueable;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.novoda.downloadmanager;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ByteBufferPoolTest {
+
+    private static final int TWO_POOLED_BUFFERS_PER_SIZE = 2;
+    private static final int BUFFER_SIZE_IN_BYTES = 4096;
+    private static final int LARGER_THAN_POOLED_SIZE_IN_BYTES = 8 * 1024 * 1024;
+
+    private final ByteBufferPool bufferPool = new ByteBufferPool(TWO_POOLED_BUFFERS_PER_SIZE);
+
+    @Test
+    public void roundsSizeUpToNextPowerOfTwo() {
+        ByteBuffer buffer = bufferPool.acquire(BUFFER_SIZE_IN_BYTES + 1);
+
+        assertThat(buffer.capacity()).isEqualTo(2 * BUFFER_SIZE_IN_BYTES);
+    }
+
+    @Test
+    public void reusesReleasedBuffer_whenSizesShareTheSameClass() {
+        ByteBuffer buffer = bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        bufferPool.release(buffer);
+
+        ByteBuffer reusedBuffer = bufferPool.acquire(BUFFER_SIZE_IN_BYTES - 1);
+
+        assertThat(reusedBuffer).isSameAs(buffer);
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        ByteBuffer buffer = bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        bufferPool.release(buffer);
+        bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+
+        assertThat(bufferPool.hits()).isEqualTo(1L);
+        assertThat(bufferPool.misses()).isEqualTo(2L);
+    }
+
+    @Test
+    public void countsOutstandingBuffers() {
+        ByteBuffer buffer = bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        bufferPool.release(buffer);
+
+        assertThat(bufferPool.outstandingBuffers()).isEqualTo(1);
+    }
+
+    @Test
+    public void doesNotPoolMoreThanTheMaximumBuffersPerSize() {
+        ByteBuffer first = bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        ByteBuffer second = bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        ByteBuffer third = bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        bufferPool.release(first);
+        bufferPool.release(second);
+        bufferPool.release(third);
+
+        bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+
+        assertThat(bufferPool.hits()).isEqualTo(2L);
+    }
+
+    @Test
+    public void doesNotPoolBuffersLargerThanThePooledSizes() {
+        ByteBuffer buffer = bufferPool.acquire(LARGER_THAN_POOLED_SIZE_IN_BYTES);
+        bufferPool.release(buffer);
+
+        ByteBuffer nextBuffer = bufferPool.acquire(LARGER_THAN_POOLED_SIZE_IN_BYTES);
+
+        assertThat(nextBuffer).isNotSameAs(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsException_whenSizeIsNotPositive() {
+        bufferPool.acquire(0);
+    }
+}
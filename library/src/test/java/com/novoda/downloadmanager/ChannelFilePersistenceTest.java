@@ -0,0 +1,138 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.FilePathFixtures.aFilePath;
+import static com.novoda.downloadmanager.InternalFileSizeFixtures.aFileSize;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+public class ChannelFilePersistenceTest {
+
+    private static final int BUFFER_SIZE_IN_BYTES = 8;
+    private static final int MAXIMUM_POOLED_BUFFERS = 1;
+    private static final byte[] BYTES = "0123456789abcdefghij".getBytes();
+    private static final File FULL_DEVICE = new File("/dev/full");
+    private static final StorageRequirementRule NO_STORAGE_REQUIREMENT = (storageDirectory, downloadFileSize) -> false;
+
+    private final ByteBufferPool bufferPool = new ByteBufferPool(MAXIMUM_POOLED_BUFFERS);
+    private final FileSize fileSize = aFileSize().withTotalSize(BYTES.length).build();
+
+    private File file;
+    private FilePath filePath;
+    private ChannelFilePersistence channelFilePersistence;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("channel", ".bin");
+        filePath = aFilePath().withRawPath(file.getAbsolutePath()).build();
+        channelFilePersistence = new ChannelFilePersistence(bufferPool, BUFFER_SIZE_IN_BYTES);
+        channelFilePersistence.initialiseWith(mock(Context.class), NO_STORAGE_REQUIREMENT);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void writesAllBytes_whenWritesSpanSeveralBuffers() throws IOException {
+        channelFilePersistence.create(filePath, fileSize);
+
+        channelFilePersistence.write(BYTES, 0, 5);
+        channelFilePersistence.write(BYTES, 5, BYTES.length - 5);
+        channelFilePersistence.close();
+
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(BYTES);
+    }
+
+    @Test
+    public void onlyWritesFullBuffers_untilClosed() {
+        channelFilePersistence.create(filePath, fileSize);
+
+        channelFilePersistence.write(BYTES, 0, BUFFER_SIZE_IN_BYTES + 1);
+
+        assertThat(channelFilePersistence.getCurrentSize(filePath)).isEqualTo((long) BUFFER_SIZE_IN_BYTES);
+    }
+
+    @Test
+    public void writesAllBytes_whenByteBuffersAreSmallerAndLargerThanTheBuffer() throws IOException {
+        channelFilePersistence.create(filePath, fileSize);
+
+        channelFilePersistence.write(ByteBuffer.wrap(BYTES, 0, 3));
+        channelFilePersistence.write(ByteBuffer.wrap(BYTES, 3, BYTES.length - 3));
+        channelFilePersistence.close();
+
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(BYTES);
+    }
+
+    @Test
+    public void consumesByteBuffer_whenWritten() {
+        channelFilePersistence.create(filePath, fileSize);
+        ByteBuffer bytes = ByteBuffer.wrap(BYTES);
+
+        channelFilePersistence.write(bytes);
+
+        assertThat(bytes.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void appendsToExistingBytes() throws IOException {
+        Files.write(file.toPath(), Arrays.copyOfRange(BYTES, 0, 3));
+        channelFilePersistence.create(filePath, fileSize);
+
+        channelFilePersistence.write(BYTES, 3, BYTES.length - 3);
+        channelFilePersistence.close();
+
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(BYTES);
+    }
+
+    @Test
+    public void writesBufferedBytes_whenTheFileIsComplete() {
+        channelFilePersistence.create(filePath, aFileSize().withTotalSize(3).build());
+
+        channelFilePersistence.write(BYTES, 0, 3);
+
+        assertThat(channelFilePersistence.getCurrentSize(filePath)).isEqualTo(3L);
+    }
+
+    @Test
+    public void failsToWrite_whenTheBytesCompletingTheFileCannotBeFlushed() {
+        assumeTrue(FULL_DEVICE.exists());
+        FilePath fullDevicePath = aFilePath().withRawPath(FULL_DEVICE.getAbsolutePath()).build();
+        channelFilePersistence.create(fullDevicePath, aFileSize().withTotalSize(3).build());
+
+        boolean written = channelFilePersistence.write(ByteBuffer.wrap(BYTES, 0, 3));
+
+        assertThat(written).isFalse();
+    }
+
+    @Test
+    public void doesNotWrite_whenFileIsNotCreated() {
+        boolean written = channelFilePersistence.write(BYTES, 0, BYTES.length);
+
+        assertThat(written).isFalse();
+    }
+
+    @Test
+    public void returnsBufferToPool_whenClosed() {
+        ByteBuffer pooledBuffer = bufferPool.acquire(BUFFER_SIZE_IN_BYTES);
+        bufferPool.release(pooledBuffer);
+
+        channelFilePersistence.create(filePath, fileSize);
+        channelFilePersistence.close();
+
+        assertThat(bufferPool.acquire(BUFFER_SIZE_IN_BYTES)).isSameAs(pooledBuffer);
+    }
+}
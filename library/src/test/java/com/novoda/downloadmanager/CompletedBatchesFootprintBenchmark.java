@@ -0,0 +1,116 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static com.novoda.downloadmanager.DownloadsBatchPersistedFixtures.aDownloadsBatchPersisted;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+import static com.novoda.downloadmanager.FilePathFixtures.aFilePath;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Loads a large library of stored batches, once as paused batches that hold their files hydrated
+ * and once as completed batches that keep them as persisted, and prints the heap retained by each.
+ * Run it manually, heap measurements on a shared build machine are not reliable enough to assert on.
+ */
+@Ignore("Benchmark, run manually")
+public class CompletedBatchesFootprintBenchmark {
+
+    private static final int NUMBER_OF_BATCHES = 10_000;
+    private static final int FILES_PER_BATCH = 3;
+    private static final long FILE_SIZE_IN_BYTES = 1024 * 1024;
+    private static final double BYTES_IN_MEGABYTE = 1024 * 1024;
+
+    @Test
+    public void loadStoredBatches() {
+        long hydratedBytes = retainedBytesOfLoading(DownloadBatchStatus.Status.PAUSED);
+        long persistedBytes = retainedBytesOfLoading(DownloadBatchStatus.Status.DOWNLOADED);
+
+        System.out.println(String.format(
+                Locale.US,
+                "%d batches of %d files: hydrated %.1f MB, kept as persisted %.1f MB",
+                NUMBER_OF_BATCHES,
+                FILES_PER_BATCH,
+                hydratedBytes / BYTES_IN_MEGABYTE,
+                persistedBytes / BYTES_IN_MEGABYTE
+        ));
+    }
+
+    private static long retainedBytesOfLoading(DownloadBatchStatus.Status status) {
+        FakeDownloadsPersistence downloadsPersistence = new FakeDownloadsPersistence(aLibraryOfBatches(status));
+        DownloadsBatchPersistence downloadsBatchPersistence = new DownloadsBatchPersistence(
+                Runnable::run,
+                new DownloadsFilePersistence(downloadsPersistence),
+                downloadsPersistence,
+                CallbackThrottleCreator.byProgressIncrease(),
+                mock(ConnectionChecker.class),
+                mock(PendingBatchUpdates.class)
+        );
+        FileOperations fileOperations = aFileOperations();
+        List<DownloadBatch> loadedBatches = new ArrayList<>(NUMBER_OF_BATCHES);
+
+        long usedBytesBefore = usedHeapInBytes();
+        downloadsBatchPersistence.loadAsync(fileOperations, loadedBatches::addAll);
+        long usedBytesAfter = usedHeapInBytes();
+
+        if (loadedBatches.size() != NUMBER_OF_BATCHES) {
+            throw new IllegalStateException("Loaded " + loadedBatches.size() + " batches instead of " + NUMBER_OF_BATCHES);
+        }
+        return usedBytesAfter - usedBytesBefore;
+    }
+
+    private static Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> aLibraryOfBatches(DownloadBatchStatus.Status status) {
+        Map<DownloadsBatchPersisted, List<DownloadsFilePersisted>> filesByBatches = new HashMap<>(NUMBER_OF_BATCHES);
+        for (int i = 0; i < NUMBER_OF_BATCHES; i++) {
+            String rawBatchId = "batch_" + i;
+            DownloadsBatchPersisted batchPersisted = aDownloadsBatchPersisted()
+                    .withRawDownloadBatchId(rawBatchId)
+                    .withDownloadBatchStatus(status)
+                    .build();
+
+            List<DownloadsFilePersisted> filePersistedList = new ArrayList<>(FILES_PER_BATCH);
+            for (int j = 0; j < FILES_PER_BATCH; j++) {
+                String rawFileId = rawBatchId + "_file_" + j;
+                filePersistedList.add(aDownloadsFilePersisted()
+                                              .withDownloadBatchId(aDownloadBatchId().withRawDownloadBatchId(rawBatchId).build())
+                                              .withDownloadFileId(aDownloadFileId().withRawDownloadFileId(rawFileId).build())
+                                              .withFilePath(aFilePath().withRawPath("/storage/root/" + rawFileId).build())
+                                              .withTotalFileSize(FILE_SIZE_IN_BYTES)
+                                              .withDownloadedBytes(FILE_SIZE_IN_BYTES)
+                                              .withUrl("http://example.com/" + rawFileId)
+                                              .build());
+            }
+            filesByBatches.put(batchPersisted, filePersistedList);
+        }
+        return filesByBatches;
+    }
+
+    private static FileOperations aFileOperations() {
+        return new FileOperations(
+                new FilePersistenceCreator(mock(Context.class)),
+                mock(FileSizeRequester.class),
+                FileDownloaderCreator.newNetworkFileDownloaderCreator(mock(HttpClient.class)),
+                FileDownloadExecutor.parallel(1),
+                FileDownloadExecutor.parallel(1),
+                SharedFileDownloads.disabled()
+        );
+    }
+
+    private static long usedHeapInBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
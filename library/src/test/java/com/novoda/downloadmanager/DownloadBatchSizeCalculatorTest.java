@@ -0,0 +1,76 @@
+package com.novoda.downloadmanager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DownloadBatchSizeCalculatorTest {
+
+    private static final int ONE_REQUEST_AT_ONCE = 1;
+    private static final int TWO_REQUESTS_AT_ONCE = 2;
+
+    private final AtomicReference<DownloadBatchStatus.Status> status = new AtomicReference<>(DownloadBatchStatus.Status.DOWNLOADING);
+    private final InternalDownloadBatchStatus downloadBatchStatus = mock(InternalDownloadBatchStatus.class);
+    private final DownloadFile firstFile = mock(DownloadFile.class);
+    private final DownloadFile secondFile = mock(DownloadFile.class);
+    private final DownloadFile thirdFile = mock(DownloadFile.class);
+    private final List<DownloadFile> downloadFiles = Arrays.asList(firstFile, secondFile, thirdFile);
+
+    @Before
+    public void setUp() {
+        given(downloadBatchStatus.getDownloadBatchId()).willReturn(aDownloadBatchId().build());
+        willAnswer(invocation -> status.get()).given(downloadBatchStatus).status();
+        given(firstFile.id()).willReturn(DownloadFileIdCreator.createFrom("first"));
+        given(secondFile.id()).willReturn(DownloadFileIdCreator.createFrom("second"));
+        given(thirdFile.id()).willReturn(DownloadFileIdCreator.createFrom("third"));
+        given(firstFile.getTotalSize()).willReturn(100L);
+        given(secondFile.getTotalSize()).willReturn(200L);
+        given(thirdFile.getTotalSize()).willReturn(300L);
+    }
+
+    @Test
+    public void sumsFileSizes_whenRequestedConcurrently() {
+        long totalSize = DownloadBatchSizeCalculator.getTotalSize(downloadFiles, downloadBatchStatus, parallelExecutor(TWO_REQUESTS_AT_ONCE));
+
+        assertThat(totalSize).isEqualTo(600L);
+    }
+
+    @Test
+    public void returnsZero_whenAnyFileSizeIsUnknown() {
+        given(secondFile.getTotalSize()).willReturn(0L);
+
+        long totalSize = DownloadBatchSizeCalculator.getTotalSize(downloadFiles, downloadBatchStatus, parallelExecutor(TWO_REQUESTS_AT_ONCE));
+
+        assertThat(totalSize).isEqualTo(0L);
+    }
+
+    @Test
+    public void stopsRequestingSizes_whenBatchIsPausedMidRequest() {
+        willAnswer(invocation -> {
+            status.set(DownloadBatchStatus.Status.PAUSED);
+            return 100L;
+        }).given(firstFile).getTotalSize();
+
+        long totalSize = DownloadBatchSizeCalculator.getTotalSize(downloadFiles, downloadBatchStatus, parallelExecutor(ONE_REQUEST_AT_ONCE));
+
+        assertThat(totalSize).isEqualTo(0L);
+        verify(secondFile, never()).getTotalSize();
+        verify(thirdFile, never()).getTotalSize();
+    }
+
+    private static FileDownloadExecutor parallelExecutor(int parallelism) {
+        return new FileDownloadExecutor(Executors.newCachedThreadPool(), parallelism);
+    }
+}
@@ -3,6 +3,7 @@ package com.novoda.downloadmanager;
 import org.junit.Test;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
 import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
 
 public class DownloadBatchStatusFilterTest {
@@ -24,6 +25,17 @@ public class DownloadBatchStatusFilterTest {
     private final InternalDownloadBatchStatus secondStatus = anInternalDownloadsBatchStatus()
             .withStatus(DownloadBatchStatus.Status.DOWNLOADED)
             .build();
+    private final InternalDownloadBatchStatus otherBatchStatus = anInternalDownloadsBatchStatus()
+            .withDownloadBatchId(aDownloadBatchId().withRawDownloadBatchId("other").build())
+            .build();
+    private final InternalDownloadBatchStatus firstBytesStatus = anInternalDownloadsBatchStatus()
+            .withBytesDownloaded(100)
+            .withBytesTotalSize(1000)
+            .build();
+    private final InternalDownloadBatchStatus secondBytesStatus = anInternalDownloadsBatchStatus()
+            .withBytesDownloaded(101)
+            .withBytesTotalSize(1000)
+            .build();
 
     private final DownloadBatchStatusFilter downloadBatchStatusFilter = new DownloadBatchStatusFilter();
 
@@ -81,6 +93,46 @@ public class DownloadBatchStatusFilterTest {
         assertThat(shouldFilterOut).isTrue();
     }
 
+    @Test
+    public void returnsFalse_whenBytesDoNotMatchPrevious() {
+        givenPreviousUpdate(firstBytesStatus);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(secondBytesStatus);
+
+        assertThat(shouldFilterOut).isFalse();
+    }
+
+    @Test
+    public void returnsTrue_whenStatusIsUnchangedForTheBatch_andAnotherBatchUpdatedInBetween() {
+        givenPreviousUpdate(firstStatus);
+        givenPreviousUpdate(otherBatchStatus);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(firstStatus);
+
+        assertThat(shouldFilterOut).isTrue();
+    }
+
+    @Test
+    public void returnsFalse_whenAnotherBatchHasTheSameStatus() {
+        givenPreviousUpdate(firstStatus);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(otherBatchStatus);
+
+        assertThat(shouldFilterOut).isFalse();
+    }
+
+    @Test
+    public void forgetsBatch_onceDeleted() {
+        InternalDownloadBatchStatus deletedStatus = anInternalDownloadsBatchStatus()
+                .withStatus(DownloadBatchStatus.Status.DELETED)
+                .build();
+        givenPreviousUpdate(deletedStatus);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(deletedStatus);
+
+        assertThat(shouldFilterOut).isFalse();
+    }
+
     private void givenPreviousUpdate(InternalDownloadBatchStatus downloadBatchStatus) {
         downloadBatchStatusFilter.shouldFilterOut(downloadBatchStatus);
     }
@@ -0,0 +1,173 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static com.novoda.downloadmanager.DownloadsBatchPersistedFixtures.aDownloadsBatchPersisted;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DownloadBatchTest {
+
+    private static final String RAW_BATCH_ID = "batch";
+    private static final DownloadBatchId DOWNLOAD_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId(RAW_BATCH_ID).build();
+    private static final DownloadFileId DOWNLOAD_FILE_ID = aDownloadFileId().build();
+
+    private final DownloadsPersistence downloadsPersistence = mock(DownloadsPersistence.class);
+    private final PendingBatchUpdates pendingBatchUpdates = new PendingBatchUpdates(Runnable::run, downloadsPersistence, mock(ActionScheduler.class));
+    private final DownloadsBatchPersistence downloadsBatchPersistence = new DownloadsBatchPersistence(
+            Runnable::run,
+            new DownloadsFilePersistence(downloadsPersistence),
+            downloadsPersistence,
+            CallbackThrottleCreator.byProgressIncrease(),
+            mock(ConnectionChecker.class),
+            pendingBatchUpdates
+    );
+    private final DownloadBatchStatusCallback callback = mock(DownloadBatchStatusCallback.class);
+    private final DownloadFile downloadFile = mock(DownloadFile.class);
+
+    private DownloadBatch downloadBatch;
+
+    @Before
+    public void setUp() {
+        given(downloadFile.id()).willReturn(DOWNLOAD_FILE_ID);
+        downloadBatch = new DownloadBatch(
+                anInternalDownloadsBatchStatus()
+                        .withDownloadBatchId(DOWNLOAD_BATCH_ID)
+                        .withStatus(DownloadBatchStatus.Status.DOWNLOADING)
+                        .build(),
+                Collections.singletonList(downloadFile),
+                downloadsBatchPersistence,
+                mock(FileCallbackThrottle.class),
+                mock(ConnectionChecker.class),
+                FileDownloadExecutor.sequential(),
+                FileDownloadExecutor.sequential()
+        );
+        downloadBatch.setCallback(callback);
+    }
+
+    @Test
+    public void stopsFilesWithoutPausingThem_whenPreempted() {
+        downloadBatch.preempt();
+
+        verify(downloadFile).preempt();
+        verify(downloadFile, never()).pause();
+        assertThat(downloadBatch.status().status()).isEqualTo(DownloadBatchStatus.Status.QUEUED);
+    }
+
+    @Test
+    public void doesNotPersistPausedStatus_whenPreempted() {
+        downloadBatch.preempt();
+        pendingBatchUpdates.flush();
+
+        verify(downloadsPersistence).update(DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        verify(downloadsPersistence, never()).update(DOWNLOAD_BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+    }
+
+    @Test
+    public void reloadsAsQueued_whenPreempted() {
+        downloadBatch.preempt();
+        pendingBatchUpdates.flush();
+        ArgumentCaptor<DownloadBatchStatus.Status> persistedStatus = ArgumentCaptor.forClass(DownloadBatchStatus.Status.class);
+        verify(downloadsPersistence).update(eq(DOWNLOAD_BATCH_ID), persistedStatus.capture());
+
+        List<DownloadBatch> reloadedBatches = reloadBatchWith(persistedStatus.getValue());
+
+        assertThat(reloadedBatches.get(0).status().status()).isEqualTo(DownloadBatchStatus.Status.QUEUED);
+    }
+
+    @Test
+    public void requeues_whenPreemptedAndNotPausedInTheMeantime() {
+        downloadBatch.preempt();
+
+        boolean requeued = downloadBatch.requeueAfterPreemption();
+
+        assertThat(requeued).isTrue();
+    }
+
+    @Test
+    public void doesNotRequeue_whenPausedWhilePreempted() {
+        downloadBatch.preempt();
+        downloadBatch.pause();
+
+        boolean requeued = downloadBatch.requeueAfterPreemption();
+
+        assertThat(requeued).isFalse();
+    }
+
+    @Test
+    public void doesNotHydrateFiles_whenCompletedBatchIsMarkedAsDeleting() {
+        DownloadsFilePersistence downloadsFilePersistence = mock(DownloadsFilePersistence.class);
+        DownloadBatch completedBatch = new DownloadBatch(
+                anInternalDownloadsBatchStatus()
+                        .withDownloadBatchId(DOWNLOAD_BATCH_ID)
+                        .withStatus(DownloadBatchStatus.Status.DOWNLOADED)
+                        .build(),
+                new PersistedDownloadFiles(DOWNLOAD_BATCH_ID, Collections.emptyList(), aFileOperations(), downloadsFilePersistence),
+                downloadsBatchPersistence,
+                mock(FileCallbackThrottle.class),
+                mock(ConnectionChecker.class),
+                FileDownloadExecutor.sequential(),
+                FileDownloadExecutor.sequential()
+        );
+
+        completedBatch.markAsDeleting();
+
+        verify(downloadsFilePersistence, never()).loadSync(any(), any(), anyList(), any(), any());
+    }
+
+    private static List<DownloadBatch> reloadBatchWith(DownloadBatchStatus.Status status) {
+        DownloadsBatchPersisted batchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId(RAW_BATCH_ID)
+                .withDownloadBatchStatus(status)
+                .build();
+        DownloadsFilePersisted filePersisted = aDownloadsFilePersisted()
+                .withDownloadBatchId(DOWNLOAD_BATCH_ID)
+                .withDownloadFileId(DOWNLOAD_FILE_ID)
+                .withDownloadedBytes(0)
+                .build();
+        FakeDownloadsPersistence storedDownloads = new FakeDownloadsPersistence(
+                Collections.singletonMap(batchPersisted, Collections.singletonList(filePersisted))
+        );
+        DownloadsBatchPersistence reloadingPersistence = new DownloadsBatchPersistence(
+                Runnable::run,
+                new DownloadsFilePersistence(storedDownloads),
+                storedDownloads,
+                CallbackThrottleCreator.byProgressIncrease(),
+                mock(ConnectionChecker.class),
+                mock(PendingBatchUpdates.class)
+        );
+
+        List<DownloadBatch> reloadedBatches = new ArrayList<>();
+        reloadingPersistence.loadAsync(aFileOperations(), reloadedBatches::addAll);
+        return reloadedBatches;
+    }
+
+    private static FileOperations aFileOperations() {
+        return new FileOperations(
+                new FilePersistenceCreator(mock(Context.class)),
+                mock(FileSizeRequester.class),
+                FileDownloaderCreator.newNetworkFileDownloaderCreator(mock(HttpClient.class)),
+                FileDownloadExecutor.sequential(),
+                FileDownloadExecutor.sequential(),
+                SharedFileDownloads.disabled()
+        );
+    }
+}
@@ -17,9 +17,11 @@ class DownloadFileFixtures {
     private FilePath filePath = aFilePath().build();
     private InternalFileSize fileSize = aFileSize().build();
     private FileDownloader fileDownloader = mock(FileDownloader.class);
+    private SegmentedFileDownloader segmentedFileDownloader = SegmentedFileDownloader.disabled();
     private FileSizeRequester fileSizeRequester = new InMemoryFileSizeRequester();
     private FilePersistence filePersistence = aFilePersistence().build();
     private DownloadsFilePersistence downloadsFilePersistence = mock(DownloadsFilePersistence.class);
+    private SharedFileDownloads sharedFileDownloads = SharedFileDownloads.disabled();
 
     static DownloadFileFixtures aDownloadFile() {
         return new DownloadFileFixtures();
@@ -75,6 +77,11 @@ class DownloadFileFixtures {
         return this;
     }
 
+    DownloadFileFixtures withSharedFileDownloads(SharedFileDownloads sharedFileDownloads) {
+        this.sharedFileDownloads = sharedFileDownloads;
+        return this;
+    }
+
     DownloadFile build() {
         return new DownloadFile(
                 downloadBatchId,
@@ -84,9 +91,12 @@ class DownloadFileFixtures {
                 filePath,
                 fileSize,
                 fileDownloader,
+                segmentedFileDownloader,
                 fileSizeRequester,
                 filePersistence,
-                downloadsFilePersistence
+                downloadsFilePersistence,
+                sharedFileDownloads,
+                AdaptiveConnectionLimit.disabled()
         );
     }
 }
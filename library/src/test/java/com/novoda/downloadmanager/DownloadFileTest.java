@@ -0,0 +1,104 @@
+package com.novoda.downloadmanager;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadFileFixtures.aDownloadFile;
+import static com.novoda.downloadmanager.DownloadFileStatusFixtures.aDownloadFileStatus;
+import static com.novoda.downloadmanager.InternalFileSizeFixtures.aFileSize;
+
+public class DownloadFileTest {
+
+    private static final long TIMEOUT_IN_SECONDS = 1;
+
+    private final StallingHttpClient httpClient = new StallingHttpClient();
+    private final DownloadFile downloadFile = aDownloadFile()
+            .withFileSize(aFileSize().withTotalSizeKnown(false).withTotalSizeUnknown(true).build())
+            .withFileSizeRequester(new NetworkFileSizeRequester(httpClient, new NetworkRequestCreator()))
+            .build();
+
+    @Test
+    public void abortsSizeRequest_whenPaused() throws InterruptedException {
+        CountDownLatch sizeRequestReturned = new CountDownLatch(1);
+        new Thread(() -> {
+            downloadFile.getTotalSize();
+            sizeRequestReturned.countDown();
+        }).start();
+        httpClient.requestStarted.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+
+        downloadFile.pause();
+
+        assertThat(sizeRequestReturned.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void abortsSizeRequest_whenDeleted() throws InterruptedException {
+        CountDownLatch sizeRequestReturned = new CountDownLatch(1);
+        new Thread(() -> {
+            downloadFile.getTotalSize();
+            sizeRequestReturned.countDown();
+        }).start();
+        httpClient.requestStarted.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+
+        downloadFile.delete();
+
+        assertThat(sizeRequestReturned.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void skipsSizeRequestOfCustomRequester_whenPaused() {
+        AtomicInteger sizeRequests = new AtomicInteger();
+        DownloadFile pausedDownloadFile = aDownloadFile()
+                .withDownloadFileStatus(aDownloadFileStatus().withStatus(InternalDownloadFileStatus.Status.PAUSED).build())
+                .withFileSize(aFileSize().withTotalSizeKnown(false).withTotalSizeUnknown(true).build())
+                .withFileSizeRequester(url -> {
+                    sizeRequests.incrementAndGet();
+                    return FileSizeCreator.unknownFileSize();
+                })
+                .build();
+
+        pausedDownloadFile.getTotalSize();
+
+        assertThat(sizeRequests.get()).isEqualTo(0);
+    }
+
+    /**
+     * Never answers a request, which only returns once it is cancelled.
+     */
+    private static class StallingHttpClient implements CancellableHttpClient {
+
+        private final CountDownLatch requestStarted = new CountDownLatch(1);
+
+        @Override
+        public NetworkCall newCall(NetworkRequest networkRequest) {
+            CountDownLatch cancelled = new CountDownLatch(1);
+            return new NetworkCall() {
+                @Override
+                public NetworkResponse execute() throws IOException {
+                    requestStarted.countDown();
+                    try {
+                        cancelled.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IOException("Canceled");
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled.countDown();
+                }
+            };
+        }
+
+        @Override
+        public NetworkResponse execute(NetworkRequest networkRequest) throws IOException {
+            throw new UnsupportedOperationException("Requests are made through newCall");
+        }
+    }
+}
@@ -9,6 +9,7 @@ final class DownloadsBatchPersistedFixtures {
     private long downloadedDateTimeInMillis = 123456789L;
     private boolean notificationSeen = false;
     private String storageRoot = "/storage/root/";
+    private int priority = Batch.DEFAULT_PRIORITY;
 
     static DownloadsBatchPersistedFixtures aDownloadsBatchPersisted() {
         return new DownloadsBatchPersistedFixtures();
@@ -23,6 +24,11 @@ final class DownloadsBatchPersistedFixtures {
         return this;
     }
 
+    DownloadsBatchPersistedFixtures withDownloadBatchId(DownloadBatchId downloadBatchId) {
+        this.downloadBatchId = downloadBatchId;
+        return this;
+    }
+
     DownloadsBatchPersistedFixtures withDownloadBatchStatus(DownloadBatchStatus.Status status) {
         this.downloadBatchStatus = status;
         return this;
@@ -53,6 +59,11 @@ final class DownloadsBatchPersistedFixtures {
         return this;
     }
 
+    DownloadsBatchPersistedFixtures withPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
     DownloadsBatchPersisted build() {
         return new DownloadsBatchPersisted() {
             @Override
@@ -84,6 +95,11 @@ final class DownloadsBatchPersistedFixtures {
             public String storageRoot() {
                 return storageRoot;
             }
+
+            @Override
+            public int priority() {
+                return priority;
+            }
         };
     }
 }
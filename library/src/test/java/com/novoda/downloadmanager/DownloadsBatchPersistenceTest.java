@@ -0,0 +1,81 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static com.novoda.downloadmanager.DownloadsBatchPersistedFixtures.aDownloadsBatchPersisted;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+import static org.mockito.Mockito.mock;
+
+public class DownloadsBatchPersistenceTest {
+
+    private static final String RAW_BATCH_ID = "batch";
+    private static final DownloadFileId DOWNLOAD_FILE_ID = aDownloadFileId().build();
+    private static final long TOTAL_FILE_SIZE = 1000;
+
+    @Test
+    public void loadsFilesWithTheirBatch_whenTheIdsDoNotImplementEquals() {
+        DownloadsBatchPersisted batchPersisted = aDownloadsBatchPersisted()
+                .withDownloadBatchId(new IdentityDownloadBatchId(RAW_BATCH_ID))
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.DOWNLOADED)
+                .build();
+        DownloadsFilePersisted filePersisted = aDownloadsFilePersisted()
+                .withDownloadBatchId(new IdentityDownloadBatchId(RAW_BATCH_ID))
+                .withDownloadFileId(DOWNLOAD_FILE_ID)
+                .withTotalFileSize(TOTAL_FILE_SIZE)
+                .build();
+        FakeDownloadsPersistence storedDownloads = new FakeDownloadsPersistence(
+                Collections.singletonMap(batchPersisted, Collections.singletonList(filePersisted))
+        );
+        DownloadsBatchPersistence downloadsBatchPersistence = new DownloadsBatchPersistence(
+                Runnable::run,
+                new DownloadsFilePersistence(storedDownloads),
+                storedDownloads,
+                CallbackThrottleCreator.byProgressIncrease(),
+                mock(ConnectionChecker.class),
+                mock(PendingBatchUpdates.class)
+        );
+
+        List<DownloadBatch> loadedBatches = new ArrayList<>();
+        downloadsBatchPersistence.loadAsync(aFileOperations(), loadedBatches::addAll);
+
+        DownloadBatch loadedBatch = loadedBatches.get(0);
+        assertThat(loadedBatch.status().bytesTotalSize()).isEqualTo(TOTAL_FILE_SIZE);
+        assertThat(loadedBatch.downloadFileStatusWith(DOWNLOAD_FILE_ID)).isNotNull();
+    }
+
+    private static FileOperations aFileOperations() {
+        return new FileOperations(
+                new FilePersistenceCreator(mock(Context.class)),
+                mock(FileSizeRequester.class),
+                FileDownloaderCreator.newNetworkFileDownloaderCreator(mock(HttpClient.class)),
+                FileDownloadExecutor.sequential(),
+                FileDownloadExecutor.sequential(),
+                SharedFileDownloads.disabled()
+        );
+    }
+
+    /**
+     * A custom persistence may return ids that, like this one, only compare by identity.
+     */
+    private static class IdentityDownloadBatchId implements DownloadBatchId {
+
+        private final String rawId;
+
+        IdentityDownloadBatchId(String rawId) {
+            this.rawId = rawId;
+        }
+
+        @Override
+        public String rawId() {
+            return rawId;
+        }
+    }
+}
@@ -3,9 +3,13 @@ package com.novoda.downloadmanager;
 import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
 
 class DownloadsFilePersistedFixtures {
+
+    private static final long UNKNOWN_DOWNLOADED_BYTES = -1;
+
     private DownloadBatchId downloadBatchId = aDownloadBatchId().build();
     private FilePath filePath;
     private long totalFileSize;
+    private long downloadedBytes = UNKNOWN_DOWNLOADED_BYTES;
     private String url;
     private DownloadFileId downloadFileId;
 
@@ -32,6 +36,11 @@ class DownloadsFilePersistedFixtures {
         return this;
     }
 
+    DownloadsFilePersistedFixtures withDownloadedBytes(long downloadedBytes) {
+        this.downloadedBytes = downloadedBytes;
+        return this;
+    }
+
     DownloadsFilePersistedFixtures withUrl(String url) {
         this.url = url;
         return this;
@@ -59,6 +68,11 @@ class DownloadsFilePersistedFixtures {
                 return totalFileSize;
             }
 
+            @Override
+            public long downloadedBytes() {
+                return downloadedBytes;
+            }
+
             @Override
             public String url() {
                 return url;
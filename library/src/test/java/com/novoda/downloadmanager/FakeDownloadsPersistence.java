@@ -79,6 +79,11 @@ class FakeDownloadsPersistence implements DownloadsPersistence {
         return true;
     }
 
+    @Override
+    public boolean update(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId, long downloadedBytes) {
+        return true;
+    }
+
     @Override
     public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
         // no-op
@@ -0,0 +1,102 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class FileBytesAccumulatorTest {
+
+    private static final int UPDATES_PER_FILE = 10_000;
+
+    private final DownloadFileId firstFileId = DownloadFileIdCreator.createFrom("first");
+    private final DownloadFileId secondFileId = DownloadFileIdCreator.createFrom("second");
+    private final DownloadFile firstFile = mock(DownloadFile.class);
+    private final DownloadFile secondFile = mock(DownloadFile.class);
+
+    private FileBytesAccumulator accumulator;
+
+    @Before
+    public void setUp() {
+        given(firstFile.id()).willReturn(firstFileId);
+        given(secondFile.id()).willReturn(secondFileId);
+        accumulator = FileBytesAccumulator.forFilesOf(Arrays.asList(firstFile, secondFile));
+    }
+
+    @Test
+    public void sumsTheLatestBytesOfEveryFile() {
+        accumulator.update(firstFileId, 100);
+        accumulator.update(secondFileId, 50);
+
+        long totalBytes = accumulator.update(firstFileId, 150);
+
+        assertThat(totalBytes).isEqualTo(200L);
+    }
+
+    @Test
+    public void returnsTheLatestBytesOfAFile() {
+        accumulator.update(firstFileId, 100);
+        accumulator.update(firstFileId, 150);
+
+        assertThat(accumulator.bytesOf(firstFileId)).isEqualTo(150L);
+    }
+
+    @Test
+    public void ignoresFiles_thatDoNotBelongToTheBatch() {
+        accumulator.update(firstFileId, 100);
+
+        long totalBytes = accumulator.update(DownloadFileIdCreator.createFrom("unknown"), 50);
+
+        assertThat(totalBytes).isEqualTo(100L);
+    }
+
+    @Test
+    public void hasBytesForEveryFile_onceEachFileIsUpdated() {
+        accumulator.update(firstFileId, 100);
+        boolean hasBytesForEveryFileBefore = accumulator.hasBytesForEveryFile();
+
+        accumulator.update(secondFileId, 50);
+
+        assertThat(hasBytesForEveryFileBefore).isFalse();
+        assertThat(accumulator.hasBytesForEveryFile()).isTrue();
+    }
+
+    @Test
+    public void doesNotHaveBytesForEveryFile_whenAFileIsResetToZero() {
+        accumulator.update(firstFileId, 100);
+        accumulator.update(secondFileId, 50);
+
+        accumulator.update(secondFileId, 0);
+
+        assertThat(accumulator.hasBytesForEveryFile()).isFalse();
+    }
+
+    @Test
+    public void keepsAnExactTotal_whenFilesAreUpdatedConcurrently() throws ExecutionException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<?>> updates = new ArrayList<>();
+        for (DownloadFileId downloadFileId : Arrays.asList(firstFileId, secondFileId)) {
+            updates.add(executor.submit(() -> {
+                for (int bytes = 1; bytes <= UPDATES_PER_FILE; bytes++) {
+                    accumulator.update(downloadFileId, bytes);
+                }
+            }));
+        }
+        for (Future<?> update : updates) {
+            update.get();
+        }
+        executor.shutdown();
+
+        assertThat(accumulator.totalBytes()).isEqualTo(2L * UPDATES_PER_FILE);
+    }
+}
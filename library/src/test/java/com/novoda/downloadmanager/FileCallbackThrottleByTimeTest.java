@@ -15,6 +15,7 @@ public class FileCallbackThrottleByTimeTest {
     private final ActionScheduler actionScheduler = mock(ActionScheduler.class);
     private final DownloadBatchStatusCallback callback = mock(DownloadBatchStatusCallback.class);
     private final DownloadBatchStatus downloadBatchStatus = mock(DownloadBatchStatus.class);
+    private final ArgumentCaptor<ActionScheduler.Action> argumentCaptor = ArgumentCaptor.forClass(ActionScheduler.Action.class);
 
     private FileCallbackThrottleByTime callbackThrottleByTime;
 
@@ -22,7 +23,6 @@ public class FileCallbackThrottleByTimeTest {
     public void setUp() {
         callbackThrottleByTime = new FileCallbackThrottleByTime(actionScheduler);
 
-        final ArgumentCaptor<ActionScheduler.Action> argumentCaptor = ArgumentCaptor.forClass(ActionScheduler.Action.class);
         willAnswer(new Answer<Void>() {
             @Override
             public Void answer(InvocationOnMock invocation) throws Throwable {
@@ -58,6 +58,40 @@ public class FileCallbackThrottleByTimeTest {
         verify(callback).onUpdate(downloadBatchStatus);
     }
 
+    @Test
+    public void doesNotEmitTheSameStatusTwice_whenTicking() {
+        callbackThrottleByTime.setCallback(callback);
+        callbackThrottleByTime.update(downloadBatchStatus);
+
+        argumentCaptor.getValue().perform();
+
+        verify(callback, times(1)).onUpdate(downloadBatchStatus);
+    }
+
+    @Test
+    public void cancelsAction_whenTickingWithoutNewStatus() {
+        callbackThrottleByTime.setCallback(callback);
+        callbackThrottleByTime.update(downloadBatchStatus);
+        ActionScheduler.Action action = argumentCaptor.getValue();
+
+        action.perform();
+
+        verify(actionScheduler).cancel(action);
+    }
+
+    @Test
+    public void emitsNewStatus_whenTickingAfterAnUpdate() {
+        DownloadBatchStatus newDownloadBatchStatus = mock(DownloadBatchStatus.class);
+        given(actionScheduler.isScheduled(any(ActionScheduler.Action.class))).willReturn(false, true);
+        callbackThrottleByTime.setCallback(callback);
+        callbackThrottleByTime.update(downloadBatchStatus);
+        callbackThrottleByTime.update(newDownloadBatchStatus);
+
+        argumentCaptor.getValue().perform();
+
+        verify(callback).onUpdate(newDownloadBatchStatus);
+    }
+
     @Test
     public void cancelsAllScheduledActions_whenStoppingUpdates() {
         callbackThrottleByTime.stopUpdates();
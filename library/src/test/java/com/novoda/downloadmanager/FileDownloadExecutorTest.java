@@ -0,0 +1,89 @@
+package com.novoda.downloadmanager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class FileDownloadExecutorTest {
+
+    private static final int TWO_FILES_AT_ONCE = 2;
+    private static final FileDownloadExecutor.BatchCanContinue ALWAYS_CONTINUE = () -> true;
+
+    private final DownloadFile firstFile = mock(DownloadFile.class);
+    private final DownloadFile secondFile = mock(DownloadFile.class);
+    private final DownloadFile thirdFile = mock(DownloadFile.class);
+    private final List<DownloadFile> downloadFiles = Arrays.asList(firstFile, secondFile, thirdFile);
+    private final DownloadFile.Callback callback = mock(DownloadFile.Callback.class);
+
+    @Test
+    public void downloadsAllFiles_whenSequential() {
+        FileDownloadExecutor executor = FileDownloadExecutor.sequential();
+
+        executor.download(downloadFiles, callback, ALWAYS_CONTINUE);
+
+        verify(firstFile).download(callback);
+        verify(secondFile).download(callback);
+        verify(thirdFile).download(callback);
+    }
+
+    @Test
+    public void downloadsAllFiles_whenParallel() {
+        FileDownloadExecutor executor = new FileDownloadExecutor(Executors.newCachedThreadPool(), TWO_FILES_AT_ONCE);
+
+        executor.download(downloadFiles, callback, ALWAYS_CONTINUE);
+
+        verify(firstFile).download(callback);
+        verify(secondFile).download(callback);
+        verify(thirdFile).download(callback);
+    }
+
+    @Test
+    public void downloadsFilesAtTheSameTime_whenParallel() throws InterruptedException {
+        CountDownLatch bothFilesStarted = new CountDownLatch(TWO_FILES_AT_ONCE);
+        CountDownLatch bothFilesSeenTogether = new CountDownLatch(TWO_FILES_AT_ONCE);
+        givenFileWaitsForOtherFile(firstFile, bothFilesStarted, bothFilesSeenTogether);
+        givenFileWaitsForOtherFile(secondFile, bothFilesStarted, bothFilesSeenTogether);
+        FileDownloadExecutor executor = new FileDownloadExecutor(Executors.newCachedThreadPool(), TWO_FILES_AT_ONCE);
+
+        executor.download(Arrays.asList(firstFile, secondFile), callback, ALWAYS_CONTINUE);
+
+        assertThat(bothFilesSeenTogether.await(0, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    @Test
+    public void doesNotStartFiles_whenBatchCannotContinue() {
+        FileDownloadExecutor executor = new FileDownloadExecutor(Executors.newCachedThreadPool(), TWO_FILES_AT_ONCE);
+
+        executor.download(downloadFiles, callback, () -> false);
+
+        verify(firstFile, never()).download(any(DownloadFile.Callback.class));
+        verify(secondFile, never()).download(any(DownloadFile.Callback.class));
+        verify(thirdFile, never()).download(any(DownloadFile.Callback.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsException_whenParallelismIsLessThanOne() {
+        FileDownloadExecutor.parallel(0);
+    }
+
+    private void givenFileWaitsForOtherFile(DownloadFile downloadFile, CountDownLatch bothFilesStarted, CountDownLatch bothFilesSeenTogether) {
+        willAnswer(invocation -> {
+            bothFilesStarted.countDown();
+            if (bothFilesStarted.await(1, TimeUnit.SECONDS)) {
+                bothFilesSeenTogether.countDown();
+            }
+            return null;
+        }).given(downloadFile).download(callback);
+    }
+}
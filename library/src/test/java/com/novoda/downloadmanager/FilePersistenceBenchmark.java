@@ -0,0 +1,78 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static com.novoda.downloadmanager.FilePathFixtures.aFilePath;
+import static com.novoda.downloadmanager.InternalFileSizeFixtures.aFileSize;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Writes the same file in network sized chunks through each {@link FilePersistence} and prints the throughput.
+ * Run it manually, timings on a shared build machine are not meaningful enough to assert on.
+ */
+@Ignore("Benchmark, run manually")
+public class FilePersistenceBenchmark {
+
+    private static final int NETWORK_READ_SIZE_IN_BYTES = 8 * 512;
+    private static final int CHANNEL_BUFFER_SIZE_IN_BYTES = 256 * 1024;
+    private static final long FILE_SIZE_IN_BYTES = 256L * 1024 * 1024;
+    private static final int WARM_UP_RUNS = 2;
+    private static final int MEASURED_RUNS = 5;
+    private static final double BYTES_IN_MEGABYTE = 1024 * 1024;
+    private static final double NANOS_IN_SECOND = 1_000_000_000;
+    private static final StorageRequirementRule NO_STORAGE_REQUIREMENT = (storageDirectory, downloadFileSize) -> false;
+
+    @Test
+    public void pathBasedFilePersistence() throws IOException {
+        benchmark("PathBasedFilePersistence", new PathBasedFilePersistence());
+    }
+
+    @Test
+    public void channelFilePersistence() throws IOException {
+        ByteBufferPool bufferPool = new ByteBufferPool(1);
+        benchmark("ChannelFilePersistence", new ChannelFilePersistence(bufferPool, CHANNEL_BUFFER_SIZE_IN_BYTES));
+    }
+
+    private static void benchmark(String name, FilePersistence filePersistence) throws IOException {
+        filePersistence.initialiseWith(mock(Context.class), NO_STORAGE_REQUIREMENT);
+        byte[] chunk = new byte[NETWORK_READ_SIZE_IN_BYTES];
+        new Random().nextBytes(chunk);
+
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            writeFile(filePersistence, chunk);
+        }
+
+        long totalNanos = 0;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            totalNanos += writeFile(filePersistence, chunk);
+        }
+
+        double megabytesPerSecond = (FILE_SIZE_IN_BYTES * MEASURED_RUNS / BYTES_IN_MEGABYTE) / (totalNanos / NANOS_IN_SECOND);
+        System.out.println(String.format(Locale.US, "%s: %.1f MB/s", name, megabytesPerSecond));
+    }
+
+    private static long writeFile(FilePersistence filePersistence, byte[] chunk) throws IOException {
+        File file = File.createTempFile("benchmark", ".bin");
+        FilePath filePath = aFilePath().withRawPath(file.getAbsolutePath()).build();
+        FileSize fileSize = aFileSize().withTotalSize(FILE_SIZE_IN_BYTES).build();
+        try {
+            long start = System.nanoTime();
+            filePersistence.create(filePath, fileSize);
+            for (long written = 0; written < FILE_SIZE_IN_BYTES; written += chunk.length) {
+                filePersistence.write(chunk, 0, chunk.length);
+            }
+            filePersistence.close();
+            return System.nanoTime() - start;
+        } finally {
+            file.delete();
+        }
+    }
+}
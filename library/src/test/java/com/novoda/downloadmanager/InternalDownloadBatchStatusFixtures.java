@@ -12,6 +12,7 @@ class InternalDownloadBatchStatusFixtures {
     private DownloadError downloadError = null;
     private long downloadedDateTimeInMillis = 123456789L;
     private boolean notificationSeen = false;
+    private int priority = Batch.DEFAULT_PRIORITY;
 
     static InternalDownloadBatchStatusFixtures anInternalDownloadsBatchStatus() {
         return new InternalDownloadBatchStatusFixtures();
@@ -67,6 +68,11 @@ class InternalDownloadBatchStatusFixtures {
         return this;
     }
 
+    InternalDownloadBatchStatusFixtures withPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
     InternalDownloadBatchStatus build() {
         return new LiteDownloadBatchStatus(
                 downloadBatchId,
@@ -77,7 +83,8 @@ class InternalDownloadBatchStatusFixtures {
                 bytesTotalSize,
                 status,
                 notificationSeen,
-                Optional.fromNullable(downloadError)
+                Optional.fromNullable(downloadError),
+                priority
         );
     }
 }
@@ -0,0 +1,119 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class LiteDownloadBatchStatusTest {
+
+    private static final int CONCURRENT_REQUESTS = 8;
+
+    private final DownloadsBatchStatusPersistence persistence = mock(DownloadsBatchStatusPersistence.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void persistsStatus_whenTransitionIsAllowed() {
+        InternalDownloadBatchStatus batchStatus = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.DOWNLOADING).build();
+
+        boolean paused = batchStatus.markAsPaused(persistence);
+
+        assertThat(paused).isTrue();
+        verify(persistence).updateStatusAsync(batchStatus.getDownloadBatchId(), DownloadBatchStatus.Status.PAUSED);
+    }
+
+    @Test
+    public void staysDeleting_whenPausedAfterDeletion() {
+        InternalDownloadBatchStatus batchStatus = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.DOWNLOADING).build();
+        batchStatus.markAsDeleting();
+
+        boolean paused = batchStatus.markAsPaused(persistence);
+
+        assertThat(paused).isFalse();
+        assertThat(batchStatus.status()).isEqualTo(DownloadBatchStatus.Status.DELETING);
+        verify(persistence, never()).updateStatusAsync(any(DownloadBatchId.class), any(DownloadBatchStatus.Status.class));
+    }
+
+    @Test
+    public void staysPaused_whenMarkedAsDownloadingBeforeBeingQueued() {
+        InternalDownloadBatchStatus batchStatus = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.PAUSED).build();
+
+        batchStatus.markAsDownloading(persistence);
+
+        assertThat(batchStatus.status()).isEqualTo(DownloadBatchStatus.Status.PAUSED);
+    }
+
+    @Test
+    public void keepsDownloadError_onlyWhenMarkedAsError() {
+        InternalDownloadBatchStatus batchStatus = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.DOWNLOADED).build();
+        DownloadError downloadError = mock(DownloadError.class);
+
+        batchStatus.markAsError(Optional.of(downloadError), persistence);
+
+        assertThat(batchStatus.status()).isEqualTo(DownloadBatchStatus.Status.DOWNLOADED);
+        assertThat(batchStatus.downloadError()).isNull();
+    }
+
+    @Test
+    public void hasDownloadError_whenSeenInError() throws ExecutionException, InterruptedException {
+        InternalDownloadBatchStatus batchStatus = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.DOWNLOADING).build();
+        DownloadError downloadError = mock(DownloadError.class);
+        Future<Boolean> errorSeenWithoutCause = executor.submit(() -> {
+            InternalDownloadBatchStatus snapshot = batchStatus.copy();
+            while (snapshot.status() != DownloadBatchStatus.Status.ERROR) {
+                snapshot = batchStatus.copy();
+            }
+            return snapshot.downloadError() == null;
+        });
+
+        batchStatus.markAsError(Optional.of(downloadError), persistence);
+
+        assertThat(errorSeenWithoutCause.get()).isFalse();
+    }
+
+    @Test
+    public void returnsPreviousStatus_whenMarkedAsDeleting() {
+        InternalDownloadBatchStatus batchStatus = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.PAUSED).build();
+
+        Optional<DownloadBatchStatus.Status> previousStatus = batchStatus.markAsDeleting();
+
+        assertThat(previousStatus).isEqualTo(Optional.of(DownloadBatchStatus.Status.PAUSED));
+    }
+
+    @Test
+    public void marksAsDeletingOnlyOnce_whenDeletedConcurrently() throws ExecutionException, InterruptedException {
+        InternalDownloadBatchStatus batchStatus = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.DOWNLOADING).build();
+        List<Future<Optional<DownloadBatchStatus.Status>>> deletions = new ArrayList<>();
+        Callable<Optional<DownloadBatchStatus.Status>> deletion = batchStatus::markAsDeleting;
+
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            deletions.add(executor.submit(deletion));
+        }
+
+        int successfulDeletions = 0;
+        for (Future<Optional<DownloadBatchStatus.Status>> future : deletions) {
+            if (future.get().isPresent()) {
+                successfulDeletions++;
+            }
+        }
+        assertThat(successfulDeletions).isEqualTo(1);
+    }
+}
@@ -0,0 +1,37 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadFileStatusFixtures.aDownloadFileStatus;
+
+public class LiteDownloadFileStatusTest {
+
+    @Test
+    public void staysDeleted_whenMarkedAsDownloading() {
+        InternalDownloadFileStatus fileStatus = aDownloadFileStatus().withStatus(DownloadFileStatus.Status.DELETED).build();
+
+        fileStatus.markAsDownloading();
+
+        assertThat(fileStatus.isMarkedAsDeleted()).isTrue();
+    }
+
+    @Test
+    public void staysPaused_whenMarkedAsDownloadingBeforeBeingQueued() {
+        InternalDownloadFileStatus fileStatus = aDownloadFileStatus().withStatus(DownloadFileStatus.Status.PAUSED).build();
+
+        fileStatus.markAsDownloading();
+
+        assertThat(fileStatus.status()).isEqualTo(DownloadFileStatus.Status.PAUSED);
+    }
+
+    @Test
+    public void downloads_onceQueuedAgain() {
+        InternalDownloadFileStatus fileStatus = aDownloadFileStatus().withStatus(DownloadFileStatus.Status.PAUSED).build();
+
+        fileStatus.markAsQueued();
+        fileStatus.markAsDownloading();
+
+        assertThat(fileStatus.isMarkedAsDownloading()).isTrue();
+    }
+}
@@ -4,10 +4,12 @@ import android.os.Handler;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -30,6 +32,8 @@ import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchI
 import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
 import static com.novoda.downloadmanager.DownloadFileStatusFixtures.aDownloadFileStatus;
 import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.Mockito.any;
@@ -37,6 +41,7 @@ import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
@@ -97,6 +102,8 @@ public class LiteDownloadManagerTest {
 
         @Test
         public void triggersDownloadOfBatches_whenSubmittingAllStoredDownloads() {
+            downloadingBatches.clear();
+
             liteDownloadManager.submitAllStoredDownloads(allStoredDownloadsSubmittedCallback);
 
             InOrder inOrder = inOrder(downloadManagerDownloader);
@@ -104,6 +111,14 @@ public class LiteDownloadManagerTest {
             inOrder.verify(downloadManagerDownloader).download(additionalDownloadBatch, downloadingBatches);
         }
 
+        @Test
+        public void doesNotDownloadStoredBatchesAgain_whenTheyAreAlreadyHeldInMemory() {
+            liteDownloadManager.submitAllStoredDownloads(allStoredDownloadsSubmittedCallback);
+
+            verify(downloadManagerDownloader, never()).download(downloadBatch, downloadingBatches);
+            verify(downloadManagerDownloader, never()).download(additionalDownloadBatch, downloadingBatches);
+        }
+
         @Test
         public void notifies_whenSubmittingAllStoredDownloads() {
             liteDownloadManager.submitAllStoredDownloads(allStoredDownloadsSubmittedCallback);
@@ -111,6 +126,39 @@ public class LiteDownloadManagerTest {
             verify(allStoredDownloadsSubmittedCallback).onAllDownloadsSubmitted();
         }
 
+        @Test
+        public void requeuesOnlyBatchesStoppedForNetwork_whenReconcilingStoredDownloads() {
+            givenBatchesInMemoryWith(DownloadBatchStatus.Status.WAITING_FOR_NETWORK, DownloadBatchStatus.Status.PAUSED);
+
+            liteDownloadManager.reconcileStoredDownloads(allStoredDownloadsSubmittedCallback);
+
+            InOrder inOrder = inOrder(downloadBatch, downloadManagerDownloader);
+            inOrder.verify(downloadBatch).resume();
+            inOrder.verify(downloadManagerDownloader).download(downloadBatch, downloadingBatches);
+            verify(additionalDownloadBatch, never()).resume();
+            verify(downloadManagerDownloader, never()).download(additionalDownloadBatch, downloadingBatches);
+        }
+
+        @Test
+        public void loadsOnlyBatchesMissingFromMemory_whenReconcilingBeforeStoredDownloadsAreLoaded() {
+            givenBatchesInMemoryWith(DownloadBatchStatus.Status.ERROR, DownloadBatchStatus.Status.DOWNLOADED);
+
+            liteDownloadManager.reconcileStoredDownloads(allStoredDownloadsSubmittedCallback);
+
+            verify(downloadsBatchPersistence).loadAsync(eq(fileOperations), eq(downloadingBatches), any(DownloadsBatchPersistence.LoadBatchesCallback.class));
+        }
+
+        @Test
+        public void doesNotReadStoredBatches_whenReconcilingAfterStoredDownloadsAreLoaded() {
+            liteDownloadManager.submitAllStoredDownloads(allStoredDownloadsSubmittedCallback);
+            givenBatchesInMemoryWith(DownloadBatchStatus.Status.DOWNLOADING, DownloadBatchStatus.Status.DOWNLOADED);
+
+            liteDownloadManager.reconcileStoredDownloads(allStoredDownloadsSubmittedCallback);
+
+            verify(downloadsBatchPersistence, never()).loadAsync(any(FileOperations.class), anyMap(), any(DownloadsBatchPersistence.LoadBatchesCallback.class));
+            verify(allStoredDownloadsSubmittedCallback, times(2)).onAllDownloadsSubmitted();
+        }
+
         @Test
         public void downloadGivenBatch_whenBatchIsNotAlreadyBeingDownloaded() {
             downloadingBatches.clear();
@@ -127,6 +175,22 @@ public class LiteDownloadManagerTest {
             verify(downloadManagerDownloader, never()).download(BATCH, downloadingBatches);
         }
 
+        @Test
+        public void downloadsUnknownBatchesOnce_whenDownloadingManyBatches() {
+            Batch unknownBatch = Batch.with(TestStorageRootFactory.create(), DownloadBatchIdCreator.createSanitizedFrom("id03"), "title").build();
+
+            liteDownloadManager.download(Arrays.asList(BATCH, unknownBatch, unknownBatch));
+
+            verify(downloadManagerDownloader).download(Collections.singletonList(unknownBatch), downloadingBatches);
+        }
+
+        @Test
+        public void doesNotDownload_whenAllBatchesAreAlreadyBeingDownloaded() {
+            liteDownloadManager.download(Collections.singletonList(BATCH));
+
+            verify(downloadManagerDownloader, never()).download(ArgumentMatchers.<Collection<Batch>>any(), any());
+        }
+
         @Test
         public void doesNotPause_whenBatchIdIsUnknown() {
             liteDownloadManager.pause(new LiteDownloadBatchId("unknown"));
@@ -191,6 +255,91 @@ public class LiteDownloadManagerTest {
             verify(downloadBatch).delete();
         }
 
+        @Test
+        public void pausesBatchesWithGivenIds_whenPausingAll() {
+            liteDownloadManager.pauseAll(Collections.singletonList(DOWNLOAD_BATCH_ID));
+
+            verify(downloadBatch).pause();
+            verify(additionalDownloadBatch, never()).pause();
+        }
+
+        @Test
+        public void pausesBatchesMatchingPredicate_whenPausingAll() {
+            liteDownloadManager.pauseAll(downloadBatchStatus -> downloadBatchStatus == ADDITIONAL_BATCH_STATUS);
+
+            verify(additionalDownloadBatch).pause();
+            verify(downloadBatch, never()).pause();
+        }
+
+        @Test
+        public void coalescesUpdates_whenPausingAll() {
+            liteDownloadManager.pauseAll(Arrays.asList(DOWNLOAD_BATCH_ID, ADDITIONAL_DOWNLOAD_BATCH_ID));
+
+            InOrder inOrder = inOrder(downloadManagerDownloader, downloadBatch, additionalDownloadBatch);
+            inOrder.verify(downloadManagerDownloader).coalesceUpdates(any(Runnable.class));
+            inOrder.verify(downloadBatch).pause();
+            inOrder.verify(additionalDownloadBatch).pause();
+        }
+
+        @Test
+        public void downloadsResumedBatchesAsAGroup_whenResumingAll() {
+            givenBatchesInMemoryWith(DownloadBatchStatus.Status.PAUSED, DownloadBatchStatus.Status.DOWNLOADING);
+
+            liteDownloadManager.resumeAll(Arrays.asList(DOWNLOAD_BATCH_ID, ADDITIONAL_DOWNLOAD_BATCH_ID));
+
+            verify(downloadBatch).resume();
+            verify(additionalDownloadBatch, never()).resume();
+            verify(downloadManagerDownloader).downloadAll(Collections.singletonList(downloadBatch), downloadingBatches);
+        }
+
+        @Test
+        public void deletesStoppedBatchesTogether_andStopsDownloadingBatches_whenDeletingAll() {
+            given(downloadBatch.markAsDeleting()).willReturn(Optional.of(DownloadBatchStatus.Status.PAUSED));
+            given(additionalDownloadBatch.markAsDeleting()).willReturn(Optional.of(DownloadBatchStatus.Status.DOWNLOADING));
+
+            liteDownloadManager.deleteAll(Arrays.asList(DOWNLOAD_BATCH_ID, ADDITIONAL_DOWNLOAD_BATCH_ID));
+
+            verify(additionalDownloadBatch).deleteFiles();
+            verify(downloadsBatchPersistence).deleteAsync(
+                    eq(Collections.singletonList(downloadBatch)),
+                    any(DownloadsBatchPersistence.DeleteBatchesCallback.class)
+            );
+        }
+
+        @Test
+        public void sweepsFilesOfDeletedBatches_afterTheyAreDeletedFromPersistence() {
+            given(downloadBatch.markAsDeleting()).willReturn(Optional.of(DownloadBatchStatus.Status.DOWNLOADED));
+            willAnswer(invocation -> {
+                DownloadsBatchPersistence.DeleteBatchesCallback deleteBatchesCallback = invocation.getArgument(1);
+                deleteBatchesCallback.onDeleted(invocation.getArgument(0));
+                return null;
+            }).given(downloadsBatchPersistence).deleteAsync(ArgumentMatchers.<List<DownloadBatch>>any(), any(DownloadsBatchPersistence.DeleteBatchesCallback.class));
+
+            liteDownloadManager.deleteAll(downloadBatchStatus -> downloadBatchStatus == BATCH_STATUS);
+
+            InOrder inOrder = inOrder(downloadBatch);
+            inOrder.verify(downloadBatch).markAsDeleting();
+            inOrder.verify(downloadBatch).markAsDeleted();
+            inOrder.verify(downloadBatch).deleteFiles();
+        }
+
+        @Test
+        public void doesNotDeleteFromPersistence_whenNoBatchCanBeDeleted() {
+            given(downloadBatch.markAsDeleting()).willReturn(Optional.absent());
+
+            liteDownloadManager.deleteAll(Collections.singletonList(DOWNLOAD_BATCH_ID));
+
+            verify(downloadsBatchPersistence, never()).deleteAsync(
+                    ArgumentMatchers.<List<DownloadBatch>>any(),
+                    any(DownloadsBatchPersistence.DeleteBatchesCallback.class)
+            );
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void throwException_whenDeletingAllWithNullPredicate() {
+            liteDownloadManager.deleteAll((DownloadBatchStatusPredicate) null);
+        }
+
         @Test
         public void addsCallbackToInternalList() {
             DownloadBatchStatusCallback additionalDownloadBatchCallback = mock(DownloadBatchStatusCallback.class);
@@ -253,6 +402,14 @@ public class LiteDownloadManagerTest {
             }
         }
 
+        @Test
+        public void getsDownloadBatchQueueFromDownloader() {
+            List<DownloadBatchId> downloadBatchQueue = Arrays.asList(DOWNLOAD_BATCH_ID, ADDITIONAL_DOWNLOAD_BATCH_ID);
+            given(downloadManagerDownloader.downloadBatchQueue()).willReturn(downloadBatchQueue);
+
+            assertThat(liteDownloadManager.getDownloadBatchQueue()).isEqualTo(downloadBatchQueue);
+        }
+
         @Test(expected = IllegalArgumentException.class)
         public void throwException_whenUpdatedWithNullConnectionType() {
             liteDownloadManager.updateAllowedConnectionType(null);
@@ -289,14 +446,16 @@ public class LiteDownloadManagerTest {
         final Wait.Criteria serviceCriteria = new Wait.Criteria();
 
         LiteDownloadManager liteDownloadManager;
-        Map<DownloadBatchId, DownloadBatch> downloadingBatches = new HashMap<>();
+        ConcurrentMap<DownloadBatchId, DownloadBatch> downloadingBatches = new ConcurrentHashMap<>();
         List<DownloadBatchStatus> downloadBatchStatuses = new ArrayList<>();
         Set<DownloadBatchStatusCallback> downloadBatchCallbacks = new CopyOnWriteArraySet<>();
         DownloadFileStatus downloadFileStatus = null;
 
         @Before
         public void setUp() {
-            downloadingBatches = new HashMap<>();
+            given(downloadBatch.getId()).willReturn(DOWNLOAD_BATCH_ID);
+            given(additionalDownloadBatch.getId()).willReturn(ADDITIONAL_DOWNLOAD_BATCH_ID);
+            downloadingBatches = new ConcurrentHashMap<>();
             downloadingBatches.put(DOWNLOAD_BATCH_ID, downloadBatch);
             downloadingBatches.put(ADDITIONAL_DOWNLOAD_BATCH_ID, additionalDownloadBatch);
 
@@ -336,6 +495,16 @@ public class LiteDownloadManagerTest {
                 ((Runnable) invocation.getArgument(0)).run();
                 return null;
             }).given(handler).post(any(Runnable.class));
+
+            willAnswer(invocation -> {
+                ((Runnable) invocation.getArgument(0)).run();
+                return null;
+            }).given(downloadManagerDownloader).coalesceUpdates(any(Runnable.class));
+        }
+
+        void givenBatchesInMemoryWith(DownloadBatchStatus.Status status, DownloadBatchStatus.Status additionalStatus) {
+            given(downloadBatch.status()).willReturn(anInternalDownloadsBatchStatus().withStatus(status).build());
+            given(additionalDownloadBatch.status()).willReturn(anInternalDownloadsBatchStatus().withStatus(additionalStatus).build());
         }
 
         private void setupDownloadBatchesResponse() {
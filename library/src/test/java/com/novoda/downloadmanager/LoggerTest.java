@@ -0,0 +1,59 @@
+package com.novoda.downloadmanager;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class LoggerTest {
+
+    private final LogHandle logHandle = mock(LogHandle.class);
+
+    @After
+    public void tearDown() {
+        Logger.detachAll();
+        Logger.setMinimumLevel(LogLevel.VERBOSE);
+        Logger.captureCallSites(true);
+    }
+
+    @Test
+    public void isDisabled_whenNoHandleIsAttached() {
+        assertThat(Logger.isEnabled(LogLevel.ERROR)).isFalse();
+    }
+
+    @Test
+    public void doesNotBuildMessage_whenNoHandleIsAttached() {
+        Logger.v(() -> {
+            throw new AssertionError("Message should not be built");
+        });
+    }
+
+    @Test
+    public void doesNotLog_whenLevelIsBelowMinimum() {
+        Logger.attach(logHandle);
+        Logger.setMinimumLevel(LogLevel.WARN);
+
+        Logger.v(() -> {
+            throw new AssertionError("Message should not be built");
+        });
+        Logger.d("debug");
+
+        verify(logHandle, never()).v(any());
+        verify(logHandle, never()).d(any());
+    }
+
+    @Test
+    public void logs_whenLevelIsAtLeastMinimum() {
+        Logger.attach(logHandle);
+        Logger.setMinimumLevel(LogLevel.WARN);
+        Logger.captureCallSites(false);
+
+        Logger.w("warning");
+
+        verify(logHandle).w("[" + Thread.currentThread().getName() + "] ", "warning");
+    }
+}
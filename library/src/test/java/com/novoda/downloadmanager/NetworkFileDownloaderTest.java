@@ -2,14 +2,31 @@ package com.novoda.downloadmanager;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import static com.google.common.truth.Truth.assertThat;
 import static com.novoda.downloadmanager.InternalFileSizeFixtures.aFileSize;
 import static com.novoda.downloadmanager.NetworkResponseFixtures.aNetworkResponse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -18,6 +35,7 @@ import static org.mockito.Mockito.verify;
 public class NetworkFileDownloaderTest {
 
     private static final String MESSAGE = "message";
+    private static final int ONE_POOLED_BUFFER = 1;
     private static final byte[] BYTES_TO_RECEIVE = "s".getBytes();
     private static final NetworkResponse RESPONSE_WITH_INPUT_STREAM = aNetworkResponse()
             .withInputStream(new ByteArrayInputStream(BYTES_TO_RECEIVE))
@@ -26,17 +44,29 @@ public class NetworkFileDownloaderTest {
     private static final String ANY_RAW_URL = "http://example.com";
     private static final FileSize KNOWN_FILE_SIZE = aFileSize().withAreBytesDownloadedKnown(true).build();
     private static final FileSize UNKNOWN_FILE_SIZE = aFileSize().withAreBytesDownloadedKnown(false).build();
+    private static final FileSize UNKNOWN_TOTAL_FILE_SIZE = aFileSize()
+            .withAreBytesDownloadedKnown(false)
+            .withTotalSizeKnown(false)
+            .withTotalSizeUnknown(true)
+            .build();
     private static final NetworkResponse INVALID_RESPONSE = aNetworkResponse().withCode(418).build();
+    private static final long READ_TIMEOUT_IN_MILLIS = TimeUnit.SECONDS.toMillis(5);
 
     private final FileDownloader.Callback callback = mock(FileDownloader.Callback.class);
     private final HttpClient httpClient = mock(HttpClient.class);
     private final NetworkRequestCreator requestCreator = new NetworkRequestCreator();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     private NetworkFileDownloader networkFileDownloader;
 
     @Before
     public void setUp() {
-        networkFileDownloader = new NetworkFileDownloader(httpClient, requestCreator);
+        networkFileDownloader = new NetworkFileDownloader(httpClient, requestCreator, new ByteBufferPool(ONE_POOLED_BUFFER));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
     }
 
     @Test
@@ -51,6 +81,43 @@ public class NetworkFileDownloaderTest {
         verify(callback).onBytesRead(expectedBytes, 1);
     }
 
+    @Test
+    public void emitsByteBuffer_whenCallbackAcceptsByteBuffers() throws IOException {
+        ByteBufferFileDownloaderCallback byteBufferCallback = mock(ByteBufferFileDownloaderCallback.class);
+        given(byteBufferCallback.acceptsByteBuffers()).willReturn(true);
+        List<String> receivedBytes = new ArrayList<>();
+        willAnswer(invocation -> {
+            ByteBuffer buffer = invocation.getArgument(0);
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return receivedBytes.add(new String(bytes));
+        }).given(byteBufferCallback).onBytesRead(any(ByteBuffer.class));
+        NetworkResponse response = aNetworkResponse()
+                .withInputStream(new ByteArrayInputStream(BYTES_TO_RECEIVE))
+                .build();
+        given(httpClient.execute(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(response);
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, UNKNOWN_FILE_SIZE, byteBufferCallback);
+
+        assertThat(receivedBytes).containsExactly("s");
+        verify(byteBufferCallback, never()).onBytesRead(any(byte[].class), anyInt());
+    }
+
+    @Test
+    public void emitsBytes_whenCallbackDoesNotAcceptByteBuffers() throws IOException {
+        ByteBufferFileDownloaderCallback byteBufferCallback = mock(ByteBufferFileDownloaderCallback.class);
+        given(byteBufferCallback.acceptsByteBuffers()).willReturn(false);
+        NetworkResponse response = aNetworkResponse()
+                .withInputStream(new ByteArrayInputStream(BYTES_TO_RECEIVE))
+                .build();
+        given(httpClient.execute(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(response);
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, UNKNOWN_FILE_SIZE, byteBufferCallback);
+
+        verify(byteBufferCallback).onBytesRead(any(byte[].class), anyInt());
+        verify(byteBufferCallback, never()).onBytesRead(any(ByteBuffer.class));
+    }
+
     @Test
     public void closesByteStream_whenDownloaded() throws IOException {
         NetworkResponse networkResponse = spy(aNetworkResponse().build());
@@ -100,6 +167,88 @@ public class NetworkFileDownloaderTest {
         verify(callback).onDownloadFinished();
     }
 
+    @Test
+    public void resolvesTotalSizeFromContentRange_whenResumingWithUnknownTotalSize() throws IOException {
+        FileSize partialFileSizeWithUnknownTotal = aFileSize()
+                .withCurrentSize(100)
+                .withTotalSizeKnown(false)
+                .withTotalSizeUnknown(true)
+                .build();
+        NetworkResponse partialResponse = aNetworkResponse()
+                .withCode(206)
+                .withHeader("bytes 100-999/1000")
+                .build();
+        given(httpClient.execute(requestCreator.createDownloadRequestFrom(ANY_RAW_URL, 100))).willReturn(partialResponse);
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, partialFileSizeWithUnknownTotal, callback);
+
+        verify(callback).onTotalSizeResolved(1000);
+    }
+
+    @Test
+    public void resolvesTotalSizeFromContentLength_whenTotalSizeUnknown() throws IOException {
+        NetworkResponse fullResponse = aNetworkResponse()
+                .withBodyContentLength(500)
+                .build();
+        given(httpClient.execute(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(fullResponse);
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, UNKNOWN_TOTAL_FILE_SIZE, callback);
+
+        verify(callback).onTotalSizeResolved(500);
+    }
+
+    @Test
+    public void doesNotEmitBytes_whenResponseDoesNotTellUnknownTotalSize() throws IOException {
+        given(httpClient.execute(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(RESPONSE_WITH_INPUT_STREAM);
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, UNKNOWN_TOTAL_FILE_SIZE, callback);
+
+        verify(callback, never()).onTotalSizeResolved(anyLong());
+        verify(callback, never()).onBytesRead(any(byte[].class), anyInt());
+        verify(callback).onDownloadFinished();
+    }
+
+    @Test
+    public void stopsStalledDownload_wellBeforeTheReadTimeout() throws Exception {
+        StalledInputStream stalledInputStream = new StalledInputStream();
+        NetworkResponse stalledResponse = aNetworkResponse().withInputStream(stalledInputStream).build();
+        given(httpClient.execute(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(stalledResponse);
+
+        stopWhileStalled(stalledInputStream);
+
+        assertThat(stalledInputStream.wasClosedWhileReading()).isTrue();
+        verify(callback, never()).onError(anyString());
+        verify(callback).onDownloadFinished();
+    }
+
+    @Test
+    public void cancelsInFlightCall_whenStoppingDownload() throws Exception {
+        StalledInputStream stalledInputStream = new StalledInputStream();
+        NetworkResponse stalledResponse = aNetworkResponse().withInputStream(stalledInputStream).build();
+        CancellableHttpClient cancellableHttpClient = mock(CancellableHttpClient.class);
+        NetworkCall call = mock(NetworkCall.class);
+        given(cancellableHttpClient.newCall(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(call);
+        given(call.execute()).willReturn(stalledResponse);
+        willAnswer(invocation -> {
+            stalledInputStream.close();
+            return null;
+        }).given(call).cancel();
+        networkFileDownloader = new NetworkFileDownloader(cancellableHttpClient, requestCreator, new ByteBufferPool(ONE_POOLED_BUFFER));
+
+        stopWhileStalled(stalledInputStream);
+
+        verify(call).cancel();
+        verify(callback, never()).onError(anyString());
+    }
+
+    private void stopWhileStalled(StalledInputStream stalledInputStream) throws InterruptedException, ExecutionException {
+        Future<?> download = executor.submit(() -> networkFileDownloader.startDownloading(ANY_RAW_URL, UNKNOWN_FILE_SIZE, callback));
+        stalledInputStream.awaitRead();
+
+        networkFileDownloader.stopDownloading();
+        download.get();
+    }
+
     @Ignore // How can we test the `canDownload` flag?
     @Test
     public void stopsEmittingBytes_whenStoppingDownload() {
@@ -109,4 +258,42 @@ public class NetworkFileDownloaderTest {
 
         verify(callback, never()).onBytesRead(new byte[10], 0);
     }
+
+    /**
+     * Never receives any byte, like a connection that stalled, until it is closed.
+     */
+    private static class StalledInputStream extends InputStream {
+
+        private final CountDownLatch readStarted = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        private volatile boolean closedWhileReading;
+
+        @Override
+        public int read() throws IOException {
+            readStarted.countDown();
+            try {
+                closedWhileReading = closed.await(READ_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Socket closed");
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        void awaitRead() throws InterruptedException {
+            readStarted.await();
+        }
+
+        /**
+         * @return whether the read was released by closing the stream, rather than by the read timeout.
+         */
+        boolean wasClosedWhileReading() {
+            return closedWhileReading;
+        }
+    }
 }
@@ -64,6 +64,36 @@ public class NetworkRequestCreatorTest {
         assertThatNetworkRequestsAreEqual(networkRequest, expectedNetworkRequest);
     }
 
+    @Test
+    public void createsRangeRequest() {
+        NetworkRequest networkRequest = networkRequestCreator.createDownloadRequestWithRange(
+                "http://www.google.com",
+                100,
+                199
+        );
+
+        NetworkRequest expectedNetworkRequest = aNetworkRequest()
+                .withHeader("Range", "bytes=100-199")
+                .withUrl("http://www.google.com")
+                .withMethod(NetworkRequest.Method.GET)
+                .build();
+
+        assertThatNetworkRequestsAreEqual(networkRequest, expectedNetworkRequest);
+    }
+
+    @Test
+    public void createsRemainingBytesRequest() {
+        NetworkRequest networkRequest = networkRequestCreator.createDownloadRequestFrom("http://www.google.com", 100);
+
+        NetworkRequest expectedNetworkRequest = aNetworkRequest()
+                .withHeader("Range", "bytes=100-")
+                .withUrl("http://www.google.com")
+                .withMethod(NetworkRequest.Method.GET)
+                .build();
+
+        assertThatNetworkRequestsAreEqual(networkRequest, expectedNetworkRequest);
+    }
+
     private void assertThatNetworkRequestsAreEqual(NetworkRequest networkRequest, NetworkRequest expectedNetworkRequest) {
         assertThat(networkRequest.headers()).isEqualTo(expectedNetworkRequest.headers());
         assertThat(networkRequest.method()).isEqualTo(expectedNetworkRequest.method());
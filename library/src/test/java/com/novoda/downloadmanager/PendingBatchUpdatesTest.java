@@ -0,0 +1,97 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class PendingBatchUpdatesTest {
+
+    private static final DownloadBatchId FIRST_BATCH_ID = DownloadBatchIdCreator.createSanitizedFrom("first");
+    private static final DownloadBatchId SECOND_BATCH_ID = DownloadBatchIdCreator.createSanitizedFrom("second");
+    private static final DownloadFileId FILE_ID = aDownloadFileId().build();
+
+    private final DownloadsPersistence downloadsPersistence = mock(DownloadsPersistence.class);
+    private final ActionScheduler scheduler = mock(ActionScheduler.class);
+    private final PendingBatchUpdates pendingBatchUpdates = new PendingBatchUpdates(Runnable::run, downloadsPersistence, scheduler);
+
+    @Test
+    public void writesOnlyTheLatestStatus_whenBatchChangesWithinATick() {
+        pendingBatchUpdates.updateStatus(FIRST_BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        pendingBatchUpdates.updateStatus(FIRST_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+
+        pendingBatchUpdates.flush();
+
+        verify(downloadsPersistence, never()).update(FIRST_BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        verify(downloadsPersistence).update(FIRST_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+    }
+
+    @Test
+    public void writesEveryBatchInASingleTransaction() {
+        pendingBatchUpdates.updateStatus(FIRST_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+        pendingBatchUpdates.updateNotificationSeen(SECOND_BATCH_ID, true);
+
+        pendingBatchUpdates.flush();
+
+        InOrder inOrder = inOrder(downloadsPersistence);
+        inOrder.verify(downloadsPersistence).startTransaction();
+        inOrder.verify(downloadsPersistence).update(FIRST_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+        inOrder.verify(downloadsPersistence).update(SECOND_BATCH_ID, true);
+        inOrder.verify(downloadsPersistence).transactionSuccess();
+        inOrder.verify(downloadsPersistence).endTransaction();
+        verify(downloadsPersistence, times(1)).startTransaction();
+    }
+
+    @Test
+    public void checkpointsOnlyTheLatestDownloadedBytes_whenFileProgressesWithinATick() {
+        pendingBatchUpdates.updateDownloadedBytes(FIRST_BATCH_ID, FILE_ID, 100);
+        pendingBatchUpdates.updateDownloadedBytes(FIRST_BATCH_ID, FILE_ID, 200);
+
+        pendingBatchUpdates.flush();
+
+        verify(downloadsPersistence, never()).update(FIRST_BATCH_ID, FILE_ID, 100);
+        verify(downloadsPersistence).update(FIRST_BATCH_ID, FILE_ID, 200);
+    }
+
+    @Test
+    public void writesStraightAway_whenBatchStopsDownloading() {
+        pendingBatchUpdates.updateStatus(FIRST_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADED);
+
+        verify(downloadsPersistence).update(FIRST_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADED);
+    }
+
+    @Test
+    public void waitsForTheNextTick_whileBatchKeepsDownloading() {
+        pendingBatchUpdates.updateStatus(FIRST_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+
+        verify(scheduler).schedule(any(ActionScheduler.Action.class));
+        verify(downloadsPersistence, never()).update(any(DownloadBatchId.class), any(DownloadBatchStatus.Status.class));
+    }
+
+    @Test
+    public void doesNotWriteUpdates_whenBatchIsDiscarded() {
+        pendingBatchUpdates.updateStatus(FIRST_BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+        pendingBatchUpdates.updateNotificationSeen(FIRST_BATCH_ID, true);
+
+        pendingBatchUpdates.discard(FIRST_BATCH_ID);
+        pendingBatchUpdates.flush();
+
+        verify(downloadsPersistence, never()).update(any(DownloadBatchId.class), any(DownloadBatchStatus.Status.class));
+        verify(downloadsPersistence, never()).update(any(DownloadBatchId.class), anyBoolean());
+    }
+
+    @Test
+    public void stopsTicking_whenNothingIsPending() {
+        pendingBatchUpdates.flush();
+
+        verify(scheduler).cancel(any(ActionScheduler.Action.class));
+        verify(downloadsPersistence, never()).startTransaction();
+    }
+}
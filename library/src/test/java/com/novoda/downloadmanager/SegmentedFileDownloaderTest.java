@@ -0,0 +1,216 @@
+package com.novoda.downloadmanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.FilePathFixtures.aFilePath;
+import static com.novoda.downloadmanager.FilePersistenceFixtures.aFilePersistence;
+import static com.novoda.downloadmanager.InternalFileSizeFixtures.aFileSize;
+import static com.novoda.downloadmanager.NetworkResponseFixtures.aNetworkResponse;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SegmentedFileDownloaderTest {
+
+    private static final String ANY_RAW_URL = "http://example.com";
+    private static final int FOUR_SEGMENTS = 4;
+    private static final long ANY_MINIMUM_FILE_SIZE = 10;
+    private static final int FOUR_POOLED_BUFFERS = 4;
+    private static final byte[] FILE_CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes();
+    private static final FileSize FILE_SIZE = aFileSize()
+            .withCurrentSize(0)
+            .withTotalSize(FILE_CONTENT.length)
+            .build();
+
+    private static final FilePersistence PATH_BASED_FILE_PERSISTENCE = new PathBasedFilePersistence();
+
+    private final FileSegmentsPersistence segmentsPersistence = new FileSegmentsPersistence();
+    private final SegmentedFileDownloader.Callback callback = mock(SegmentedFileDownloader.Callback.class);
+
+    private RangeHttpClient httpClient;
+    private File file;
+    private FilePath filePath;
+    private SegmentedFileDownloader segmentedFileDownloader;
+
+    @Before
+    public void setUp() throws IOException {
+        httpClient = new RangeHttpClient(HttpURLConnection.HTTP_PARTIAL);
+        file = File.createTempFile("segmented", ".bin");
+        filePath = aFilePath().withRawPath(file.getAbsolutePath()).build();
+        segmentedFileDownloader = segmentedFileDownloaderWith(httpClient);
+    }
+
+    @After
+    public void tearDown() {
+        segmentsPersistence.delete(filePath);
+        file.delete();
+    }
+
+    @Test
+    public void writesEverySegmentAtItsOffset() throws IOException {
+        segmentedFileDownloader.startDownloading(ANY_RAW_URL, filePath, FILE_SIZE, callback);
+
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(FILE_CONTENT);
+    }
+
+    @Test
+    public void requestsEachSegmentOverItsOwnConnection() {
+        segmentedFileDownloader.startDownloading(ANY_RAW_URL, filePath, FILE_SIZE, callback);
+
+        assertThat(httpClient.requestedRanges).containsExactly("bytes=0-8", "bytes=9-17", "bytes=18-26", "bytes=27-35");
+    }
+
+    @Test
+    public void deletesSegments_whenAllSegmentsAreDownloaded() {
+        segmentedFileDownloader.startDownloading(ANY_RAW_URL, filePath, FILE_SIZE, callback);
+
+        assertThat(segmentsPersistence.hasSegmentsFor(filePath)).isFalse();
+        verify(callback).onDownloadFinished();
+        verify(callback, never()).onError(anyString());
+    }
+
+    @Test
+    public void onlyRequestsMissingBytes_whenResuming() throws IOException {
+        givenFirstSegmentsAlreadyDownloaded();
+
+        segmentedFileDownloader.startDownloading(ANY_RAW_URL, filePath, FILE_SIZE, callback);
+
+        assertThat(httpClient.requestedRanges).containsExactly("bytes=22-26", "bytes=27-35");
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(FILE_CONTENT);
+    }
+
+    @Test
+    public void usesPersistedSegmentsAsCurrentSize_whenResuming() {
+        givenFirstSegmentsAlreadyDownloaded();
+
+        long currentSize = segmentedFileDownloader.currentSize(filePath, mock(FilePersistence.class));
+
+        assertThat(currentSize).isEqualTo(22L);
+    }
+
+    @Test
+    public void keepsSegments_whenDownloadFails() {
+        SegmentedFileDownloader failingDownloader = segmentedFileDownloaderWith(new RangeHttpClient(HttpURLConnection.HTTP_PARTIAL) {
+            @Override
+            public NetworkResponse execute(NetworkRequest networkRequest) throws IOException {
+                if ("bytes=27-35".equals(networkRequest.headers().get("Range"))) {
+                    throw new IOException("connection lost");
+                }
+                return super.execute(networkRequest);
+            }
+        });
+
+        failingDownloader.startDownloading(ANY_RAW_URL, filePath, FILE_SIZE, callback);
+
+        verify(callback).onError("connection lost");
+        assertThat(segmentsPersistence.hasSegmentsFor(filePath)).isTrue();
+    }
+
+    @Test
+    public void doesNotDownload_whenServerIgnoresRanges() {
+        SegmentedFileDownloader downloader = segmentedFileDownloaderWith(new RangeHttpClient(HttpURLConnection.HTTP_OK));
+
+        boolean downloadedInSegments = downloader.startDownloading(ANY_RAW_URL, filePath, FILE_SIZE, callback);
+
+        assertThat(downloadedInSegments).isFalse();
+        assertThat(file.length()).isEqualTo(0L);
+        assertThat(segmentsPersistence.hasSegmentsFor(filePath)).isFalse();
+    }
+
+    @Test
+    public void downloadsInSegments_whenFileIsLargeEnoughAndNotStarted() {
+        assertThat(segmentedFileDownloader.shouldDownloadInSegments(filePath, FILE_SIZE, PATH_BASED_FILE_PERSISTENCE)).isTrue();
+    }
+
+    @Test
+    public void doesNotDownloadInSegments_whenFileIsTooSmall() {
+        FileSize smallFileSize = aFileSize().withCurrentSize(0).withTotalSize(ANY_MINIMUM_FILE_SIZE - 1).build();
+
+        assertThat(segmentedFileDownloader.shouldDownloadInSegments(filePath, smallFileSize, PATH_BASED_FILE_PERSISTENCE)).isFalse();
+    }
+
+    @Test
+    public void doesNotDownloadInSegments_whenPersistenceDoesNotWriteBytesAtFilePath() {
+        FilePersistence customFilePersistence = aFilePersistence().build();
+
+        assertThat(segmentedFileDownloader.shouldDownloadInSegments(filePath, FILE_SIZE, customFilePersistence)).isFalse();
+    }
+
+    @Test
+    public void doesNotDownloadInSegments_whenDisabled() {
+        assertThat(SegmentedFileDownloader.disabled().shouldDownloadInSegments(filePath, FILE_SIZE, PATH_BASED_FILE_PERSISTENCE)).isFalse();
+    }
+
+    private void givenFirstSegmentsAlreadyDownloaded() {
+        List<FileSegment> segments = Arrays.asList(
+                new FileSegment(0, 8, 9),
+                new FileSegment(9, 17, 9),
+                new FileSegment(18, 26, 4),
+                new FileSegment(27, 35, 0)
+        );
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.write(FILE_CONTENT, 0, 22);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        segmentsPersistence.persist(filePath, segments);
+    }
+
+    private SegmentedFileDownloader segmentedFileDownloaderWith(HttpClient httpClient) {
+        return new SegmentedFileDownloader(
+                httpClient,
+                new NetworkRequestCreator(),
+                Executors.newCachedThreadPool(),
+                new ByteBufferPool(FOUR_POOLED_BUFFERS),
+                segmentsPersistence,
+                AdaptiveConnectionLimit.disabled(),
+                FOUR_SEGMENTS,
+                ANY_MINIMUM_FILE_SIZE
+        );
+    }
+
+    private static class RangeHttpClient implements HttpClient {
+
+        private static final String RANGE_PREFIX = "bytes=";
+
+        private final int responseCode;
+        final List<String> requestedRanges = new CopyOnWriteArrayList<>();
+
+        RangeHttpClient(int responseCode) {
+            this.responseCode = responseCode;
+        }
+
+        @Override
+        public NetworkResponse execute(NetworkRequest networkRequest) throws IOException {
+            String range = networkRequest.headers().get("Range");
+            requestedRanges.add(range);
+
+            String[] bytes = range.substring(RANGE_PREFIX.length()).split("-");
+            int firstByte = Integer.parseInt(bytes[0]);
+            int lastByte = Integer.parseInt(bytes[1]);
+            byte[] body = responseCode == HttpURLConnection.HTTP_PARTIAL
+                    ? Arrays.copyOfRange(FILE_CONTENT, firstByte, lastByte + 1)
+                    : FILE_CONTENT;
+
+            return aNetworkResponse()
+                    .withCode(responseCode)
+                    .withInputStream(new ByteArrayInputStream(body))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.novoda.downloadmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.FilePathFixtures.aFilePath;
+
+public class SharedFileDownloadsTest {
+
+    private static final String ANY_URL = "http://example.com/shared.jpg";
+    private static final SharedFileDownloads.KeepWaiting KEEP_WAITING = () -> true;
+
+    private final SharedFileDownloads sharedFileDownloads = SharedFileDownloads.enabled();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private File firstFile;
+    private FilePath firstFilePath;
+    private FilePath secondFilePath;
+
+    @Before
+    public void setUp() throws IOException {
+        firstFile = File.createTempFile("first", ".jpg");
+        firstFilePath = aFilePath().withRawPath(firstFile.getAbsolutePath()).build();
+        secondFilePath = aFilePath().withRawPath(firstFile.getAbsolutePath() + ".second").build();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        firstFile.delete();
+    }
+
+    @Test
+    public void downloadsUrl_whenNoOtherFileHasIt() {
+        Optional<FilePath> completedFilePath = sharedFileDownloads.acquire(ANY_URL, firstFilePath, KEEP_WAITING);
+
+        assertThat(completedFilePath.isPresent()).isFalse();
+    }
+
+    @Test
+    public void takesTheDownloadedFile_whenAnotherFileWasDownloadingTheUrl() throws ExecutionException, InterruptedException {
+        sharedFileDownloads.acquire(ANY_URL, firstFilePath, KEEP_WAITING);
+        Future<Optional<FilePath>> waitingFile = executor.submit(() -> sharedFileDownloads.acquire(ANY_URL, secondFilePath, KEEP_WAITING));
+
+        sharedFileDownloads.finishDownloading(ANY_URL, firstFilePath, true);
+
+        assertThat(waitingFile.get()).isEqualTo(Optional.of(firstFilePath));
+    }
+
+    @Test
+    public void downloadsUrl_whenTheOtherFileFailedToDownloadIt() throws ExecutionException, InterruptedException {
+        sharedFileDownloads.acquire(ANY_URL, firstFilePath, KEEP_WAITING);
+        Future<Optional<FilePath>> waitingFile = executor.submit(() -> sharedFileDownloads.acquire(ANY_URL, secondFilePath, KEEP_WAITING));
+
+        sharedFileDownloads.finishDownloading(ANY_URL, firstFilePath, false);
+
+        assertThat(waitingFile.get().isPresent()).isFalse();
+    }
+
+    @Test
+    public void stopsWaiting_whenFileIsNoLongerDownloading() {
+        sharedFileDownloads.acquire(ANY_URL, firstFilePath, KEEP_WAITING);
+
+        Optional<FilePath> completedFilePath = sharedFileDownloads.acquire(ANY_URL, secondFilePath, () -> false);
+
+        assertThat(completedFilePath.isPresent()).isFalse();
+    }
+
+    @Test
+    public void defersDeletion_whileTheFileIsBeingTaken() {
+        sharedFileDownloads.addCompletedFile(ANY_URL, firstFilePath);
+        sharedFileDownloads.acquire(ANY_URL, secondFilePath, KEEP_WAITING);
+        AtomicBoolean deleted = new AtomicBoolean();
+
+        sharedFileDownloads.delete(ANY_URL, firstFilePath, () -> deleted.set(true));
+
+        assertThat(deleted.get()).isFalse();
+    }
+
+    @Test
+    public void deletes_onceTheFileHasBeenTaken() {
+        sharedFileDownloads.addCompletedFile(ANY_URL, firstFilePath);
+        sharedFileDownloads.acquire(ANY_URL, secondFilePath, KEEP_WAITING);
+        AtomicBoolean deleted = new AtomicBoolean();
+        sharedFileDownloads.delete(ANY_URL, firstFilePath, () -> deleted.set(true));
+
+        sharedFileDownloads.releaseCompletedFile(ANY_URL, firstFilePath, secondFilePath, true);
+
+        assertThat(deleted.get()).isTrue();
+    }
+
+    @Test
+    public void doesNotOfferTheCompletedFileAgain_onceRejected() {
+        FilePath thirdFilePath = aFilePath().withRawPath(firstFile.getAbsolutePath() + ".third").build();
+        sharedFileDownloads.addCompletedFile(ANY_URL, firstFilePath);
+        sharedFileDownloads.acquire(ANY_URL, secondFilePath, KEEP_WAITING);
+        sharedFileDownloads.rejectCompletedFile(ANY_URL, firstFilePath, secondFilePath);
+        sharedFileDownloads.finishDownloading(ANY_URL, secondFilePath, false);
+
+        Optional<FilePath> completedFilePath = sharedFileDownloads.acquire(ANY_URL, thirdFilePath, KEEP_WAITING);
+
+        assertThat(completedFilePath.isPresent()).isFalse();
+    }
+
+    @Test
+    public void doesNotShareDownloads_whenDisabled() {
+        SharedFileDownloads disabledSharedFileDownloads = SharedFileDownloads.disabled();
+        disabledSharedFileDownloads.addCompletedFile(ANY_URL, firstFilePath);
+
+        Optional<FilePath> completedFilePath = disabledSharedFileDownloads.acquire(ANY_URL, secondFilePath, KEEP_WAITING);
+
+        assertThat(completedFilePath.isPresent()).isFalse();
+    }
+}